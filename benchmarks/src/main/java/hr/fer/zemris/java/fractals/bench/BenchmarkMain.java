@@ -0,0 +1,29 @@
+package hr.fer.zemris.java.fractals.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Pokreće JMH s uobičajenim argumentima naredbenog retka, uz uvijek uključen
+ * GC profiler (gc.alloc.rate i gc.alloc.rate.norm po okviru).
+ * 
+ * Npr. "java -jar benchmarks/target/benchmarks.jar NewtonP2 -p resolution=640x480"
+ * 
+ * @author Marko Brlek
+ *
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,98 @@
+package hr.fer.zemris.java.fractals.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hr.fer.zemris.java.fractals.NewtonP2;
+import hr.fer.zemris.java.fractals.NewtonTiles;
+import hr.fer.zemris.java.fractals.viewer.IFractalProducer;
+
+/**
+ * Mjeri kašnjenje prekida: vrijeme od postavljanja zastavice cancel do
+ * povratka iz {@link IFractalProducer#produce} za okvir koji se računa u
+ * pozadinskoj dretvi. Uspoređuje NewtonP2 (fork/join) i NewtonTiles uz isti
+ * broj radnika.
+ * 
+ * @author Marko Brlek
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class CancellationBenchmark {
+
+	@Param({ "p2", "tiles" })
+	public String engine;
+
+	@Param({ "4" })
+	public int workers;
+
+	/**
+	 * Koliko milisekundi okvir računa prije prekida.
+	 */
+	@Param({ "20" })
+	public long delay;
+
+	private IFractalProducer producer;
+	private StubObserver observer;
+	private AtomicBoolean cancel;
+	private Thread frame;
+	private long requestNo;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		if (engine.equals("p2")) {
+			NewtonP2.processors = workers;
+			NewtonP2.init(Catalogue.roots("unit12"));
+			producer = new NewtonP2.Producer();
+		} else {
+			NewtonTiles.processors = workers;
+			NewtonTiles.init(Catalogue.roots("unit12"));
+			producer = new NewtonTiles.Producer();
+		}
+		observer = new StubObserver();
+		producer.setup();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		producer.close();
+	}
+
+	/**
+	 * Pokreće okvir u pozadini i čeka da se počne računati.
+	 */
+	@Setup(Level.Invocation)
+	public void startFrame() throws InterruptedException {
+		double[] view = Catalogue.viewport("full");
+		AtomicBoolean flag = new AtomicBoolean(false);
+		long no = requestNo++;
+		cancel = flag;
+		frame = new Thread(() -> producer.produce(view[0], view[1], view[2], view[3], 1920, 1080, no, observer, flag));
+		frame.start();
+		Thread.sleep(delay);
+	}
+
+	@Benchmark
+	public void cancel() throws InterruptedException {
+		cancel.set(true);
+		frame.join();
+	}
+}
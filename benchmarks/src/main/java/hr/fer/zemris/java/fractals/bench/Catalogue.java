@@ -0,0 +1,66 @@
+package hr.fer.zemris.java.fractals.bench;
+
+import hr.fer.zemris.math.Complex;
+
+/**
+ * Nepromjenjiv katalog polinoma, prikaza i rezolucija nad kojima se mjere
+ * proizvođači. Imena se koriste kao vrijednosti JMH parametara.
+ * 
+ * @author Marko Brlek
+ *
+ */
+public class Catalogue {
+
+	/**
+	 * Vraća nultočke polinoma zadanog imenom.
+	 * 
+	 * @param name ime polinoma
+	 * @return nultočke polinoma
+	 */
+	public static Complex[] roots(String name) {
+		switch (name) {
+		case "unit4":
+			// primjer iz ComplexDemo: z^4 - 1
+			return new Complex[] { Complex.ONE, Complex.ONE_NEG, Complex.IM, Complex.IM_NEG };
+		case "mixed6":
+			return new Complex[] { Complex.ONE, Complex.ONE_NEG, Complex.IM, Complex.IM_NEG,
+					new Complex(0.5, 0.3), new Complex(-0.7, 0.2) };
+		case "unit12":
+			return Complex.ONE.root(12).toArray(new Complex[0]);
+		default:
+			throw new IllegalArgumentException("Unknown polynomial " + name + ".");
+		}
+	}
+
+	/**
+	 * Vraća prikaz zadan imenom kao polje {reMin, reMax, imMin, imMax}.
+	 * 
+	 * @param name ime prikaza
+	 * @return granice prikaza
+	 */
+	public static double[] viewport(String name) {
+		switch (name) {
+		case "full":
+			return new double[] { -2, 2, -2, 2 };
+		case "boundary":
+			// mali prikaz oko granice bazena privlačenja, puno sporo konvergirajućih točaka
+			return new double[] { -0.05, 0.05, 0.65, 0.75 };
+		default:
+			throw new IllegalArgumentException("Unknown viewport " + name + ".");
+		}
+	}
+
+	/**
+	 * Vraća rezoluciju oblika "širinaxvisina" kao polje {width, height}.
+	 * 
+	 * @param name rezolucija
+	 * @return širina i visina
+	 */
+	public static int[] resolution(String name) {
+		String[] parts = name.split("x");
+		if (parts.length != 2) {
+			throw new IllegalArgumentException("Invalid resolution " + name + ".");
+		}
+		return new int[] { Integer.parseInt(parts[0]), Integer.parseInt(parts[1]) };
+	}
+}
@@ -0,0 +1,32 @@
+package hr.fer.zemris.java.fractals.bench;
+
+import org.openjdk.jmh.annotations.Param;
+
+import hr.fer.zemris.java.fractals.NewtonP1;
+import hr.fer.zemris.java.fractals.viewer.IFractalProducer;
+import hr.fer.zemris.math.Complex;
+
+/**
+ * Mjeri NewtonP1 (ExecutorService s fiksnim brojem dretvi) za razne brojeve
+ * radnika.
+ * 
+ * @author Marko Brlek
+ *
+ */
+public class NewtonP1Benchmark extends ProducerBenchmark {
+
+	@Param({ "1", "2", "4", "8" })
+	public int workers;
+
+	@Override
+	protected void configure(Complex[] roots) {
+		NewtonP1.processors = workers;
+		NewtonP1.simd = kernel.equals("simd");
+		NewtonP1.init(roots);
+	}
+
+	@Override
+	protected IFractalProducer createProducer() {
+		return new NewtonP1.Producer();
+	}
+}
@@ -0,0 +1,32 @@
+package hr.fer.zemris.java.fractals.bench;
+
+import org.openjdk.jmh.annotations.Param;
+
+import hr.fer.zemris.java.fractals.NewtonP2;
+import hr.fer.zemris.java.fractals.viewer.IFractalProducer;
+import hr.fer.zemris.math.Complex;
+
+/**
+ * Mjeri NewtonP2 (ForkJoinPool s RecursiveAction poslovima) za razne
+ * vrijednosti mintracks.
+ * 
+ * @author Marko Brlek
+ *
+ */
+public class NewtonP2Benchmark extends ProducerBenchmark {
+
+	@Param({ "4", "16", "64" })
+	public int mintracks;
+
+	@Override
+	protected void configure(Complex[] roots) {
+		NewtonP2.mintracks = mintracks;
+		NewtonP2.simd = kernel.equals("simd");
+		NewtonP2.init(roots);
+	}
+
+	@Override
+	protected IFractalProducer createProducer() {
+		return new NewtonP2.Producer();
+	}
+}
@@ -0,0 +1,32 @@
+package hr.fer.zemris.java.fractals.bench;
+
+import org.openjdk.jmh.annotations.Param;
+
+import hr.fer.zemris.java.fractals.NewtonParallel;
+import hr.fer.zemris.java.fractals.viewer.IFractalProducer;
+import hr.fer.zemris.math.Complex;
+
+/**
+ * Mjeri NewtonParallel (vlastite dretve i LinkedBlockingQueue) za razne
+ * brojeve radnika.
+ * 
+ * @author Marko Brlek
+ *
+ */
+public class NewtonParallelBenchmark extends ProducerBenchmark {
+
+	@Param({ "1", "2", "4", "8" })
+	public int workers;
+
+	@Override
+	protected void configure(Complex[] roots) {
+		NewtonParallel.processors = workers;
+		NewtonParallel.simd = kernel.equals("simd");
+		NewtonParallel.init(roots);
+	}
+
+	@Override
+	protected IFractalProducer createProducer() {
+		return new NewtonParallel.Producer();
+	}
+}
@@ -0,0 +1,36 @@
+package hr.fer.zemris.java.fractals.bench;
+
+import org.openjdk.jmh.annotations.Param;
+
+import hr.fer.zemris.java.fractals.NewtonTiles;
+import hr.fer.zemris.java.fractals.viewer.IFractalProducer;
+import hr.fer.zemris.math.Complex;
+
+/**
+ * Mjeri NewtonTiles (jedan posao po pločici unutar TileScope) za razne
+ * brojeve radnika i veličine pločica.
+ * 
+ * @author Marko Brlek
+ *
+ */
+public class NewtonTilesBenchmark extends ProducerBenchmark {
+
+	@Param({ "1", "2", "4", "8" })
+	public int workers;
+
+	@Param({ "32", "64", "128" })
+	public int tileSize;
+
+	@Override
+	protected void configure(Complex[] roots) {
+		NewtonTiles.processors = workers;
+		NewtonTiles.tileSize = tileSize;
+		NewtonTiles.simd = kernel.equals("simd");
+		NewtonTiles.init(roots);
+	}
+
+	@Override
+	protected IFractalProducer createProducer() {
+		return new NewtonTiles.Producer();
+	}
+}
@@ -0,0 +1,26 @@
+package hr.fer.zemris.java.fractals.bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Pomoćni JMH brojač izračunatih piksela. Uz Mode.Throughput JMH ga ispisuje
+ * kao "pixels" u jedinicama ops/s, tj. piksela u sekundi.
+ * 
+ * @author Marko Brlek
+ *
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class PixelCounter {
+
+	public long pixels;
+
+	@Setup(Level.Iteration)
+	public void reset() {
+		pixels = 0;
+	}
+}
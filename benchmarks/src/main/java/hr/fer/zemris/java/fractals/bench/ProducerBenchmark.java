@@ -0,0 +1,102 @@
+package hr.fer.zemris.java.fractals.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import hr.fer.zemris.java.fractals.viewer.IFractalProducer;
+import hr.fer.zemris.math.Complex;
+
+/**
+ * Zajednički dio mjerenja za sve proizvođače. Svaki poziv mjerene metode
+ * računa jedan cijeli okvir pozivom {@link IFractalProducer#produce}, bez
+ * FractalViewera.
+ * 
+ * Podrazredi postavljaju parametre svog proizvođača u {@link #configure(Complex[])}.
+ * 
+ * @author Marko Brlek
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public abstract class ProducerBenchmark {
+
+	@Param({ "unit4", "mixed6", "unit12" })
+	public String polynomial;
+
+	@Param({ "full", "boundary" })
+	public String viewport;
+
+	@Param({ "640x480", "1920x1080" })
+	public String resolution;
+
+	@Param({ "scalar", "simd" })
+	public String kernel;
+
+	private IFractalProducer producer;
+	private StubObserver observer;
+	private AtomicBoolean cancel;
+	private double[] view;
+	private int width;
+	private int height;
+	private long requestNo;
+
+	/**
+	 * Postavlja statičke parametre proizvođača (broj radnika, traka, jezgru...)
+	 * te poziva njegovu init metodu.
+	 * 
+	 * @param roots nultočke polinoma
+	 */
+	protected abstract void configure(Complex[] roots);
+
+	/**
+	 * Stvara proizvođača koji se mjeri.
+	 * 
+	 * @return proizvođač
+	 */
+	protected abstract IFractalProducer createProducer();
+
+	@Setup(Level.Trial)
+	public void setup() {
+		view = Catalogue.viewport(viewport);
+		int[] size = Catalogue.resolution(resolution);
+		width = size[0];
+		height = size[1];
+
+		configure(Catalogue.roots(polynomial));
+		observer = new StubObserver();
+		cancel = new AtomicBoolean(false);
+		producer = createProducer();
+		producer.setup();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		producer.close();
+	}
+
+	@Benchmark
+	public void produce(PixelCounter counter, Blackhole bh) {
+		producer.produce(view[0], view[1], view[2], view[3], width, height, requestNo++, observer, cancel);
+		bh.consume(observer.lastData);
+		counter.pixels += (long) width * height;
+	}
+}
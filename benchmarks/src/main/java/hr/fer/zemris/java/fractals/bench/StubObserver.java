@@ -0,0 +1,21 @@
+package hr.fer.zemris.java.fractals.bench;
+
+import hr.fer.zemris.java.fractals.viewer.IFractalResultObserver;
+
+/**
+ * Promatrač koji samo pamti zadnji rezultat, umjesto FractalViewera.
+ * 
+ * @author Marko Brlek
+ *
+ */
+public class StubObserver implements IFractalResultObserver {
+
+	short[] lastData;
+	long lastRequestNo;
+
+	@Override
+	public void acceptResult(short[] data, short colors, long requestNo) {
+		this.lastData = data;
+		this.lastRequestNo = requestNo;
+	}
+}
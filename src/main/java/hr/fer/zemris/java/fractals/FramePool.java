@@ -0,0 +1,109 @@
+package hr.fer.zemris.java.fractals;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+import hr.fer.zemris.java.fractals.viewer.IFractalResultObserver;
+
+/**
+ * Bazen polja za rezultate okvira.
+ *
+ * Proizvođač za svaki okvir uzima polje iz bazena umjesto da stvara novo
+ * (za 4K okvir to je 16 MB koji bi inače završili u staroj generaciji). Polje
+ * prekinutog okvira odmah se vraća u bazen.
+ *
+ * Polje se u bazen vraća samo kad je sigurno da ga nitko više ne čita.
+ * FractalViewer čuva predano polje i iz njega ponovno crta prozor, a ne javlja
+ * kad ga je prestao koristiti, pa polje predano njemu (i svakom promatraču koji
+ * ne javlja kraj korištenja) napušta bazen i postaje njegovo. Promatrač koji
+ * polje koristi samo dok traje acceptResult ({@link Borrowing}, npr. promatrač
+ * iz {@link Symmetry.Reduction#expanding}) povratkom iz acceptResult javlja da
+ * je gotov, pa se njegovo polje vraća u bazen.
+ *
+ * @author Marko Brlek
+ *
+ */
+public class FramePool {
+
+	/**
+	 * Najveći broj slobodnih polja u bazenu.
+	 */
+	public static final int MAX_FREE = 2;
+
+	/**
+	 * Promatrač koji predano polje koristi samo za vrijeme poziva acceptResult
+	 * i ne čuva ga nakon povratka.
+	 */
+	public interface Borrowing extends IFractalResultObserver {
+	}
+
+	private final ArrayDeque<short[]> free = new ArrayDeque<>();
+
+	private long allocated;
+	private long reused;
+	private long handedOver;
+
+	/**
+	 * Vraća polje zadane duljine, iz bazena ako u njemu ima takvo. Slobodna polja
+	 * drugih duljina ostaju u bazenu (npr. polja temeljnog područja simetričnog
+	 * okvira i polja cijelog okvira). Sadržaj polja iz bazena je sadržaj nekog
+	 * prethodnog okvira.
+	 *
+	 * @param length duljina polja
+	 * @return polje za rezultate okvira
+	 */
+	public synchronized short[] acquire(int length) {
+		for (Iterator<short[]> it = free.iterator(); it.hasNext();) {
+			short[] buffer = it.next();
+			if (buffer.length == length) {
+				it.remove();
+				reused++;
+				return buffer;
+			}
+		}
+		allocated++;
+		return new short[length];
+	}
+
+	/**
+	 * Vraća polje u bazen. Ako je bazen pun, odbacuje se najstarije slobodno
+	 * polje.
+	 *
+	 * @param buffer polje koje se više ne koristi
+	 */
+	public synchronized void release(short[] buffer) {
+		if (free.size() == MAX_FREE) {
+			free.removeLast();
+		}
+		free.push(buffer);
+	}
+
+	/**
+	 * Predaje okvir promatraču. Polje se nakon povratka vraća u bazen ako je
+	 * promatrač {@link Borrowing}, a inače ga promatrač zadržava i ono više nije
+	 * dio bazena. Pozivatelj nakon poziva više ne smije vratiti polje u bazen,
+	 * ni ako acceptResult baci iznimku.
+	 *
+	 * @param observer  promatrač
+	 * @param buffer    polje iz bazena s rezultatima okvira
+	 * @param colors    broj boja
+	 * @param requestNo redni broj zahtjeva
+	 */
+	public void deliver(IFractalResultObserver observer, short[] buffer, short colors, long requestNo) {
+		if (!(observer instanceof Borrowing)) {
+			synchronized (this) {
+				handedOver++;
+			}
+			observer.acceptResult(buffer, colors, requestNo);
+			return;
+		}
+		observer.acceptResult(buffer, colors, requestNo);
+		release(buffer);
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "Frame pool: " + allocated + " buffers allocated, " + reused + " reused, " + handedOver
+				+ " handed over.";
+	}
+}
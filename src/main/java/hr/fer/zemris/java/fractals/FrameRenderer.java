@@ -0,0 +1,52 @@
+package hr.fer.zemris.java.fractals;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Paralelno računa cijeli prikaz zadane veličine u predano polje.
+ * 
+ * Implementiraju ga proizvođači (NewtonP1, NewtonP2, NewtonParallel), svaki sa
+ * svojim načinom raspodjele posla, a koriste ga dijelovi koji okvir slažu iz
+ * više manjih prikaza, npr. {@link TileCache}.
+ * 
+ * @author Marko Brlek
+ *
+ */
+public interface FrameRenderer {
+
+	/**
+	 * Računa indekse nultočaka za sve piksele prikaza i sprema ih u data[].
+	 * 
+	 * @param reMin  najmanji realni dio prikaza
+	 * @param reMax  najveći realni dio prikaza
+	 * @param imMin  najmanji imaginarni dio prikaza
+	 * @param imMax  najveći imaginarni dio prikaza
+	 * @param width  širina u pikselima
+	 * @param height visina u pikselima
+	 * @param m      najveći broj iteracija
+	 * @param data   polje veličine width*height za rezultate
+	 * @param cancel zastavica za prekid računanja
+	 */
+	void render(double reMin, double reMax, double imMin, double imMax, int width, int height, int m,
+			short[] data, AtomicBoolean cancel);
+
+	/**
+	 * Kao {@link #render}, ali računa samo piksele na mreži razmaka step koji u
+	 * data[] još imaju vrijednost {@link NewtonKernel#UNKNOWN}.
+	 * 
+	 * @param step razmak između računatih piksela
+	 */
+	void renderLattice(double reMin, double reMax, double imMin, double imMax, int width, int height, int step,
+			int m, short[] data, AtomicBoolean cancel);
+
+	/**
+	 * Stvara {@link IterationBudget} koji piksele računa na radnicima ovog
+	 * proizvođača. Proizvođač koji ima radnike tek nakon setup() smije se pitati
+	 * tek tada.
+	 * 
+	 * @return prilagodljivi broj iteracija za okvire ovog proizvođača
+	 */
+	default IterationBudget createBudget() {
+		return new IterationBudget();
+	}
+}
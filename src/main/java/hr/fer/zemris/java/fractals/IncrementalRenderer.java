@@ -0,0 +1,156 @@
+package hr.fer.zemris.java.fractals;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Ponovno korištenje prethodnog okvira pri pomicanju i zumiranju.
+ *
+ * Pamti zadnji izračunati okvir i njegov prikaz. Ako je novi prikaz iste
+ * veličine pomaknut za cijeli broj piksela, ili uz to 2x udaljen ili 2x
+ * približen, dio piksela novog okvira pada točno na piksele starog. Takvi
+ * pikseli se prepisuju, a ostali se označe s {@link NewtonKernel#UNKNOWN} i
+ * računaju se pomoću {@link FrameRenderer#renderLattice} s razmakom 1. Tako
+ * pomicanje računa samo otkrivene pruge, a zumiranje samo piksele između
+ * starih.
+ *
+ * @author Marko Brlek
+ *
+ */
+public class IncrementalRenderer {
+
+	/**
+	 * Koliko (u pikselima) se položaj piksela novog okvira smije razlikovati od
+	 * piksela starog da bi se smatrali istim pikselom.
+	 */
+	public static final double GRID_TOLERANCE = 1e-6;
+
+	private PackedFrame previous;
+	private double reMin;
+	private double reMax;
+	private double imMin;
+	private double imMax;
+	private int width;
+	private int height;
+	private int m;
+
+	private long reused;
+	private long computed;
+
+	/**
+	 * Računa prikaz iz prethodnog okvira ako se on može iskoristiti.
+	 *
+	 * @param renderer proizvođač koji računa preostale piksele
+	 * @param reMin    najmanji realni dio prikaza
+	 * @param reMax    najveći realni dio prikaza
+	 * @param imMin    najmanji imaginarni dio prikaza
+	 * @param imMax    najveći imaginarni dio prikaza
+	 * @param width    širina u pikselima
+	 * @param height   visina u pikselima
+	 * @param m        najveći broj iteracija
+	 * @param data     polje veličine width*height za rezultate
+	 * @param cancel   zastavica za prekid računanja
+	 * @return true ako je prikaz izračunat, false ako se prethodni okvir ne može
+	 *         iskoristiti i prikaz treba izračunati cijeli
+	 */
+	public boolean render(FrameRenderer renderer, double reMin, double reMax, double imMin, double imMax, int width,
+			int height, int m, short[] data, AtomicBoolean cancel) {
+
+		if (previous == null || width != this.width || height != this.height || m != this.m) {
+			return false;
+		}
+		int[] cols = map(reMin - this.reMin, (reMax - reMin) / (width - 1), (this.reMax - this.reMin) / (width - 1),
+				width);
+		int[] rows = map(this.imMax - imMax, (imMax - imMin) / (height - 1), (this.imMax - this.imMin) / (height - 1),
+				height);
+		if (cols == null || rows == null) {
+			return false;
+		}
+
+		Arrays.fill(data, NewtonKernel.UNKNOWN);
+		int count = 0;
+		for (int y = 0; y < height; y++) {
+			if (rows[y] < 0) continue;
+			int offset = y * width;
+			int source = rows[y] * width;
+			for (int x = 0; x < width; x++) {
+				if (cols[x] < 0) continue;
+				data[offset + x] = previous.get(source + cols[x]);
+				count++;
+			}
+		}
+		if (count == 0) {
+			return false;
+		}
+
+		renderer.renderLattice(reMin, reMax, imMin, imMax, width, height, 1, m, data, cancel);
+		reused += count;
+		computed += data.length - count;
+		return true;
+	}
+
+	/**
+	 * Za svaki stupac (redak) novog okvira vraća stupac (redak) starog okvira na
+	 * istom mjestu ili -1 ako ga nema. Vraća null ako se razmaci piksela ne
+	 * odnose kao 1:1, 1:2 ili 2:1 ili ako pomak nije cijeli broj piksela.
+	 *
+	 * @param shift    pomak prvog piksela novog okvira od prvog piksela starog
+	 * @param spacing  razmak piksela novog okvira
+	 * @param previous razmak piksela starog okvira
+	 * @param size     broj piksela
+	 */
+	private static int[] map(double shift, double spacing, double previous, int size) {
+		// položaji se mjere u jedinicama manjeg od dva razmaka
+		double fine = Math.min(spacing, previous);
+		long step = Math.round(spacing / fine);
+		long previousStep = Math.round(previous / fine);
+		if (step * previousStep > 2 || Math.abs(spacing / fine - step) * size > GRID_TOLERANCE
+				|| Math.abs(previous / fine - previousStep) * size > GRID_TOLERANCE) {
+			return null;
+		}
+		double offset = shift / fine;
+		long rounded = Math.round(offset);
+		if (!(Math.abs(offset - rounded) < GRID_TOLERANCE) || Math.abs(rounded) > 2L * size) {
+			return null;
+		}
+
+		int[] map = new int[size];
+		for (int i = 0; i < size; i++) {
+			long position = rounded + i * step;
+			long j = Math.floorDiv(position, previousStep);
+			map[i] = position % previousStep == 0 && j >= 0 && j < size ? (int) j : -1;
+		}
+		return map;
+	}
+
+	/**
+	 * Pamti izračunati okvir za sljedeći prikaz. Okvir se sprema kao
+	 * {@link PackedFrame}, pa se predano polje smije dalje mijenjati ili vratiti u
+	 * {@link FramePool}.
+	 *
+	 * @param reMin  najmanji realni dio prikaza
+	 * @param reMax  najveći realni dio prikaza
+	 * @param imMin  najmanji imaginarni dio prikaza
+	 * @param imMax  najveći imaginarni dio prikaza
+	 * @param width  širina u pikselima
+	 * @param height visina u pikselima
+	 * @param m      najveći broj iteracija
+	 * @param data   rezultati okvira
+	 */
+	public void remember(double reMin, double reMax, double imMin, double imMax, int width, int height, int m,
+			short[] data) {
+		this.previous = PackedFrame.pack(data);
+		this.reMin = reMin;
+		this.reMax = reMax;
+		this.imMin = imMin;
+		this.imMax = imMax;
+		this.width = width;
+		this.height = height;
+		this.m = m;
+	}
+
+	@Override
+	public String toString() {
+		return "Incremental: " + reused + " pixels reused, " + computed + " computed.";
+	}
+}
@@ -0,0 +1,394 @@
+package hr.fer.zemris.java.fractals;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Prilagodljivi broj iteracija za jedan okvir.
+ *
+ * Prije okvira računa se rijetka mreža od {@link #SAMPLES}x{@link #SAMPLES}
+ * piksela prikaza s punim brojem iteracija, u preciznosti u kojoj se računa i
+ * okvir, i bilježi se koliko je iteracija trebalo pikselima koji su
+ * konvergirali nekoj nultočki. Za okvir se bira
+ * najmanja potencija broja 2 koja pokriva udio {@link #COVERAGE} tih točaka, pa
+ * pikseli koji ne konvergiraju ne troše svih
+ * {@link NewtonKernel#MAX_ITERATIONS} iteracija.
+ *
+ * Piksel koji uz manji broj iteracija ne konvergira jezgra označi s
+ * {@link NewtonKernel#CAPPED}. Nakon okvira {@link #refine} ponovno računa
+ * takve piksele uz rub bazena s dvostruko većim brojem iteracija, sve do
+ * {@link NewtonKernel#MAX_ITERATIONS}, a ostali dobivaju indeks 0 kao da su
+ * potrošili sve iteracije.
+ *
+ * Uzorak i ponovno računanje izvode se na izvršitelju proizvođača, s najviše
+ * onoliko poslova koliko proizvođač ima radnika, pa se ne natječu s drugim
+ * bazenima za procesore.
+ *
+ * @author Marko Brlek
+ *
+ */
+public class IterationBudget {
+
+	/**
+	 * Broj točaka uzorka po stranici prikaza.
+	 */
+	public static final int SAMPLES = 32;
+
+	/**
+	 * Udio konvergentnih točaka uzorka koje odabrani broj iteracija mora
+	 * pokriti.
+	 */
+	public static final double COVERAGE = 0.999;
+
+	/**
+	 * Najmanji broj iteracija koji se bira.
+	 */
+	public static final int MIN_BUDGET = 32;
+
+	/**
+	 * Najveći broj piksela koje jedan posao računa odjednom; dulji popisi dijele
+	 * se na dijelove koje radnici proizvođača uzimaju redom.
+	 */
+	public static final int CHUNK = 128;
+
+	private final Executor executor;
+	private final int parallelism;
+
+	private int budget;
+	private int refined;
+
+	/**
+	 * Konstruktor bez izvršitelja; sve se računa u dretvi pozivatelja.
+	 */
+	public IterationBudget() {
+		this(null, 1);
+	}
+
+	/**
+	 * Konstruktor prima izvršitelja i broj radnika proizvođača.
+	 *
+	 * @param executor    izvršitelj na kojem se pikseli računaju, null za dretvu
+	 *                    pozivatelja
+	 * @param parallelism najveći broj istovremenih poslova, uključujući dretvu
+	 *                    pozivatelja
+	 */
+	public IterationBudget(Executor executor, int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1.");
+		}
+		this.executor = executor;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Bira broj iteracija za prikaz iz uzorka piksela. Uzorak se računa u istoj
+	 * preciznosti kao pikseli prikaza (vidi {@link NewtonKernel#iteratePixels}),
+	 * a njegovi rani prekidi ne ulaze u statistiku okvira.
+	 *
+	 * @param kernel jezgra kojom se računa
+	 * @param reMin  najmanji realni dio prikaza
+	 * @param reMax  najveći realni dio prikaza
+	 * @param imMin  najmanji imaginarni dio prikaza
+	 * @param imMax  najveći imaginarni dio prikaza
+	 * @param width  širina u pikselima
+	 * @param height visina u pikselima
+	 * @return odabrani broj iteracija
+	 */
+	public int choose(NewtonKernel kernel, double reMin, double reMax, double imMin, double imMax, int width,
+			int height) {
+		// piksel u sredini svakog od SAMPLES x SAMPLES polja prikaza
+		int[] pixels = new int[SAMPLES * SAMPLES];
+		for (int y = 0; y < SAMPLES; y++) {
+			int row = (int) ((y + 0.5) / SAMPLES * (height - 1) + 0.5);
+			for (int x = 0; x < SAMPLES; x++) {
+				pixels[y * SAMPLES + x] = row * width + (int) ((x + 0.5) / SAMPLES * (width - 1) + 0.5);
+			}
+		}
+		int[] results = new int[pixels.length];
+		iterate(kernel, reMin, reMax, imMin, imMax, width, height, pixels, 0, pixels.length,
+				NewtonKernel.MAX_ITERATIONS, results, new int[2], new AtomicBoolean());
+
+		int[] iterations = new int[pixels.length];
+		int converged = 0;
+		for (int packed : results) {
+			int iters = NewtonKernel.converged(packed, NewtonKernel.MAX_ITERATIONS);
+			if (iters >= 0) {
+				iterations[converged++] = iters;
+			}
+		}
+
+		int needed = MIN_BUDGET;
+		if (converged > 0) {
+			Arrays.sort(iterations, 0, converged);
+			needed = Math.max(needed, iterations[(int) Math.ceil(COVERAGE * converged) - 1] + 1);
+		}
+		budget = Math.min(Integer.highestOneBit(needed - 1) << 1, NewtonKernel.MAX_ITERATIONS);
+		refined = 0;
+		return budget;
+	}
+
+	/**
+	 * Razrješava piksele označene s {@link NewtonKernel#CAPPED}. Označeni piksel
+	 * kojem je neki od osam susjeda razriješen računa se ponovno s dvostruko
+	 * većim brojem iteracija; ako tada konvergira nekoj nultočki, provjeravaju se
+	 * i njegovi označeni susjedi (piksel prekinut zbog ciklusa ne širi rub). Piksel koji ni uz {@link NewtonKernel#MAX_ITERATIONS} ne
+	 * konvergira, kao i označeni piksel okružen samo označenima, dobiva indeks 0.
+	 *
+	 * Pikseli se računaju u valovima: svi pikseli na popisu računaju se
+	 * paralelno na izvršitelju proizvođača u preciznosti prikaza, a zatim se
+	 * redom razrješavaju i dodaju susjedi za sljedeći val.
+	 *
+	 * @param kernel jezgra kojom se računa
+	 * @param reMin  najmanji realni dio prikaza
+	 * @param reMax  najveći realni dio prikaza
+	 * @param imMin  najmanji imaginarni dio prikaza
+	 * @param imMax  najveći imaginarni dio prikaza
+	 * @param width  širina u pikselima
+	 * @param height visina u pikselima
+	 * @param m      broj iteracija s kojim je okvir izračunat
+	 * @param data   rezultati okvira
+	 * @param cancel zastavica za prekid računanja
+	 */
+	public void refine(NewtonKernel kernel, double reMin, double reMax, double imMin, double imMax, int width,
+			int height, int m, short[] data, AtomicBoolean cancel) {
+
+		int[] work = new int[64];
+		int size = 0;
+		for (int p = 0; p < data.length; p++) {
+			if (data[p] == NewtonKernel.CAPPED && onBoundary(p, width, height, data)) {
+				if (size == work.length) work = Arrays.copyOf(work, 2 * size);
+				work[size++] = p;
+			}
+		}
+
+		// piksel na popisu označen je s UNKNOWN da ne uđe na popis dvaput
+		for (int i = 0; i < size; i++) {
+			data[work[i]] = NewtonKernel.UNKNOWN;
+		}
+
+		int budget = m;
+		int[] next = new int[work.length];
+		int[] results = new int[work.length];
+		int[] stops = new int[2];
+		try {
+			while (size > 0 && budget < NewtonKernel.MAX_ITERATIONS) {
+				budget = Math.min(2 * budget, NewtonKernel.MAX_ITERATIONS);
+				int nextSize = 0;
+				for (int done = 0; done < size;) {
+					int end = size;
+					if (results.length < end) results = Arrays.copyOf(results, work.length);
+					iterate(kernel, reMin, reMax, imMin, imMax, width, height, work, done, end, budget, results,
+							stops, cancel);
+					if (cancel.get()) return;
+					refined += end - done;
+
+					for (int i = done; i < end; i++) {
+						int p = work[i];
+						int packed = results[i];
+						short value = (short) packed;
+						if (value == NewtonKernel.CAPPED) {
+							// i dalje ne konvergira, pokušava se s većim brojem iteracija
+							if (nextSize == next.length) next = Arrays.copyOf(next, 2 * nextSize);
+							next[nextSize++] = p;
+							continue;
+						}
+						data[p] = value;
+						if (NewtonKernel.converged(packed, budget) < 0) continue;
+						// razriješeni piksel pomiče rub prema označenim susjedima
+						int y = p / width;
+						int x = p - y * width;
+						for (int dy = -1; dy <= 1; dy++) {
+							for (int dx = -1; dx <= 1; dx++) {
+								int nx = x + dx;
+								int ny = y + dy;
+								if (nx < 0 || ny < 0 || nx >= width || ny >= height) continue;
+								int q = ny * width + nx;
+								if (data[q] != NewtonKernel.CAPPED) continue;
+								data[q] = NewtonKernel.UNKNOWN;
+								if (size == work.length) work = Arrays.copyOf(work, 2 * size);
+								work[size++] = q;
+							}
+						}
+					}
+					done = end;
+				}
+				int[] t = work;
+				work = next;
+				next = t;
+				size = nextSize;
+			}
+		} finally {
+			kernel.countStops(stops);
+		}
+
+		for (int p = 0; p < data.length; p++) {
+			if (data[p] == NewtonKernel.CAPPED || data[p] == NewtonKernel.UNKNOWN) {
+				data[p] = 1;
+			}
+		}
+	}
+
+	/**
+	 * Računa piksele pixels[from..to) pomoću
+	 * {@link NewtonKernel#iteratePixels}. Popis dulji od {@link #CHUNK} dijeli
+	 * se na dijelove koje uzimaju dretva pozivatelja i najviše parallelism - 1
+	 * poslova na izvršitelju. Pozivatelj ne čeka poslove koji još nisu počeli,
+	 * pa se smije pozvati i iz dretve samog izvršitelja.
+	 */
+	private void iterate(NewtonKernel kernel, double reMin, double reMax, double imMin, double imMax,
+			int width, int height, int[] pixels, int from, int to, int m, int[] results, int[] stops,
+			AtomicBoolean cancel) {
+		int chunks = (to - from + CHUNK - 1) / CHUNK;
+		int helpers = executor == null ? 0 : Math.min(parallelism, chunks) - 1;
+		if (helpers <= 0) {
+			kernel.iteratePixels(reMin, reMax, imMin, imMax, width, height, pixels, from, to, m, results, stops,
+					cancel);
+			return;
+		}
+		PosaoPiksela posao = new PosaoPiksela(kernel, reMin, reMax, imMin, imMax, width, height, pixels, from, to,
+				chunks, m, results, cancel);
+		try {
+			for (int i = 0; i < helpers; i++) {
+				executor.execute(posao);
+			}
+		} catch (RejectedExecutionException e) {
+			// ostatak računa dretva pozivatelja
+		}
+		posao.run();
+		posao.await();
+		stops[0] += posao.stops[0];
+		stops[1] += posao.stops[1];
+	}
+
+	/**
+	 * Popis piksela podijeljen na dijelove od najviše {@link #CHUNK} piksela.
+	 * Svaka dretva koja izvodi posao uzima dijelove dok ih ima.
+	 */
+	private static final class PosaoPiksela implements Runnable {
+
+		private final NewtonKernel kernel;
+		private final double reMin;
+		private final double reMax;
+		private final double imMin;
+		private final double imMax;
+		private final int width;
+		private final int height;
+		private final int[] pixels;
+		private final int from;
+		private final int to;
+		private final int chunks;
+		private final int m;
+		private final int[] results;
+		private final AtomicBoolean cancel;
+		private final AtomicInteger next = new AtomicInteger();
+		final int[] stops = new int[2];
+
+		private int done;
+		private Throwable failure;
+
+		PosaoPiksela(NewtonKernel kernel, double reMin, double reMax, double imMin, double imMax, int width,
+				int height, int[] pixels, int from, int to, int chunks, int m, int[] results, AtomicBoolean cancel) {
+			this.kernel = kernel;
+			this.reMin = reMin;
+			this.reMax = reMax;
+			this.imMin = imMin;
+			this.imMax = imMax;
+			this.width = width;
+			this.height = height;
+			this.pixels = pixels;
+			this.from = from;
+			this.to = to;
+			this.chunks = chunks;
+			this.m = m;
+			this.results = results;
+			this.cancel = cancel;
+		}
+
+		@Override
+		public void run() {
+			int chunk;
+			while ((chunk = next.getAndIncrement()) < chunks) {
+				int start = from + chunk * CHUNK;
+				int end = Math.min(start + CHUNK, to);
+				int[] chunkStops = new int[2];
+				Throwable thrown = null;
+				try {
+					kernel.iteratePixels(reMin, reMax, imMin, imMax, width, height, pixels, start, end, m, results,
+							chunkStops, cancel);
+				} catch (Throwable t) {
+					thrown = t;
+				} finally {
+					finished(chunkStops, thrown);
+				}
+			}
+		}
+
+		/**
+		 * Bilježi gotov dio i prvu iznimku. Uz iznimku postavlja zastavicu cancel,
+		 * pa ostali dijelovi izlaze.
+		 */
+		private synchronized void finished(int[] chunkStops, Throwable thrown) {
+			stops[0] += chunkStops[0];
+			stops[1] += chunkStops[1];
+			if (thrown != null && failure == null) {
+				failure = thrown;
+				cancel.set(true);
+			}
+			if (++done == chunks) {
+				notifyAll();
+			}
+		}
+
+		/**
+		 * Čeka da svi dijelovi budu gotovi i baca prvu iznimku. Zastavica prekida
+		 * dretve vraća se prije povratka.
+		 */
+		synchronized void await() {
+			boolean interrupted = false;
+			try {
+				while (done < chunks) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			} finally {
+				if (interrupted) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			if (failure instanceof RuntimeException) {
+				throw (RuntimeException) failure;
+			}
+			if (failure instanceof Error) {
+				throw (Error) failure;
+			}
+			if (failure != null) {
+				throw new IllegalStateException("Task failed.", failure);
+			}
+		}
+	}
+
+	private static boolean onBoundary(int p, int width, int height, short[] data) {
+		int y = p / width;
+		int x = p - y * width;
+		for (int dy = -1; dy <= 1; dy++) {
+			for (int dx = -1; dx <= 1; dx++) {
+				int nx = x + dx;
+				int ny = y + dy;
+				if (nx < 0 || ny < 0 || nx >= width || ny >= height) continue;
+				if (data[ny * width + nx] != NewtonKernel.CAPPED) return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return "Iteration budget: " + budget + ", " + refined + " capped pixels recomputed.";
+	}
+}
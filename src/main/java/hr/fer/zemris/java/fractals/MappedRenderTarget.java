@@ -0,0 +1,189 @@
+package hr.fer.zemris.java.fractals;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Rezultat crtanja zapisan izravno u datoteku mapiranu u memoriju.
+ *
+ * Datoteka je u istom formatu kao sirova mapa indeksa iz {@link NewtonBatch}a
+ * (width*height vrijednosti tipa short, big-endian, redak po redak), a pikseli
+ * se adresiraju long indeksom, pa slika može imati više od 2^31 piksela i ne
+ * mora stati na heap. Pločice se zapisuju u pojas od {@link #getBandRows()}
+ * redaka koji je trenutno mapiran. Kad pločica nije unutar pojasa, pojas se
+ * sprema na disk i mapira se novi koji počinje prvim retkom pločice, pa
+ * crtanje redom po pločicama (redak po redak pločica) prolazi datotekom
+ * jednom. Postojeća datoteka može se otvoriti i bez brisanja, za nastavak
+ * prekinutog crtanja (vidi {@link RenderCheckpoint}).
+ *
+ * @author Marko Brlek
+ *
+ */
+public class MappedRenderTarget implements Closeable {
+
+	/**
+	 * Najveća veličina jednog mapiranja u bajtovima.
+	 */
+	private static final long MAX_MAPPING = Integer.MAX_VALUE;
+
+	private final FileChannel channel;
+	private final int width;
+	private final int height;
+	private final int bandRows;
+
+	private MappedByteBuffer band;
+	private ShortBuffer shorts;
+	private int bandStart;
+
+	/**
+	 * Stvara (ili prepisuje) datoteku za sliku zadane veličine.
+	 *
+	 * @param file     datoteka
+	 * @param width    širina u pikselima
+	 * @param height   visina u pikselima
+	 * @param bandRows broj redaka koji se mapira odjednom
+	 * @throws IOException ako se datoteka ne može stvoriti
+	 */
+	public MappedRenderTarget(Path file, int width, int height, int bandRows) throws IOException {
+		this(file, width, height, bandRows, false);
+	}
+
+	/**
+	 * Stvara datoteku za sliku zadane veličine ili otvara postojeću.
+	 *
+	 * @param file     datoteka
+	 * @param width    širina u pikselima
+	 * @param height   visina u pikselima
+	 * @param bandRows broj redaka koji se mapira odjednom
+	 * @param resume   true ako se otvara postojeća datoteka iste veličine bez
+	 *                 brisanja sadržaja
+	 * @throws IOException ako se datoteka ne može stvoriti ili otvoriti
+	 */
+	public MappedRenderTarget(Path file, int width, int height, int bandRows, boolean resume) throws IOException {
+		if (width < 1 || height < 1 || bandRows < 1) {
+			throw new IllegalArgumentException("Image and band must have at least one row and column.");
+		}
+		if (2L * width > MAX_MAPPING) {
+			throw new IllegalArgumentException("Image row is too long to be mapped.");
+		}
+		this.width = width;
+		this.height = height;
+		this.bandRows = (int) Math.min(bandRows, MAX_MAPPING / (2L * width));
+		if (resume) {
+			this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			if (channel.size() != 2L * width * height) {
+				channel.close();
+				throw new IllegalArgumentException("Output file doesn't match the image size.");
+			}
+		} else {
+			this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			// datoteka odmah dobiva punu veličinu, pa se i nakon prekida može nastaviti
+			channel.write(ByteBuffer.allocate(1), 2L * width * height - 1);
+		}
+	}
+
+	/**
+	 * Zapisuje pravokutnik piksela.
+	 *
+	 * @param xMin       prvi stupac pravokutnika u slici
+	 * @param yMin       prvi redak pravokutnika u slici
+	 * @param tileWidth  širina pravokutnika
+	 * @param tileHeight visina pravokutnika
+	 * @param data       pikseli pravokutnika, redak po redak
+	 * @throws IOException ako se pojas ne može mapirati ili spremiti
+	 */
+	public synchronized void write(int xMin, int yMin, int tileWidth, int tileHeight, short[] data)
+			throws IOException {
+		if (xMin < 0 || yMin < 0 || xMin + tileWidth > width || yMin + tileHeight > height) {
+			throw new IllegalArgumentException("Tile is outside of the image.");
+		}
+		if (tileHeight > bandRows) {
+			throw new IllegalArgumentException("Tile is taller than the mapped band.");
+		}
+		if (band == null || yMin < bandStart || yMin + tileHeight > bandStart + bandRows) {
+			map(yMin);
+		}
+		for (int y = 0; y < tileHeight; y++) {
+			shorts.put((yMin + y - bandStart) * width + xMin, data, y * tileWidth, tileWidth);
+		}
+	}
+
+	/**
+	 * Sprema trenutni pojas i mapira pojas koji počinje retkom start.
+	 */
+	private void map(int start) throws IOException {
+		flush();
+		int rows = Math.min(bandRows, height - start);
+		band = channel.map(FileChannel.MapMode.READ_WRITE, 2L * start * width, 2L * rows * width);
+		shorts = band.asShortBuffer();
+		bandStart = start;
+	}
+
+	/**
+	 * Sprema na disk sve dosad zapisane piksele. Raniji pojasevi spremljeni su
+	 * već pri mapiranju sljedećeg, pa se sprema samo trenutni.
+	 */
+	public synchronized void force() {
+		if (band != null) {
+			band.force();
+		}
+	}
+
+	/**
+	 * Sprema trenutni pojas na disk i otpušta ga.
+	 */
+	private void flush() {
+		if (band != null) {
+			band.force();
+			band = null;
+			shorts = null;
+		}
+	}
+
+	/**
+	 * Širina slike.
+	 *
+	 * @return širina u pikselima
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Visina slike.
+	 *
+	 * @return visina u pikselima
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Broj redaka koji se mapira odjednom.
+	 *
+	 * @return broj redaka pojasa
+	 */
+	public int getBandRows() {
+		return bandRows;
+	}
+
+	/**
+	 * Sprema zadnji pojas i zatvara datoteku. Datoteka uvijek ima punu veličinu,
+	 * a pikseli koji nisu zapisani imaju vrijednost 0.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+}
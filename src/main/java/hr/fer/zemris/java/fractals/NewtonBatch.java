@@ -0,0 +1,595 @@
+package hr.fer.zemris.java.fractals;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.imageio.ImageIO;
+
+import hr.fer.zemris.java.fractals.viewer.IFractalProducer;
+import hr.fer.zemris.java.fractals.viewer.IFractalResultObserver;
+import hr.fer.zemris.math.Complex;
+import hr.fer.zemris.math.ComplexPolynomial;
+import hr.fer.zemris.math.ComplexRootedPolynomial;
+
+/**
+ * Crta Newton-Raphson fraktal bez FractalViewera, npr. na poslužiteljima bez
+ * X servera.
+ *
+ * Sve parametre (nultočke, prikaz, rezoluciju, proizvođača) čita iz argumenata
+ * ili iz datoteke s poslom, poziva odabranog proizvođača izravno te rezultat
+ * zapisuje na disk kao sirovu mapu indeksa ili kao sliku.
+ *
+ * Primjer: "java hr.fer.zemris.java.fractals.NewtonBatch --roots=1;-1;i;-i
+ * --viewport=-2,2,-2,2 --size=1920x1080 --engine=p2 --output=out.png"
+ *
+ * Umjesto prikaza mogu se zadati središte s proizvoljno mnogo znamenaka i
+ * polumjer (--center=re,im --radius=1e-100); tada se crta
+ * {@link PerturbationRenderer}om.
+ *
+ * Uz --target=mapped slika se crta po pločicama izravno u datoteku mapiranu u
+ * memoriju ({@link OutOfCoreRenderer}), pa može imati i više od 2^31 piksela.
+ * Gotove pločice bilježe se u manifestu ({@link RenderCheckpoint}), a uz
+ * --resume=on prekinuto crtanje nastavlja se od pločica kojih u manifestu nema.
+ *
+ * @author Marko Brlek
+ *
+ */
+public class NewtonBatch {
+
+	/**
+	 * Parametri jednog posla crtanja.
+	 *
+	 * @author Marko Brlek
+	 *
+	 */
+	public static class Job {
+		Complex[] roots;
+		double reMin = -2;
+		double reMax = 2;
+		double imMin = -2;
+		double imMax = 2;
+		int width = 1024;
+		int height = 1024;
+		String engine = "p2";
+		Integer workers;
+		Integer mintracks;
+		Integer tileSize;
+		boolean simd;
+		boolean rootForm;
+		boolean adaptive;
+		boolean singlePrecision;
+		boolean symmetric;
+		boolean mapped;
+		boolean resume;
+		boolean stats;
+		BigDecimal centerRe;
+		BigDecimal centerIm;
+		Double radius;
+		Path output;
+		String format;
+
+		/**
+		 * Stvara posao iz parova ključ-vrijednost (ključevi su imena argumenata bez
+		 * "--").
+		 *
+		 * @param params parametri posla
+		 * @return posao
+		 */
+		public static Job parse(Map<String, String> params) {
+			Job job = new Job();
+
+			for (Map.Entry<String, String> e : params.entrySet()) {
+				String value = e.getValue();
+				switch (e.getKey()) {
+				case "roots":
+					job.roots = parseRoots(value);
+					break;
+				case "viewport":
+					String[] parts = value.split(",");
+					if (parts.length != 4) {
+						throw new IllegalArgumentException("Viewport must be reMin,reMax,imMin,imMax.");
+					}
+					job.reMin = Double.parseDouble(parts[0].trim());
+					job.reMax = Double.parseDouble(parts[1].trim());
+					job.imMin = Double.parseDouble(parts[2].trim());
+					job.imMax = Double.parseDouble(parts[3].trim());
+					break;
+				case "size":
+					String[] size = value.split("x");
+					if (size.length != 2) {
+						throw new IllegalArgumentException("Size must be WIDTHxHEIGHT.");
+					}
+					job.width = Integer.parseInt(size[0].trim());
+					job.height = Integer.parseInt(size[1].trim());
+					break;
+				case "engine":
+					if (!value.equals("p1") && !value.equals("p2") && !value.equals("parallel") && !value.equals("tiles")) {
+						throw new IllegalArgumentException("Unknown engine, expected p1, p2, parallel or tiles.");
+					}
+					job.engine = value;
+					break;
+				case "workers":
+					job.workers = Integer.parseInt(value);
+					break;
+				case "mintracks":
+					job.mintracks = Integer.parseInt(value);
+					break;
+				case "tilesize":
+					job.tileSize = Integer.parseInt(value);
+					break;
+				case "kernel":
+					if (!value.equals("simd") && !value.equals("scalar")) {
+						throw new IllegalArgumentException("Unknown kernel, expected simd or scalar.");
+					}
+					job.simd = value.equals("simd");
+					break;
+				case "step":
+					if (!value.equals("roots") && !value.equals("polynomial")) {
+						throw new IllegalArgumentException("Unknown Newton step, expected roots or polynomial.");
+					}
+					job.rootForm = value.equals("roots");
+					break;
+				case "budget":
+					if (!value.equals("adaptive") && !value.equals("fixed")) {
+						throw new IllegalArgumentException("Unknown iteration budget, expected adaptive or fixed.");
+					}
+					job.adaptive = value.equals("adaptive");
+					break;
+				case "precision":
+					if (!value.equals("auto") && !value.equals("double")) {
+						throw new IllegalArgumentException("Unknown precision, expected auto or double.");
+					}
+					job.singlePrecision = value.equals("auto");
+					break;
+				case "symmetry":
+					if (!value.equals("on") && !value.equals("off")) {
+						throw new IllegalArgumentException("Unknown symmetry, expected on or off.");
+					}
+					job.symmetric = value.equals("on");
+					break;
+				case "target":
+					if (!value.equals("heap") && !value.equals("mapped")) {
+						throw new IllegalArgumentException("Unknown target, expected heap or mapped.");
+					}
+					job.mapped = value.equals("mapped");
+					break;
+				case "resume":
+					if (!value.equals("on") && !value.equals("off")) {
+						throw new IllegalArgumentException("Unknown resume, expected on or off.");
+					}
+					job.resume = value.equals("on");
+					break;
+				case "stats":
+					if (!value.equals("on") && !value.equals("off")) {
+						throw new IllegalArgumentException("Unknown statistics, expected on or off.");
+					}
+					job.stats = value.equals("on");
+					break;
+				case "center":
+					String[] center = value.split(",");
+					if (center.length != 2) {
+						throw new IllegalArgumentException("Center must be re,im.");
+					}
+					job.centerRe = new BigDecimal(center[0].trim());
+					job.centerIm = new BigDecimal(center[1].trim());
+					break;
+				case "radius":
+					job.radius = Double.parseDouble(value);
+					if (!(job.radius >= PerturbationRenderer.MIN_RADIUS)) {
+						throw new IllegalArgumentException("Radius must be at least " + PerturbationRenderer.MIN_RADIUS + ".");
+					}
+					break;
+				case "output":
+					job.output = Path.of(value);
+					break;
+				case "format":
+					if (!value.equals("raw") && !value.equals("png")) {
+						throw new IllegalArgumentException("Unknown format, expected raw or png.");
+					}
+					job.format = value;
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown parameter " + e.getKey() + ".");
+				}
+			}
+
+			if (job.roots == null || job.roots.length < 2) {
+				throw new IllegalArgumentException("At least two roots are required.");
+			}
+			if (job.width < 2 || job.height < 2) {
+				throw new IllegalArgumentException("Image must be at least 2x2 pixels.");
+			}
+			if ((job.centerRe == null) != (job.radius == null)) {
+				throw new IllegalArgumentException("Center and radius must be set together.");
+			}
+			if (job.output == null) {
+				throw new IllegalArgumentException("Output file is required.");
+			}
+			if (job.format == null) {
+				job.format = job.output.toString().endsWith(".png") ? "png" : "raw";
+			}
+			if (job.mapped && !job.format.equals("raw")) {
+				throw new IllegalArgumentException("Mapped target requires raw format.");
+			}
+			if (job.resume && !job.mapped) {
+				throw new IllegalArgumentException("Resume requires --target=mapped.");
+			}
+			if (!job.mapped && (long) job.width * job.height > Integer.MAX_VALUE - 8) {
+				throw new IllegalArgumentException("Images over 2^31 pixels require --target=mapped.");
+			}
+			return job;
+		}
+
+		/**
+		 * Vraća parametre posla koji određuju rezultat, u obliku koji se zapisuje u
+		 * manifest kontrolne točke. Brojevi se zapisuju točno, pa se isti posao
+		 * uvijek opisuje istim tekstom.
+		 *
+		 * @return parametri posla
+		 */
+		public Map<String, String> describe() {
+			Map<String, String> params = new LinkedHashMap<>();
+			StringBuilder sb = new StringBuilder();
+			for (Complex root : roots) {
+				if (sb.length() > 0) sb.append(';');
+				sb.append(root.getReal()).append(',').append(root.getImaginary());
+			}
+			params.put("roots", sb.toString());
+			params.put("size", width + "x" + height);
+			if (centerRe != null) {
+				params.put("center", centerRe + "," + centerIm);
+				params.put("radius", Double.toString(radius));
+			} else {
+				params.put("viewport", reMin + "," + reMax + "," + imMin + "," + imMax);
+				params.put("engine", engine);
+				params.put("budget", adaptive ? "adaptive" : "fixed");
+				params.put("precision", singlePrecision ? "auto" : "double");
+			}
+			params.put("kernel", simd ? "simd" : "scalar");
+			params.put("step", rootForm ? "roots" : "polynomial");
+			params.put("tile", Integer.toString(OutOfCoreRenderer.TILE));
+			return params;
+		}
+
+		/**
+		 * Parsira nultočke odvojene s ';' u obliku koji prima {@link ImaginarniParser}.
+		 *
+		 * @param value nultočke, npr. "1;-1;0 + i2"
+		 * @return nultočke
+		 */
+		private static Complex[] parseRoots(String value) {
+			String[] parts = value.split(";");
+			Complex[] roots = new Complex[parts.length];
+			for (int i = 0; i < parts.length; i++) {
+				roots[i] = ImaginarniParser.parse(parts[i].trim());
+			}
+			return roots;
+		}
+	}
+
+	/**
+	 * Čita parametre, crta fraktal i zapisuje rezultat.
+	 *
+	 * @param args parametri oblika --ključ=vrijednost ili --job=datoteka
+	 */
+	public static void main(String[] args) {
+		Job job;
+		try {
+			job = Job.parse(parseArgs(args));
+		} catch (IllegalArgumentException | IOException e) {
+			System.out.println(e.getMessage());
+			return;
+		}
+
+		try {
+			if (job.mapped) {
+				renderMapped(job);
+			} else {
+				write(job, render(job));
+			}
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			return;
+		} catch (IOException e) {
+			System.out.println("Could not write " + job.output + ": " + e.getMessage());
+			return;
+		}
+		System.out.println("Written " + job.output + " (" + job.format + ").");
+	}
+
+	/**
+	 * Parsira argumente oblika --ključ=vrijednost. Argument --job=datoteka učitava
+	 * parametre iz datoteke (format java.util.Properties, isti ključevi bez "--"),
+	 * a ostali argumenti ih nadjačavaju.
+	 *
+	 * @param args Argumenti
+	 * @return parametri posla
+	 * @throws IOException ako se datoteka s poslom ne može pročitati
+	 */
+	public static Map<String, String> parseArgs(String[] args) throws IOException {
+		Map<String, String> params = new LinkedHashMap<>();
+		Map<String, String> overrides = new LinkedHashMap<>();
+
+		for (String arg : args) {
+			int eq = arg.indexOf('=');
+			if (!arg.startsWith("--") || eq < 0) {
+				throw new IllegalArgumentException("Invalid syntax.");
+			}
+			String key = arg.substring(2, eq);
+			String value = arg.substring(eq + 1);
+			if (key.equals("job")) {
+				Properties p = new Properties();
+				try (Reader r = Files.newBufferedReader(Path.of(value))) {
+					p.load(r);
+				}
+				for (String name : p.stringPropertyNames()) {
+					params.put(name, p.getProperty(name).trim());
+				}
+			} else if (overrides.put(key, value) != null) {
+				throw new IllegalArgumentException("Parameter " + key + " can't be set twice.");
+			}
+		}
+
+		params.putAll(overrides);
+		return params;
+	}
+
+	/**
+	 * Postavlja odabranog proizvođača, poziva ga jednom i vraća rezultat. Ispisuje
+	 * trajanje i broj piksela u sekundi.
+	 *
+	 * @param job posao
+	 * @return indeksi nultočaka za sve piksele
+	 */
+	public static short[] render(Job job) {
+		if (job.centerRe != null) {
+			return renderPerturbed(job);
+		}
+		IFractalProducer producer = createProducer(job);
+		short[][] result = new short[1][];
+		IFractalResultObserver observer = (data, colors, requestNo) -> result[0] = data;
+
+		producer.setup();
+		long start = System.nanoTime();
+		try {
+			producer.produce(job.reMin, job.reMax, job.imMin, job.imMax, job.width, job.height, 0, observer,
+					new AtomicBoolean(false));
+		} finally {
+			producer.close();
+		}
+		printRate(job, System.nanoTime() - start);
+		return result[0];
+	}
+
+	/**
+	 * Crta sliku po pločicama izravno u izlaznu datoteku mapiranu u memoriju i
+	 * usput sprema kontrolne točke. Uz resume nastavlja prekinuto crtanje istog
+	 * posla. Ispisuje trajanje i broj piksela u sekundi.
+	 *
+	 * @param job posao
+	 * @throws IOException ako zapisivanje ne uspije
+	 */
+	public static void renderMapped(Job job) throws IOException {
+		Map<String, String> parameters = job.describe();
+		RenderCheckpoint checkpoint = job.resume ? RenderCheckpoint.resume(job.output, parameters)
+				: RenderCheckpoint.create(job.output, parameters);
+
+		long start = System.nanoTime();
+		try (MappedRenderTarget target = new MappedRenderTarget(job.output, job.width, job.height,
+				OutOfCoreRenderer.TILE + 1, job.resume)) {
+			if (job.centerRe != null) {
+				ExecutorService pool = Executors.newFixedThreadPool(workers(job));
+				try {
+					PerturbationRenderer renderer = createPerturbationRenderer(job, pool);
+					OutOfCoreRenderer.render((xMin, yMin, tileWidth, tileHeight, data, cancel) -> renderer.render(
+							job.centerRe, job.centerIm, job.radius, job.width, job.height, xMin, yMin, tileWidth,
+							tileHeight, data), target, checkpoint, new AtomicBoolean(false));
+					System.out.println(renderer.takeStatistics());
+				} finally {
+					pool.shutdown();
+				}
+			} else {
+				renderMapped(job, target, checkpoint);
+			}
+		}
+		printRate(job, System.nanoTime() - start);
+	}
+
+	/**
+	 * Crta sliku po pločicama odabranim proizvođačem.
+	 */
+	private static void renderMapped(Job job, MappedRenderTarget target, RenderCheckpoint checkpoint)
+			throws IOException {
+		IFractalProducer producer = createProducer(job);
+		NewtonKernel kernel;
+		switch (job.engine) {
+		case "p1":
+			kernel = NewtonP1.kernel;
+			break;
+		case "tiles":
+			kernel = NewtonTiles.kernel;
+			break;
+		case "parallel":
+			kernel = NewtonParallel.kernel;
+			break;
+		default:
+			kernel = NewtonP2.kernel;
+		}
+
+		producer.setup();
+		try {
+			OutOfCoreRenderer.render((FrameRenderer) producer, kernel, job.adaptive, job.reMin, job.reMax, job.imMin,
+					job.imMax, target, checkpoint, new AtomicBoolean(false));
+		} finally {
+			producer.close();
+		}
+	}
+
+	/**
+	 * Crta prikaz zadan središtem i polumjerom {@link PerturbationRenderer}om.
+	 *
+	 * @param job posao
+	 * @return indeksi nultočaka za sve piksele
+	 */
+	private static short[] renderPerturbed(Job job) {
+		ExecutorService pool = Executors.newFixedThreadPool(workers(job));
+		try {
+			PerturbationRenderer renderer = createPerturbationRenderer(job, pool);
+
+			long start = System.nanoTime();
+			short[] data = renderer.render(job.centerRe, job.centerIm, job.radius, job.width, job.height);
+			System.out.println(renderer.takeStatistics());
+			printRate(job, System.nanoTime() - start);
+			return data;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Stvara {@link PerturbationRenderer} za nultočke posla. Uz "--step=roots"
+	 * i referentne orbite i double iteracija koriste korak iz nultočaka.
+	 *
+	 * @param job  posao
+	 * @param pool izvršitelj za pločice, gasi ga pozivatelj
+	 * @return renderer
+	 */
+	private static PerturbationRenderer createPerturbationRenderer(Job job, ExecutorService pool) {
+		ComplexRootedPolynomial crp = new ComplexRootedPolynomial(Complex.ONE, job.roots);
+		ComplexPolynomial polynomial = job.rootForm ? null : crp.toComplexPolynom();
+		NewtonKernel kernel = new NewtonKernel(crp, polynomial);
+		return new PerturbationRenderer(crp, polynomial, kernel, pool);
+	}
+
+	/**
+	 * Vraća broj dretvi posla, zadano broj procesora.
+	 */
+	private static int workers(Job job) {
+		return job.workers != null ? job.workers : Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Ispisuje trajanje i broj piksela u sekundi.
+	 *
+	 * @param job  posao
+	 * @param time trajanje u nanosekundama
+	 */
+	private static void printRate(Job job, long time) {
+		double seconds = time / 1e9;
+		long pixels = (long) job.width * job.height;
+		System.out.printf("Rendered %d pixels in %.3f s (%.0f pixels/s).%n", pixels, seconds, pixels / seconds);
+	}
+
+	/**
+	 * Postavlja statičke parametre odabranog proizvođača i stvara ga.
+	 *
+	 * @param job posao
+	 * @return proizvođač
+	 */
+	private static IFractalProducer createProducer(Job job) {
+		switch (job.engine) {
+		case "p1":
+			if (job.workers != null) NewtonP1.processors = job.workers;
+			NewtonP1.simd = job.simd;
+			NewtonP1.rootForm = job.rootForm;
+			NewtonP1.adaptive = job.adaptive;
+			NewtonP1.singlePrecision = job.singlePrecision;
+			NewtonP1.symmetric = job.symmetric;
+			NewtonP1.stats = job.stats;
+			NewtonP1.init(job.roots);
+			return new NewtonP1.Producer();
+		case "tiles":
+			if (job.workers != null) NewtonTiles.processors = job.workers;
+			if (job.tileSize != null) NewtonTiles.tileSize = job.tileSize;
+			NewtonTiles.simd = job.simd;
+			NewtonTiles.rootForm = job.rootForm;
+			NewtonTiles.adaptive = job.adaptive;
+			NewtonTiles.singlePrecision = job.singlePrecision;
+			NewtonTiles.symmetric = job.symmetric;
+			NewtonTiles.stats = job.stats;
+			NewtonTiles.init(job.roots);
+			return new NewtonTiles.Producer();
+		case "parallel":
+			if (job.workers != null) NewtonParallel.processors = job.workers;
+			NewtonParallel.simd = job.simd;
+			NewtonParallel.rootForm = job.rootForm;
+			NewtonParallel.adaptive = job.adaptive;
+			NewtonParallel.singlePrecision = job.singlePrecision;
+			NewtonParallel.symmetric = job.symmetric;
+			NewtonParallel.stats = job.stats;
+			NewtonParallel.init(job.roots);
+			return new NewtonParallel.Producer();
+		default:
+			if (job.workers != null) NewtonP2.processors = job.workers;
+			if (job.mintracks != null) NewtonP2.mintracks = job.mintracks;
+			NewtonP2.simd = job.simd;
+			NewtonP2.rootForm = job.rootForm;
+			NewtonP2.adaptive = job.adaptive;
+			NewtonP2.singlePrecision = job.singlePrecision;
+			NewtonP2.symmetric = job.symmetric;
+			NewtonP2.stats = job.stats;
+			NewtonP2.init(job.roots);
+			return new NewtonP2.Producer();
+		}
+	}
+
+	/**
+	 * Zapisuje rezultat kao sirovu mapu indeksa (width*height vrijednosti tipa
+	 * short, big-endian, redak po redak) ili kao PNG sliku.
+	 *
+	 * @param job  posao
+	 * @param data indeksi nultočaka
+	 * @throws IOException ako zapisivanje ne uspije
+	 */
+	public static void write(Job job, short[] data) throws IOException {
+		if (job.format.equals("raw")) {
+			try (DataOutputStream os = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(job.output)))) {
+				for (short s : data) {
+					os.writeShort(s);
+				}
+			}
+			return;
+		}
+
+		int colors = job.roots.length + 1;
+		int[] palette = palette(colors);
+		BufferedImage image = new BufferedImage(job.width, job.height, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < job.height; y++) {
+			for (int x = 0; x < job.width; x++) {
+				image.setRGB(x, y, palette[data[y * job.width + x]]);
+			}
+		}
+		if (!ImageIO.write(image, "png", job.output.toFile())) {
+			throw new IOException("No PNG writer available.");
+		}
+	}
+
+	/**
+	 * Stvara paletu boja; indeks 0 (nema nultočke) je crn, ostali su ravnomjerno
+	 * raspoređeni po krugu boja.
+	 *
+	 * @param colors broj boja
+	 * @return boje u RGB obliku
+	 */
+	private static int[] palette(int colors) {
+		int[] palette = new int[colors];
+		for (int i = 1; i < colors; i++) {
+			palette[i] = Color.HSBtoRGB((float) (i - 1) / (colors - 1), 0.8f, 0.9f);
+		}
+		return palette;
+	}
+}
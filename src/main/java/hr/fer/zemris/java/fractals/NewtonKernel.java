@@ -0,0 +1,1074 @@
+package hr.fer.zemris.java.fractals;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import hr.fer.zemris.math.CompiledPolynomial;
+import hr.fer.zemris.math.Complex;
+import hr.fer.zemris.math.ComplexPolynomial;
+import hr.fer.zemris.math.ComplexRootedPolynomial;
+import hr.fer.zemris.math.DoubleDouble;
+import hr.fer.zemris.math.RootIndex;
+
+/**
+ * Zajednička jezgra Newton-Raphson iteracije za sve proizvođače (NewtonP1,
+ * NewtonP2, NewtonParallel).
+ *
+ * Polinom se pri stvaranju prevodi u {@link CompiledPolynomial}, a nultočke se
+ * raspakiraju u polja primitivnih double vrijednosti. Iteracija se provodi nad
+ * lokalnim varijablama i jednim pomoćnim poljem po poslu, pa računanje cijelog
+ * okvira ne stvara objekte osim polja s rezultatima.
+ *
+ * @author Marko Brlek
+ *
+ */
+public class NewtonKernel {
+
+	/**
+	 * Udaljenost dvaju uzastopnih iteracija ispod koje smatramo da je postupak
+	 * konvergirao.
+	 */
+	public static final double CONVERGENCE_TRESHOLD = 0.001;
+
+	/**
+	 * Najveća udaljenost od nultočke unutar koje točku pridružujemo toj nultočki.
+	 */
+	public static final double ROOT_TRESHOLD = 0.002;
+
+	/**
+	 * Udaljenost ispod koje se smatra da se iteracija vratila u raniju točku i
+	 * vjerojatno kruži, vidi {@link #checkStop}.
+	 */
+	public static final double CYCLE_TRESHOLD = 1e-10;
+
+	/**
+	 * Broj iteracija između dvije provjere ciklusa i bijega.
+	 */
+	public static final int STOP_CHECK = 32;
+
+	/**
+	 * Najveći broj iteracija u float preciznosti; piksel koji do tada ne uđe u
+	 * krug zamke računa se ponovno u double preciznosti.
+	 */
+	public static final int FLOAT_ITERATIONS = 64;
+
+	/**
+	 * Koliko najmanje float ulp-ova moraju imati razmak piksela, pragovi i
+	 * polumjeri zamki da bi se pločica računala u float preciznosti.
+	 */
+	public static final int FLOAT_ULPS = 256;
+
+	/**
+	 * Ako je razmak piksela manji od ovoliko double ulp-ova najveće koordinate,
+	 * pločica se računa u double-double preciznosti.
+	 */
+	public static final int EXTENDED_ULPS = 512;
+
+	/** Preciznosti koje bira {@link #choosePrecision}. */
+	protected static final int SINGLE = 0;
+	protected static final int DOUBLE = 1;
+	protected static final int EXTENDED = 2;
+
+	/**
+	 * Najveći broj iteracija po pikselu.
+	 */
+	public static final int MAX_ITERATIONS = 16 * 16 * 16;
+
+	protected final CompiledPolynomial compiled;
+	/**
+	 * Oznaka piksela koji još nije izračunat, koristi se u
+	 * {@link #computeLattice}.
+	 */
+	public static final short UNKNOWN = -1;
+
+	/**
+	 * Oznaka piksela koji je potrošio m iteracija za m manji od
+	 * {@link #MAX_ITERATIONS}, vidi {@link IterationBudget#refine}.
+	 */
+	public static final short CAPPED = -2;
+
+	/**
+	 * Broj piksela nakon kojih se provjerava zastavica za prekid.
+	 */
+	public static final int CANCEL_BATCH = 64;
+
+	/**
+	 * Najmanji broj nultočaka uz koji se za traženje najbliže nultočke gradi
+	 * {@link RootIndex}; za manje nultočaka brže je pregledati sve.
+	 */
+	public static final int MIN_INDEXED_ROOTS = 16;
+
+	protected final double[] rootRe;
+	protected final double[] rootIm;
+	private final RootIndex index;
+
+	/**
+	 * Kvadrati polumjera krugova zamki oko nultočaka, vidi
+	 * {@link ComplexRootedPolynomial#captureRadii()}.
+	 */
+	protected final double[] trapR2;
+	private final RootIndex trapIndex;
+
+	/**
+	 * Dvostruki najveći polumjer zamke. Točka u krugu zamke napravi korak kraći
+	 * od toga, pa se zamke provjeravaju samo nakon takvih koraka; tako se piksel
+	 * uhvati najviše jednu iteraciju kasnije.
+	 */
+	protected final double trapGate;
+
+	/**
+	 * Kvadrat polumjera izvan kojeg Newtonov korak sigurno nije kraći od
+	 * {@link #CONVERGENCE_TRESHOLD} i ne ulazi u krug zamke,
+	 * {@link Double#POSITIVE_INFINITY} ako test bijega nije moguć.
+	 */
+	protected final double escapeR2;
+
+	/**
+	 * -ln(1 - 1.5/n): izvan polumjera bijega |z| se u jednom koraku smanji
+	 * najviše za faktor 1 - 1.5/n.
+	 */
+	protected final double escapeRate;
+
+	private final LongAdder cycles = new LongAdder();
+	private final LongAdder escapes = new LongAdder();
+
+	/**
+	 * Može li se uopće računati u float preciznosti, vidi
+	 * {@link #choosePrecision}.
+	 */
+	protected final boolean floatEnabled;
+	protected final float[] rootReF;
+	protected final float[] rootImF;
+	/**
+	 * kvadrati polovice polumjera zamki; polovica je rezerva za zaokruživanje
+	 * posljednjih koraka, ne za razilaženje float i double putanje ranije
+	 */
+	protected final float[] trapR2F;
+	protected final float trapGateF;
+	/** koeficijenti kao u {@link CompiledPolynomial#getCoefficients()} ili null */
+	protected final float[] coeffF;
+	private final double rootRadius;
+
+	/** broj pločica po preciznosti, indeksi su {@link #SINGLE}, {@link #DOUBLE} i {@link #EXTENDED} */
+	private final LongAdder[] tiles = { new LongAdder(), new LongAdder(), new LongAdder() };
+	private final LongAdder promoted = new LongAdder();
+
+	/**
+	 * Konstruktor prima polinom u oba oblika. Ako je polynomial null, Newtonov
+	 * korak računa se izravno iz nultočaka (vidi
+	 * {@link ComplexRootedPolynomial#newtonStep(Complex)}), pa polinom nije
+	 * potrebno razvijati u koeficijente.
+	 *
+	 * @param crp        polinom zadan nultočkama
+	 * @param polynomial polinom zadan koeficijentima ili null
+	 */
+	public NewtonKernel(ComplexRootedPolynomial crp, ComplexPolynomial polynomial) {
+		this(crp, polynomial, false);
+	}
+
+	/**
+	 * Konstruktor prima polinom u oba oblika i smije li se računati u float
+	 * preciznosti. Float preciznost se ne koristi ako su neke dvije nultočke
+	 * bliže od dvostrukog {@link #ROOT_TRESHOLD} ili ako pragovi i polumjeri
+	 * zamki nisu dovoljno veći od float preciznosti.
+	 *
+	 * @param crp             polinom zadan nultočkama
+	 * @param polynomial      polinom zadan koeficijentima ili null
+	 * @param singlePrecision smije li se računati u float preciznosti
+	 */
+	public NewtonKernel(ComplexRootedPolynomial crp, ComplexPolynomial polynomial, boolean singlePrecision) {
+		this.compiled = polynomial == null ? null : polynomial.compile();
+
+		Complex[] roots = crp.getRoots();
+		rootRe = new double[roots.length];
+		rootIm = new double[roots.length];
+		for (int i = 0; i < roots.length; i++) {
+			rootRe[i] = roots[i].getReal();
+			rootIm[i] = roots[i].getImaginary();
+		}
+		this.index = roots.length >= MIN_INDEXED_ROOTS ? new RootIndex(roots, ROOT_TRESHOLD) : null;
+
+		// polumjere ograničavamo na četiri medijana da ćelije indeksa ostanu male,
+		// manji krug je i dalje siguran
+		double[] radii = crp.captureRadii();
+		double[] sorted = radii.clone();
+		Arrays.sort(sorted);
+		double cap = 4 * sorted[sorted.length / 2];
+		trapR2 = new double[radii.length];
+		double maxRadius = 0;
+		for (int i = 0; i < radii.length; i++) {
+			double r = Math.min(radii[i], cap);
+			trapR2[i] = r * r;
+			maxRadius = Math.max(maxRadius, r);
+		}
+		this.trapGate = 2 * maxRadius;
+		this.trapIndex = roots.length >= MIN_INDEXED_ROOTS && cap > 0 && cap < Double.POSITIVE_INFINITY
+				? new RootIndex(roots, cap) : null;
+
+		// za |z| > 2*rMax je |z - N(z)| <= 1.5|z|/n i |z - N(z)| >= (|z| - rMax)/n
+		int n = roots.length;
+		double rMax = 0;
+		for (int i = 0; i < n; i++) {
+			rMax = Math.max(rMax, Math.hypot(rootRe[i], rootIm[i]));
+		}
+		double far = Math.max(2 * rMax, rMax + 2 * n * CONVERGENCE_TRESHOLD) + 1;
+		this.escapeR2 = n >= 2 ? far * far : Double.POSITIVE_INFINITY;
+		this.escapeRate = n >= 2 ? -Math.log(1 - 1.5 / n) : 0;
+		this.rootRadius = rMax;
+
+		rootReF = new float[n];
+		rootImF = new float[n];
+		trapR2F = new float[n];
+		double minSeparation = Double.POSITIVE_INFINITY;
+		double minRadius2 = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < n; i++) {
+			rootReF[i] = (float) rootRe[i];
+			rootImF[i] = (float) rootIm[i];
+			trapR2F[i] = (float) (0.25 * trapR2[i]);
+			minRadius2 = Math.min(minRadius2, 0.25 * trapR2[i]);
+			for (int j = 0; singlePrecision && j < i; j++) {
+				minSeparation = Math.min(minSeparation, Math.hypot(rootRe[i] - rootRe[j], rootIm[i] - rootIm[j]));
+			}
+		}
+		this.trapGateF = (float) trapGate;
+
+		float[] coeff = null;
+		boolean finite = true;
+		if (compiled != null) {
+			double[] c = compiled.getCoefficients();
+			coeff = new float[c.length];
+			for (int i = 0; i < c.length; i++) {
+				coeff[i] = (float) c[i];
+				finite &= Float.isFinite(coeff[i]);
+			}
+		}
+		this.coeffF = coeff;
+
+		double ulp = FLOAT_ULPS * Math.ulp((float) rMax);
+		this.floatEnabled = singlePrecision && finite && minSeparation > 2 * ROOT_TRESHOLD
+				&& Math.sqrt(minRadius2) > ulp && CONVERGENCE_TRESHOLD > ulp;
+	}
+
+	/**
+	 * Stvara jezgru za zadani polinom. Ako je zatražena SIMD jezgra, a modul
+	 * jdk.incubator.vector nije dostupan (JVM nije pokrenut s
+	 * --add-modules jdk.incubator.vector), koristi se obična jezgra.
+	 *
+	 * @param crp             polinom zadan nultočkama
+	 * @param polynomial      polinom zadan koeficijentima, null za korak iz
+	 *                        nultočaka
+	 * @param simd            treba li koristiti {@link VectorNewtonKernel}
+	 * @param singlePrecision smije li se pločica računati u float preciznosti,
+	 *                        vidi {@link #choosePrecision}
+	 * @return jezgra za zadani polinom
+	 */
+	public static NewtonKernel create(ComplexRootedPolynomial crp, ComplexPolynomial polynomial, boolean simd,
+			boolean singlePrecision) {
+		NewtonKernel kernel = null;
+		if (simd) {
+			if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+				System.out.println("Using SIMD kernel with " + VectorNewtonKernel.lanes() + " lanes.");
+				kernel = new VectorNewtonKernel(crp, polynomial, singlePrecision);
+			} else {
+				System.out.println("Module jdk.incubator.vector is not available, using scalar kernel.");
+			}
+		}
+		if (kernel == null) {
+			kernel = new NewtonKernel(crp, polynomial, singlePrecision);
+		}
+		if (singlePrecision && !kernel.floatEnabled) {
+			System.out.println("Roots are too close for float precision, using double.");
+		}
+		return kernel;
+	}
+
+	/**
+	 * Računa za svaki piksel u retcima od yMin do yMax (uključivo) kojoj nultočki
+	 * konvergira te rezultat sprema u data[].
+	 *
+	 * @param reMin  najmanji realni dio prikaza
+	 * @param reMax  najveći realni dio prikaza
+	 * @param imMin  najmanji imaginarni dio prikaza
+	 * @param imMax  najveći imaginarni dio prikaza
+	 * @param width  širina slike u pikselima
+	 * @param height visina slike u pikselima
+	 * @param yMin   prvi redak koji se računa
+	 * @param yMax   zadnji redak koji se računa
+	 * @param m      najveći broj iteracija
+	 * @param data   polje u koje se spremaju rezultati
+	 * @param cancel zastavica za prekid računanja, provjerava se svakih
+	 *               {@link #CANCEL_BATCH} piksela
+	 */
+	public void computeRows(double reMin, double reMax, double imMin, double imMax, int width, int height,
+			int yMin, int yMax, int m, short[] data, AtomicBoolean cancel) {
+		computeTile(reMin, reMax, imMin, imMax, width, height, 0, width - 1, yMin, yMax, 0, m, data, cancel);
+	}
+
+	/**
+	 * Kao {@link #computeRows}, ali računa samo piksele čije su obje koordinate
+	 * djeljive sa step i koji u data[] još imaju vrijednost {@link #UNKNOWN}. Tako
+	 * sljedeći, gušći prolaz ne računa ponovno piksele prethodnog prolaza.
+	 *
+	 * @param step razmak između računatih piksela
+	 */
+	public void computeLattice(double reMin, double reMax, double imMin, double imMax, int width, int height,
+			int yMin, int yMax, int step, int m, short[] data, AtomicBoolean cancel) {
+		computeTile(reMin, reMax, imMin, imMax, width, height, 0, width - 1, yMin, yMax, step, m, data, cancel);
+	}
+
+	/**
+	 * Računa piksele pravokutnika [xMin, xMax] x [yMin, yMax] (uključivo) koji u
+	 * data[] još imaju vrijednost {@link #UNKNOWN}.
+	 *
+	 * @param xMin prvi stupac pravokutnika
+	 * @param xMax zadnji stupac pravokutnika
+	 * @param yMin prvi redak pravokutnika
+	 * @param yMax zadnji redak pravokutnika
+	 */
+	public void computeRect(double reMin, double reMax, double imMin, double imMax, int width, int height,
+			int xMin, int xMax, int yMin, int yMax, int m, short[] data, AtomicBoolean cancel) {
+		computeTile(reMin, reMax, imMin, imMax, width, height, xMin, xMax, yMin, yMax, 1, m, data, cancel);
+	}
+
+	/**
+	 * Računa piksele pravokutnika [xMin, xMax] x [yMin, yMax] (uključivo). Za step
+	 * 0 računa sve piksele, inače samo piksele na mreži razmaka step (kao
+	 * {@link #computeLattice}) koji još imaju vrijednost {@link #UNKNOWN}.
+	 *
+	 * Ako {@link #choosePrecision} odabere float preciznost, pikseli se prvo
+	 * računaju u float preciznosti, a oni koji tako nisu pridruženi nultočki
+	 * ponovno u double preciznosti. Float rezultat nije potvrđen u double
+	 * preciznosti, pa se pikseli uz granice bazena mogu razlikovati od double
+	 * izračuna. Pločice kojima je razmak piksela premalen za double računaju se u
+	 * double-double preciznosti.
+	 *
+	 * @param step razmak između računatih piksela, 0 za sve piksele
+	 */
+	public void computeTile(double reMin, double reMax, double imMin, double imMax, int width, int height,
+			int xMin, int xMax, int yMin, int yMax, int step, int m, short[] data, AtomicBoolean cancel) {
+		int precision = choosePrecision(reMin, reMax, imMin, imMax, width, height, xMin, xMax, yMin, yMax);
+		if (precision == EXTENDED) {
+			computeExtended(reMin, reMax, imMin, imMax, width, height, xMin, xMax, yMin, yMax, step, m, data, cancel);
+			return;
+		}
+		if (precision == SINGLE) {
+			computeFloat(reMin, reMax, imMin, imMax, width, height, xMin, xMax, yMin, yMax, step, m, data, cancel);
+			// ostali su samo pikseli koji nisu pridruženi nultočki
+			step = Math.max(step, 1);
+		}
+		computeDouble(reMin, reMax, imMin, imMax, width, height, xMin, xMax, yMin, yMax, step, m, data, cancel);
+	}
+
+	/**
+	 * Računa piksele pravokutnika u double preciznosti, parametri su isti kao za
+	 * {@link #computeTile}.
+	 */
+	protected void computeDouble(double reMin, double reMax, double imMin, double imMax, int width, int height,
+			int xMin, int xMax, int yMin, int yMax, int step, int m, short[] data, AtomicBoolean cancel) {
+
+		double[] fz = new double[4];
+		double[] brent = new double[4];
+		int[] stops = new int[2];
+		int stride = Math.max(step, 1);
+		int xStart = (xMin + stride - 1) / stride * stride;
+		int yStart = (yMin + stride - 1) / stride * stride;
+		int batch = 0;
+
+		try {
+			for (int y = yStart; y <= yMax; y += stride) {
+				if (cancel.get()) break;
+				int offset = y * width;
+				for (int x = xStart; x <= xMax; x += stride) {
+					if (++batch == CANCEL_BATCH) {
+						if (cancel.get()) return;
+						batch = 0;
+					}
+					if (step != 0 && data[offset + x] != UNKNOWN) continue;
+					double zre = x / (width - 1.0) * (reMax - reMin) + reMin;
+					double zim = (height - 1.0 - y) / (height - 1) * (imMax - imMin) + imMin;
+					data[offset + x] = computePixel(zre, zim, m, fz, brent, stops);
+				}
+			}
+		} finally {
+			countStops(stops);
+		}
+	}
+
+	/**
+	 * Računa piksele pravokutnika u float preciznosti, parametri su isti kao za
+	 * {@link #computeTile}. Piksel koji ne uđe u krug zamke dobiva vrijednost
+	 * {@link #UNKNOWN}.
+	 */
+	protected void computeFloat(double reMin, double reMax, double imMin, double imMax, int width, int height,
+			int xMin, int xMax, int yMin, int yMax, int step, int m, short[] data, AtomicBoolean cancel) {
+
+		int stride = Math.max(step, 1);
+		int xStart = (xMin + stride - 1) / stride * stride;
+		int yStart = (yMin + stride - 1) / stride * stride;
+		int batch = 0;
+		int unknown = 0;
+
+		try {
+			for (int y = yStart; y <= yMax; y += stride) {
+				if (cancel.get()) break;
+				int offset = y * width;
+				for (int x = xStart; x <= xMax; x += stride) {
+					if (++batch == CANCEL_BATCH) {
+						if (cancel.get()) return;
+						batch = 0;
+					}
+					if (step != 0 && data[offset + x] != UNKNOWN) continue;
+					double zre = x / (width - 1.0) * (reMax - reMin) + reMin;
+					double zim = (height - 1.0 - y) / (height - 1) * (imMax - imMin) + imMin;
+					short value = computePixelFloat((float) zre, (float) zim, m);
+					data[offset + x] = value;
+					if (value == UNKNOWN) unknown++;
+				}
+			}
+		} finally {
+			countPromoted(unknown);
+		}
+	}
+
+	/**
+	 * Računa piksele pravokutnika u double-double preciznosti, parametri su isti
+	 * kao za {@link #computeTile}. Koordinate piksela i Newtonov korak računaju se
+	 * s oko 106 bitova, a zamke, provjera ciklusa i bijega i najbliža nultočka s
+	 * glavnim (double) dijelom točke.
+	 */
+	protected void computeExtended(double reMin, double reMax, double imMin, double imMax, int width, int height,
+			int xMin, int xMax, int yMin, int yMax, int step, int m, short[] data, AtomicBoolean cancel) {
+
+		ExtendedPixel pixel = new ExtendedPixel();
+		DoubleDouble reSpan = new DoubleDouble().setSum(reMax, -reMin);
+		DoubleDouble imSpan = new DoubleDouble().setSum(imMax, -imMin);
+		DoubleDouble widthDD = new DoubleDouble().set(width - 1.0);
+		DoubleDouble heightDD = new DoubleDouble().set(height - 1.0);
+		int stride = Math.max(step, 1);
+		int xStart = (xMin + stride - 1) / stride * stride;
+		int yStart = (yMin + stride - 1) / stride * stride;
+		int batch = 0;
+
+		try {
+			for (int y = yStart; y <= yMax; y += stride) {
+				if (cancel.get()) break;
+				int offset = y * width;
+				for (int x = xStart; x <= xMax; x += stride) {
+					if (++batch == CANCEL_BATCH) {
+						if (cancel.get()) return;
+						batch = 0;
+					}
+					if (step != 0 && data[offset + x] != UNKNOWN) continue;
+					pixel.zr.set(x).div(widthDD).mul(reSpan).add(reMin);
+					pixel.zi.set(height - 1.0 - y).div(heightDD).mul(imSpan).add(imMin);
+					data[offset + x] = (short) pixel.compute(m);
+				}
+			}
+		} finally {
+			countStops(pixel.stops);
+		}
+	}
+
+	/**
+	 * Iterira piksele prikaza s popisa i za svaki vraća broj iteracija i
+	 * vrijednost kao {@link #iterate(double, double, int)}. Služi za
+	 * {@link IterationBudget}: preciznost se bira istim pravilom kao u
+	 * {@link #computeTile} za cijeli prikaz, pa se piksel pločice koja se
+	 * računa u double-double preciznosti i ovdje računa u njoj. Float se ne
+	 * koristi, jer ne daje broj iteracija, a i u {@link #computeTile} piksele
+	 * koje float ne pridruži nultočki računa double. Pomoćna polja stvaraju se
+	 * jednom po pozivu, a odluka o preciznosti se ne broji.
+	 *
+	 * @param pixels  indeksi piksela (y*width + x)
+	 * @param from    prvi indeks u pixels koji se računa
+	 * @param to      indeks iza zadnjeg koji se računa
+	 * @param m       najveći broj iteracija
+	 * @param results polje u koje se na iste indekse kao u pixels spremaju
+	 *                rezultati
+	 * @param stops   brojači ranih prekida (ciklus, bijeg) koje uvećava; dodaju
+	 *                se statistici okvira samo ako ih pozivatelj preda
+	 *                {@link #countStops}
+	 * @param cancel  zastavica za prekid računanja
+	 */
+	public void iteratePixels(double reMin, double reMax, double imMin, double imMax, int width, int height,
+			int[] pixels, int from, int to, int m, int[] results, int[] stops, AtomicBoolean cancel) {
+
+		boolean extended = precisionOf(reMin, reMax, imMin, imMax, width, height, 0, width - 1, 0,
+				height - 1) == EXTENDED;
+		ExtendedPixel pixel = extended ? new ExtendedPixel() : null;
+		DoubleDouble reSpan = null;
+		DoubleDouble imSpan = null;
+		DoubleDouble widthDD = null;
+		DoubleDouble heightDD = null;
+		if (extended) {
+			reSpan = new DoubleDouble().setSum(reMax, -reMin);
+			imSpan = new DoubleDouble().setSum(imMax, -imMin);
+			widthDD = new DoubleDouble().set(width - 1.0);
+			heightDD = new DoubleDouble().set(height - 1.0);
+		}
+		double[] fz = new double[4];
+		double[] brent = new double[4];
+		int batch = 0;
+
+		for (int i = from; i < to; i++) {
+			if (++batch == CANCEL_BATCH) {
+				if (cancel.get()) break;
+				batch = 0;
+			}
+			int y = pixels[i] / width;
+			int x = pixels[i] - y * width;
+			if (extended) {
+				pixel.zr.set(x).div(widthDD).mul(reSpan).add(reMin);
+				pixel.zi.set(height - 1.0 - y).div(heightDD).mul(imSpan).add(imMin);
+				results[i] = pixel.compute(m);
+			} else {
+				double zre = x / (width - 1.0) * (reMax - reMin) + reMin;
+				double zim = (height - 1.0 - y) / (height - 1) * (imMax - imMin) + imMin;
+				results[i] = iterate(zre, zim, m, fz, brent, stops);
+			}
+		}
+		if (extended) {
+			stops[0] += pixel.stops[0];
+			stops[1] += pixel.stops[1];
+		}
+	}
+
+	/**
+	 * Odlučuje u kojoj se preciznosti računa pravokutnik [xMin, xMax] x [yMin,
+	 * yMax] prema razmaku piksela i najvećoj koordinati pravokutnika i nultočaka:
+	 * {@link #EXTENDED} ako je razmak manji od {@link #EXTENDED_ULPS} double
+	 * ulp-ova, {@link #SINGLE} ako je float dopušten i razmak veći od
+	 * {@link #FLOAT_ULPS} float ulp-ova, inače {@link #DOUBLE}. Odluka se broji
+	 * za {@link #takePrecision()}.
+	 *
+	 * @return odabrana preciznost
+	 */
+	protected int choosePrecision(double reMin, double reMax, double imMin, double imMax, int width, int height,
+			int xMin, int xMax, int yMin, int yMax) {
+		int precision = precisionOf(reMin, reMax, imMin, imMax, width, height, xMin, xMax, yMin, yMax);
+		tiles[precision].increment();
+		return precision;
+	}
+
+	/**
+	 * Isto kao {@link #choosePrecision}, ali bez brojanja odluke.
+	 *
+	 * @return odabrana preciznost
+	 */
+	private int precisionOf(double reMin, double reMax, double imMin, double imMax, int width, int height,
+			int xMin, int xMax, int yMin, int yMax) {
+		double spacing = Math.min((reMax - reMin) / (width - 1), (imMax - imMin) / (height - 1));
+		double re0 = xMin / (width - 1.0) * (reMax - reMin) + reMin;
+		double re1 = xMax / (width - 1.0) * (reMax - reMin) + reMin;
+		double im0 = (height - 1.0 - yMin) / (height - 1) * (imMax - imMin) + imMin;
+		double im1 = (height - 1.0 - yMax) / (height - 1) * (imMax - imMin) + imMin;
+		double maxAbs = Math.max(Math.max(rootRadius, Math.max(Math.abs(re0), Math.abs(re1))),
+				Math.max(Math.abs(im0), Math.abs(im1)));
+		int precision;
+		if (spacing < EXTENDED_ULPS * Math.ulp(maxAbs)) {
+			precision = EXTENDED;
+		} else if (floatEnabled && spacing > FLOAT_ULPS * Math.ulp((float) maxAbs)) {
+			precision = SINGLE;
+		} else {
+			precision = DOUBLE;
+		}
+		return precision;
+	}
+
+	/**
+	 * Dodaje broj piksela koje je trebalo ponovno računati u double preciznosti.
+	 *
+	 * @param count broj piksela
+	 */
+	protected void countPromoted(int count) {
+		promoted.add(count);
+	}
+
+	/**
+	 * Vraća opis broja pločica izračunatih u float, double i double-double
+	 * preciznosti i broja piksela ponovno računatih u double od zadnjeg poziva te
+	 * postavlja brojače na nulu.
+	 *
+	 * @return opis za ispis
+	 */
+	public String takePrecision() {
+		return "Precision: " + tiles[SINGLE].sumThenReset() + " float tiles, " + tiles[DOUBLE].sumThenReset()
+				+ " double tiles, " + tiles[EXTENDED].sumThenReset() + " double-double tiles, "
+				+ promoted.sumThenReset() + " pixels promoted to double.";
+	}
+
+	/**
+	 * Dodaje brojače ranih prekida jednog posla ukupnim brojačima okvira.
+	 *
+	 * @param stops broj piksela prekinutih zbog ciklusa i zbog bijega
+	 */
+	protected void countStops(int[] stops) {
+		cycles.add(stops[0]);
+		escapes.add(stops[1]);
+	}
+
+	/**
+	 * Vraća opis broja piksela prekinutih zbog ciklusa i zbog bijega od zadnjeg
+	 * poziva i postavlja brojače na nulu.
+	 *
+	 * @return opis za ispis
+	 */
+	public String takeStops() {
+		return "Stopped early: " + cycles.sumThenReset() + " pixels likely cycling, " + escapes.sumThenReset()
+				+ " escaped.";
+	}
+
+	/**
+	 * Provodi Newton-Raphson iteraciju za jednu točku.
+	 *
+	 * Iteracija koja ne konvergira prekida se prije m iteracija s rezultatom kao
+	 * da je dosegla m (indeks 0), vidi {@link #checkStop}.
+	 *
+	 * @param zre realni dio početne točke
+	 * @param zim imaginarni dio početne točke
+	 * @param m   najveći broj iteracija
+	 * @return indeks najbliže nultočke uvećan za 1, 0 ako nema bliske nultočke
+	 */
+	public short computePixel(double zre, double zim, int m) {
+		int[] stops = new int[2];
+		short result = computePixel(zre, zim, m, new double[4], new double[4], stops);
+		countStops(stops);
+		return result;
+	}
+
+	/**
+	 * Provodi Newton-Raphson iteraciju za jednu točku u float preciznosti, isto
+	 * kao {@link VectorNewtonKernel} s float trakama. Točka se pridružuje
+	 * nultočki samo kad uđe u njezin krug zamke (s pola polumjera); inače, kao i
+	 * nakon {@link #FLOAT_ITERATIONS} iteracija, rezultat je {@link #UNKNOWN}.
+	 * Blizu granice bazena float putanja može otići drugoj nultočki nego double
+	 * putanja iz iste točke, pa takav rezultat nije siguran.
+	 *
+	 * @param zre realni dio početne točke
+	 * @param zim imaginarni dio početne točke
+	 * @param m   najveći broj iteracija
+	 * @return indeks nultočke uvećan za 1 ili {@link #UNKNOWN}
+	 */
+	public short computePixelFloat(float zre, float zim, int m) {
+		int limit = Math.min(m, FLOAT_ITERATIONS);
+		float treshold = (float) CONVERGENCE_TRESHOLD;
+		float module;
+		int iters = 0;
+
+		do {
+			float fracRe;
+			float fracIm;
+			if (coeffF == null) {
+				float sumRe = 0;
+				float sumIm = 0;
+				for (int i = 0; i < rootReF.length; i++) {
+					float dre = zre - rootReF[i];
+					float dim = zim - rootImF[i];
+					float inv = 1 / (dre * dre + dim * dim);
+					sumRe += dre * inv;
+					sumIm -= dim * inv;
+				}
+				float nazivnik = sumRe * sumRe + sumIm * sumIm;
+				fracRe = sumRe / nazivnik;
+				fracIm = -sumIm / nazivnik;
+			} else {
+				// Horner za f(z) i f'(z), istim redom kao VectorNewtonKernel
+				int order = coeffF.length / 2 - 1;
+				float pr = coeffF[2 * order];
+				float pi = coeffF[2 * order + 1];
+				float dr = 0;
+				float di = 0;
+				for (int k = 2 * (order - 1); k >= 0; k -= 2) {
+					float tr = dr * zre - di * zim + pr;
+					di = dr * zim + di * zre + pi;
+					dr = tr;
+					tr = pr * zre - pi * zim + coeffF[k];
+					pi = pr * zim + pi * zre + coeffF[k + 1];
+					pr = tr;
+				}
+				float nazivnik = dr * dr + di * di;
+				fracRe = (pr * dr + pi * di) / nazivnik;
+				fracIm = (pi * dr - pr * di) / nazivnik;
+			}
+
+			float nr = zre - fracRe;
+			float ni = zim - fracIm;
+			float dre = zre - nr;
+			float dim = zim - ni;
+			module = (float) Math.sqrt(dre * dre + dim * dim);
+			zre = nr;
+			zim = ni;
+			iters++;
+
+			if (module < trapGateF) {
+				for (int i = 0; i < rootReF.length; i++) {
+					float tre = zre - rootReF[i];
+					float tim = zim - rootImF[i];
+					if (tre * tre + tim * tim < trapR2F[i]) {
+						return (short) (i + 1);
+					}
+				}
+			}
+		} while (iters < limit && module > treshold);
+
+		return UNKNOWN;
+	}
+
+	/**
+	 * Vraća broj iteracija nakon kojih je točka pridružena nultočki.
+	 *
+	 * @param zre realni dio početne točke
+	 * @param zim imaginarni dio početne točke
+	 * @param m   najveći broj iteracija
+	 * @return broj iteracija, -1 ako točka nije pridružena nultočki unutar m
+	 *         iteracija
+	 */
+	public int iterationsFor(double zre, double zim, int m) {
+		return converged(iterate(zre, zim, m), m);
+	}
+
+	/**
+	 * Kao {@link #computePixel(double, double, int)}, ali u gornjih 16 bitova
+	 * vraća i broj iteracija (m za piksele koji nisu konvergirali ili su
+	 * prekinuti zbog ciklusa ili bijega), a u donjih 16 vrijednost piksela.
+	 *
+	 * @param zre realni dio početne točke
+	 * @param zim imaginarni dio početne točke
+	 * @param m   najveći broj iteracija
+	 * @return broj iteracija i vrijednost piksela
+	 */
+	public int iterate(double zre, double zim, int m) {
+		int[] stops = new int[2];
+		int packed = iterate(zre, zim, m, new double[4], new double[4], stops);
+		countStops(stops);
+		return packed;
+	}
+
+	/**
+	 * Iz rezultata {@link #iterate(double, double, int)} vraća broj iteracija
+	 * ako je točka pridružena nultočki.
+	 *
+	 * @param packed rezultat {@link #iterate(double, double, int)}
+	 * @param m      najveći broj iteracija
+	 * @return broj iteracija, -1 ako točka nije pridružena nultočki
+	 */
+	public static int converged(int packed, int m) {
+		int iters = packed >>> 16;
+		return iters < m && (short) packed > 0 ? iters : -1;
+	}
+
+	/**
+	 * Vrijednost piksela koji je potrošio svih m iteracija: {@link #CAPPED} ako
+	 * je m manji od {@link #MAX_ITERATIONS}, inače indeks 0 uvećan za 1.
+	 *
+	 * @param m najveći broj iteracija
+	 * @return vrijednost piksela
+	 */
+	protected static short cappedValue(int m) {
+		return m < MAX_ITERATIONS ? CAPPED : 1;
+	}
+
+	/**
+	 * Provodi Newton-Raphson iteraciju za jednu točku koristeći predano pomoćno
+	 * polje za vrijednosti f(z) i f'(z). Rane prekide broji u stops[0] (ciklus) i
+	 * stops[1] (bijeg).
+	 */
+	private short computePixel(double zre, double zim, int m, double[] fz, double[] brent, int[] stops) {
+		return (short) iterate(zre, zim, m, fz, brent, stops);
+	}
+
+	/**
+	 * Isto kao {@link #computePixel(double, double, int, double[], double[], int[])},
+	 * ali u gornjih 16 bitova vraća i broj iteracija (m za piksele prekinute
+	 * zbog ciklusa ili bijega).
+	 */
+	private int iterate(double zre, double zim, int m, double[] fz, double[] brent, int[] stops) {
+		double module = 0;
+		int iters = 0;
+		startStop(zre, zim, brent, 0);
+
+		do {
+			double fracRe;
+			double fracIm;
+			if (compiled == null) {
+				// 1 / (1/(z-z1) + ... + 1/(z-zn))
+				double sumRe = 0;
+				double sumIm = 0;
+				for (int i = 0; i < rootRe.length; i++) {
+					double dre = zre - rootRe[i];
+					double dim = zim - rootIm[i];
+					double inv = 1 / (dre * dre + dim * dim);
+					sumRe += dre * inv;
+					sumIm -= dim * inv;
+				}
+				double nazivnik = sumRe * sumRe + sumIm * sumIm;
+				fracRe = sumRe / nazivnik;
+				fracIm = -sumIm / nazivnik;
+			} else {
+				compiled.evaluate(zre, zim, fz);
+				double numRe = fz[0];
+				double numIm = fz[1];
+				double denRe = fz[2];
+				double denIm = fz[3];
+
+				// numerator.div(denominator)
+				double nazivnik = denRe * denRe + denIm * denIm;
+				fracRe = (numRe * denRe + numIm * denIm) / nazivnik;
+				fracIm = (numIm * denRe - numRe * denIm) / nazivnik;
+			}
+
+			double oldRe = zre;
+			double oldIm = zim;
+			zre = zre - fracRe;
+			zim = zim - fracIm;
+
+			double dre = oldRe - zre;
+			double dim = oldIm - zim;
+			module = Math.sqrt(dre * dre + dim * dim);
+			iters++;
+
+			if (module < trapGate) {
+				int trapped = trappedRoot(zre, zim);
+				if (trapped >= 0) {
+					return iters << 16 | (trapped + 1);
+				}
+			}
+
+			if (iters % STOP_CHECK == 0 && module > CONVERGENCE_TRESHOLD && iters < m) {
+				// bijeg se ocjenjuje prema punom broju iteracija, jer se uz manji m
+				// piksel može ponovno računati, vidi IterationBudget
+				int stop = checkStop(zre, zim, Math.max(m, MAX_ITERATIONS) - iters, brent, 0);
+				if (stop > 0) {
+					stops[stop - 1]++;
+					return m << 16 | 1;
+				}
+			}
+		} while (iters < m && module > CONVERGENCE_TRESHOLD);
+
+		if (iters >= m) {
+			return iters << 16 | (cappedValue(m) & 0xFFFF);
+		}
+		int index = indexOfClosestRootFor(zre, zim, ROOT_TRESHOLD);
+		return iters << 16 | (index + 1);
+	}
+
+	/**
+	 * Postavlja stanje za {@link #checkStop} na početnu točku iteracije.
+	 *
+	 * @param zre   realni dio početne točke
+	 * @param zim   imaginarni dio početne točke
+	 * @param brent stanje provjere: spremljena točka, potencija i brojač
+	 * @param at    indeks stanja u polju brent
+	 */
+	protected static void startStop(double zre, double zim, double[] brent, int at) {
+		brent[at] = zre;
+		brent[at + 1] = zim;
+		brent[at + 2] = 1;
+		brent[at + 3] = 1;
+	}
+
+	/**
+	 * Provjerava može li se iteracija koja još nije konvergirala prekinuti.
+	 * Poziva se svakih {@link #STOP_CHECK} iteracija, a prekida se:
+	 * <ul>
+	 * <li>zbog ciklusa: Brentovim algoritmom nad tim uzorcima iteracija se
+	 * uspoređuje s uzorkom spremljenim na potenciji broja 2 i ako im je
+	 * udaljenost manja od {@link #CYCLE_TRESHOLD}, iteracija je vjerojatno zapela
+	 * u privlačnom ciklusu (svaki ciklus je ciklus i uzorkovanog niza). To je
+	 * heuristika, a ne dokaz: iteracija koja se samo približi ranijem uzorku, a
+	 * kasnije bi konvergirala, također se prekida,</li>
+	 * <li>zbog bijega: točka je toliko daleko od nultočaka da se ni u preostalim
+	 * iteracijama ne vraća unutar polumjera bijega.</li>
+	 * </ul>
+	 *
+	 * @param zre       realni dio trenutne iteracije
+	 * @param zim       imaginarni dio trenutne iteracije
+	 * @param remaining broj preostalih iteracija
+	 * @param brent     stanje provjere, vidi {@link #startStop}
+	 * @param at        indeks stanja u polju brent
+	 * @return 0 ako se iteracija nastavlja, 1 za ciklus, 2 za bijeg
+	 */
+	protected int checkStop(double zre, double zim, int remaining, double[] brent, int at) {
+		double cre = zre - brent[at];
+		double cim = zim - brent[at + 1];
+		if (cre * cre + cim * cim < CYCLE_TRESHOLD * CYCLE_TRESHOLD) {
+			return 1;
+		}
+		if (brent[at + 3] == brent[at + 2]) {
+			brent[at] = zre;
+			brent[at + 1] = zim;
+			brent[at + 2] *= 2;
+			brent[at + 3] = 0;
+		}
+		brent[at + 3]++;
+
+		double r2 = zre * zre + zim * zim;
+		if (r2 > escapeR2 && 0.5 * Math.log(r2 / escapeR2) > remaining * escapeRate) {
+			return 2;
+		}
+		return 0;
+	}
+
+	/**
+	 * Provjerava je li točka (zre, zim) u krugu zamke neke nultočke. Iteracija iz
+	 * takve točke sigurno konvergira toj nultočki, pa se piksel odmah pridružuje
+	 * njoj, bez preostalih iteracija i bez {@link #indexOfClosestRootFor}.
+	 *
+	 * @param zre realni dio točke
+	 * @param zim imaginarni dio točke
+	 * @return indeks nultočke, -1 ako točka nije ni u jednom krugu
+	 */
+	public int trappedRoot(double zre, double zim) {
+		if (trapIndex != null) {
+			// točka u krugu nultočke bliža je njoj nego ijednoj drugoj
+			int i = trapIndex.indexOfClosestRootFor(zre, zim);
+			if (i < 0) return -1;
+			double dre = zre - rootRe[i];
+			double dim = zim - rootIm[i];
+			return dre * dre + dim * dim < trapR2[i] ? i : -1;
+		}
+		for (int i = 0; i < rootRe.length; i++) {
+			double dre = zre - rootRe[i];
+			double dim = zim - rootIm[i];
+			if (dre * dre + dim * dim < trapR2[i]) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Traži index najbliže nultočke od točke (zre, zim) kojoj je udaljenost manja
+	 * od tresholda. Isto kao {@link ComplexRootedPolynomial#indexOfClosestRootFor}.
+	 * Uz barem {@link #MIN_INDEXED_ROOTS} nultočaka koristi {@link RootIndex}.
+	 *
+	 * @param zre      realni dio točke
+	 * @param zim      imaginarni dio točke
+	 * @param treshold udaljenost od koje se više ne traži
+	 * @return index najbliže nultočke, -1 ako takva ne postoji
+	 */
+	public int indexOfClosestRootFor(double zre, double zim, double treshold) {
+		if (index != null && index.getTreshold() == treshold) {
+			return index.indexOfClosestRootFor(zre, zim);
+		}
+		double najmanja = Double.MAX_VALUE;
+		int index = -1;
+
+		for (int i = 0; i < rootRe.length; i++) {
+			double dre = zre - rootRe[i];
+			double dim = zim - rootIm[i];
+			double rezultat = Math.sqrt(dre * dre + dim * dim);
+			if (rezultat < treshold && rezultat < najmanja) {
+				najmanja = rezultat;
+				index = i;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Newton-Raphson iteracija jednog piksela u double-double preciznosti. Svi
+	 * međurezultati su unaprijed stvoreni, pa računanje piksela ne stvara
+	 * objekte. Jedan objekt koristi jedna dretva.
+	 */
+	private final class ExtendedPixel {
+		/** početna točka, postavlja je pozivatelj */
+		final DoubleDouble zr = new DoubleDouble();
+		final DoubleDouble zi = new DoubleDouble();
+		final int[] stops = new int[2];
+
+		private final double[] brent = new double[4];
+		private final DoubleDouble sumRe = new DoubleDouble();
+		private final DoubleDouble sumIm = new DoubleDouble();
+		private final DoubleDouble dre = new DoubleDouble();
+		private final DoubleDouble dim = new DoubleDouble();
+		private final DoubleDouble inv = new DoubleDouble();
+		private final DoubleDouble t = new DoubleDouble();
+		private final DoubleDouble pr = new DoubleDouble();
+		private final DoubleDouble pi = new DoubleDouble();
+		private final DoubleDouble dr = new DoubleDouble();
+		private final DoubleDouble di = new DoubleDouble();
+		private final DoubleDouble tr = new DoubleDouble();
+		private final DoubleDouble nazivnik = new DoubleDouble();
+		private final DoubleDouble fracRe = new DoubleDouble();
+		private final DoubleDouble fracIm = new DoubleDouble();
+
+		/**
+		 * Iterira točku (zr, zi) s istim pravilima kao double iteracija.
+		 *
+		 * @param m najveći broj iteracija
+		 * @return broj iteracija u gornjih 16 bitova i indeks nultočke uvećan za 1
+		 *         u donjih, kao {@link NewtonKernel#iterate(double, double, int)}
+		 */
+		int compute(int m) {
+			double module;
+			int iters = 0;
+			startStop(zr.getHi(), zi.getHi(), brent, 0);
+
+			do {
+				if (compiled == null) {
+					// 1 / (1/(z-z1) + ... + 1/(z-zn))
+					sumRe.set(0);
+					sumIm.set(0);
+					for (int i = 0; i < rootRe.length; i++) {
+						dre.set(zr).sub(rootRe[i]);
+						dim.set(zi).sub(rootIm[i]);
+						t.set(dre).mul(dre);
+						nazivnik.set(dim).mul(dim).add(t);
+						inv.setReciprocal(nazivnik);
+						sumRe.add(t.set(dre).mul(inv));
+						sumIm.sub(t.set(dim).mul(inv));
+					}
+					nazivnik.set(sumRe).mul(sumRe).add(t.set(sumIm).mul(sumIm));
+					fracRe.set(sumRe).div(nazivnik);
+					fracIm.set(sumIm).negate().div(nazivnik);
+				} else {
+					// Horner za f(z) i f'(z)
+					double[] c = compiled.getCoefficients();
+					int order = compiled.order();
+					pr.set(c[2 * order]);
+					pi.set(c[2 * order + 1]);
+					dr.set(0);
+					di.set(0);
+					for (int k = 2 * (order - 1); k >= 0; k -= 2) {
+						tr.set(dr).mul(zr).sub(t.set(di).mul(zi)).add(pr);
+						di.mul(zr).add(t.set(dr).mul(zi)).add(pi);
+						dr.set(tr);
+						tr.set(pr).mul(zr).sub(t.set(pi).mul(zi)).add(c[k]);
+						pi.mul(zr).add(t.set(pr).mul(zi)).add(c[k + 1]);
+						pr.set(tr);
+					}
+					nazivnik.set(dr).mul(dr).add(t.set(di).mul(di));
+					fracRe.set(pr).mul(dr).add(t.set(pi).mul(di)).div(nazivnik);
+					fracIm.set(pi).mul(dr).sub(t.set(pr).mul(di)).div(nazivnik);
+				}
+
+				zr.sub(fracRe);
+				zi.sub(fracIm);
+				module = Math.sqrt(fracRe.getHi() * fracRe.getHi() + fracIm.getHi() * fracIm.getHi());
+				iters++;
+
+				double zre = zr.getHi();
+				double zim = zi.getHi();
+				if (module < trapGate) {
+					int trapped = trappedRoot(zre, zim);
+					if (trapped >= 0) {
+						return iters << 16 | (trapped + 1);
+					}
+				}
+
+				if (iters % STOP_CHECK == 0 && module > CONVERGENCE_TRESHOLD && iters < m) {
+					int stop = checkStop(zre, zim, Math.max(m, MAX_ITERATIONS) - iters, brent, 0);
+					if (stop > 0) {
+						stops[stop - 1]++;
+						return m << 16 | 1;
+					}
+				}
+			} while (iters < m && module > CONVERGENCE_TRESHOLD);
+
+			if (iters >= m) {
+				return iters << 16 | (cappedValue(m) & 0xFFFF);
+			}
+			return iters << 16 | (indexOfClosestRootFor(zr.getHi(), zi.getHi(), ROOT_TRESHOLD) + 1);
+		}
+	}
+}
@@ -28,10 +28,21 @@ import hr.fer.zemris.math.ComplexRootedPolynomial;
 public class NewtonP1 {
 	
 	public static int processors = Runtime.getRuntime().availableProcessors();
-	public static int tracks = 4 * processors;
+	public static boolean simd = false;
+	public static boolean rootForm = false;
+	public static long tileCache = 0;
+	public static int progressive = 0;
+	public static long coalesce = 0;
+	public static boolean adaptive = false;
+	public static boolean singlePrecision = false;
+	public static boolean symmetric = false;
+	public static boolean incremental = false;
+	public static boolean stats = false;
 	public static ComplexRootedPolynomial crp;
 	public static ComplexPolynomial polynomial;
 	public static ComplexPolynomial derived;
+	public static NewtonKernel kernel;
+	public static Symmetry symmetry;
 	
 	/**
      * Kroz System.in cita nultočke kompleksnog polinoma te zatim crta fraktal.
@@ -54,9 +65,7 @@ public class NewtonP1 {
         
         
 
-    	NewtonP1.crp = new ComplexRootedPolynomial(Complex.ONE, readRootsAsArray());
-    	NewtonP1.polynomial = crp.toComplexPolynom();
-    	NewtonP1.derived = polynomial.derive();
+    	init(readRootsAsArray());
     	
 
         FractalViewer.show(new Producer());
@@ -65,6 +74,30 @@ public class NewtonP1 {
 	
 	
 	
+	/**
+	 * Postavlja polinom zadan nultočkama i priprema jezgru za računanje.
+	 * Uz rootForm polinom se ne razvija u koeficijente, a polynomial i derived
+	 * ostaju null. Poziva se prije stvaranja {@link Producer}a.
+	 * 
+	 * @param roots Nultočke polinoma
+	 */
+	public static void init(Complex[] roots) {
+		NewtonP1.crp = new ComplexRootedPolynomial(Complex.ONE, roots);
+		if(rootForm) {
+			//korak se računa iz nultočaka, polinom ne razvijamo
+			NewtonP1.polynomial = null;
+			NewtonP1.derived = null;
+		} else {
+			NewtonP1.polynomial = crp.toComplexPolynom();
+			NewtonP1.derived = polynomial.derive();
+		}
+		NewtonP1.kernel = NewtonKernel.create(crp, polynomial, simd, singlePrecision);
+		NewtonP1.symmetry = Symmetry.detect(crp);
+		if(symmetric) {
+			System.out.println(symmetry);
+		}
+	}
+	
 	/**
 	 * Parsira argumente; broj procesora i broj radnika
 	 * 
@@ -72,10 +105,19 @@ public class NewtonP1 {
 	 */
 	public static void parseArgs(String args[]) {
 		boolean setProcessors = false;
-		boolean setTracks = false;
+		boolean setKernel = false;
+		boolean setStep = false;
+		boolean setTileCache = false;
+		boolean setProgressive = false;
+		boolean setCoalesce = false;
+		boolean setBudget = false;
+		boolean setPrecision = false;
+		boolean setSymmetry = false;
+		boolean setIncremental = false;
+		boolean setStats = false;
 		
-		if(args.length > 2) {
-			throw new IllegalArgumentException("Too many arguments, only allow 2.");
+		if(args.length > 11) {
+			throw new IllegalArgumentException("Too many arguments, only allow 11.");
 		}
 		
 		for (String arg : args) {
@@ -90,12 +132,120 @@ public class NewtonP1 {
 				processors = Integer.parseInt(sides[1]);
 				setProcessors = true;
 			}
-			else if (sides[0].equals("--tracks") || sides[0].equals("-t")) {
-				if(setTracks) {
-					throw new IllegalArgumentException("Number of tracks can't be set twice.");
+			else if (sides[0].equals("--kernel") || sides[0].equals("-k")) {
+				if(setKernel) {
+					throw new IllegalArgumentException("Kernel can't be set twice.");
+				}
+				if(sides[1].equals("simd")) {
+					simd = true;
+				} else if(sides[1].equals("scalar")) {
+					simd = false;
+				} else {
+					throw new IllegalArgumentException("Unknown kernel, expected simd or scalar.");
+				}
+				setKernel = true;
+			}
+			else if (sides[0].equals("--step") || sides[0].equals("-n")) {
+				if(setStep) {
+					throw new IllegalArgumentException("Newton step can't be set twice.");
+				}
+				if(sides[1].equals("roots")) {
+					rootForm = true;
+				} else if(sides[1].equals("polynomial")) {
+					rootForm = false;
+				} else {
+					throw new IllegalArgumentException("Unknown Newton step, expected roots or polynomial.");
+				}
+				setStep = true;
+			}
+			else if (sides[0].equals("--tilecache") || sides[0].equals("-c")) {
+				if(setTileCache) {
+					throw new IllegalArgumentException("Tile cache size can't be set twice.");
 				}
-				tracks = Integer.parseInt(sides[1]);
-				setTracks = true;
+				tileCache = Long.parseLong(sides[1]);
+				setTileCache = true;
+			}
+			else if (sides[0].equals("--progressive") || sides[0].equals("-p")) {
+				if(setProgressive) {
+					throw new IllegalArgumentException("Progressive step can't be set twice.");
+				}
+				progressive = Integer.parseInt(sides[1]);
+				if(progressive != 0 && Integer.bitCount(progressive) != 1) {
+					throw new IllegalArgumentException("Progressive step must be a power of two.");
+				}
+				setProgressive = true;
+			}
+			else if (sides[0].equals("--coalesce") || sides[0].equals("-q")) {
+				if(setCoalesce) {
+					throw new IllegalArgumentException("Coalesce window can't be set twice.");
+				}
+				coalesce = Long.parseLong(sides[1]);
+				setCoalesce = true;
+			}
+			else if (sides[0].equals("--budget") || sides[0].equals("-b")) {
+				if(setBudget) {
+					throw new IllegalArgumentException("Iteration budget can't be set twice.");
+				}
+				if(sides[1].equals("adaptive")) {
+					adaptive = true;
+				} else if(sides[1].equals("fixed")) {
+					adaptive = false;
+				} else {
+					throw new IllegalArgumentException("Unknown iteration budget, expected adaptive or fixed.");
+				}
+				setBudget = true;
+			}
+			else if (sides[0].equals("--precision") || sides[0].equals("-f")) {
+				if(setPrecision) {
+					throw new IllegalArgumentException("Precision can't be set twice.");
+				}
+				if(sides[1].equals("auto")) {
+					singlePrecision = true;
+				} else if(sides[1].equals("double")) {
+					singlePrecision = false;
+				} else {
+					throw new IllegalArgumentException("Unknown precision, expected auto or double.");
+				}
+				setPrecision = true;
+			}
+			else if (sides[0].equals("--symmetry") || sides[0].equals("-y")) {
+				if(setSymmetry) {
+					throw new IllegalArgumentException("Symmetry can't be set twice.");
+				}
+				if(sides[1].equals("on")) {
+					symmetric = true;
+				} else if(sides[1].equals("off")) {
+					symmetric = false;
+				} else {
+					throw new IllegalArgumentException("Unknown symmetry, expected on or off.");
+				}
+				setSymmetry = true;
+			}
+			else if (sides[0].equals("--incremental") || sides[0].equals("-i")) {
+				if(setIncremental) {
+					throw new IllegalArgumentException("Incremental rendering can't be set twice.");
+				}
+				if(sides[1].equals("on")) {
+					incremental = true;
+				} else if(sides[1].equals("off")) {
+					incremental = false;
+				} else {
+					throw new IllegalArgumentException("Unknown incremental rendering, expected on or off.");
+				}
+				setIncremental = true;
+			}
+			else if (sides[0].equals("--stats") || sides[0].equals("-t")) {
+				if(setStats) {
+					throw new IllegalArgumentException("Statistics can't be set twice.");
+				}
+				if(sides[1].equals("on")) {
+					stats = true;
+				} else if(sides[1].equals("off")) {
+					stats = false;
+				} else {
+					throw new IllegalArgumentException("Unknown statistics, expected on or off.");
+				}
+				setStats = true;
 			}
 			else {
 				throw new IllegalArgumentException("Invalid syntax.");
@@ -150,7 +300,8 @@ public class NewtonP1 {
 
     
     /**
-     * Računa podatke za neke retke te ih sprema u data[] listu.
+     * Radnik koji sa zajedničkog {@link RowScheduler}a uzima raspone redaka,
+     * računa ih te ih sprema u data[] listu.
      * 
      * @author Marko Brlek
      *
@@ -162,15 +313,21 @@ public class NewtonP1 {
 		double imMax;
 		int width;
 		int height;
-		int yMin;
-		int yMax;
+		RowScheduler rows;
+		int worker; //redni broj radnika u rows
 		int m;
 		short[] data;
 		AtomicBoolean cancel;
+		int step; //0 znači svi pikseli
 		
+		/**
+		 * Posao radnika worker koji računa retke koje dodjeljuje rows. Za step
+		 * različit od 0 računa samo još neizračunate piksele na mreži razmaka step
+		 * (vidi {@link NewtonKernel#computeLattice}).
+		 */
 		public PosaoIzracuna(double reMin, double reMax, double imMin,
-				double imMax, int width, int height, int yMin, int yMax, 
-				int m, short[] data, AtomicBoolean cancel) {
+				double imMax, int width, int height, RowScheduler rows, int worker, 
+				int step, int m, short[] data, AtomicBoolean cancel) {
 			super();
 			this.reMin = reMin;
 			this.reMax = reMax;
@@ -178,44 +335,28 @@ public class NewtonP1 {
 			this.imMax = imMax;
 			this.width = width;
 			this.height = height;
-			this.yMin = yMin;
-			this.yMax = yMax;
+			this.rows = rows;
+			this.worker = worker;
+			this.step = step;
 			this.m = m;
 			this.data = data;
 			this.cancel = cancel;
 		}
 		
 		/**
-		 * Računa za svaki piksel u retku konvergira li kojoj nultočki.
+		 * Uzima raspone redaka dok ih ima i za svaki piksel računa konvergira li
+		 * kojoj nultočki.
 		 */
 		@Override
 		public void run() {
-
-			int offset = yMin * width;
-			int index;
-	    	
-	    	for(int y = yMin; y <= yMax; y++) {
+			int[] range = new int[2];
+			
+			while(rows.claim(worker, range)) {
 				if(cancel.get()) break;
-				for(int x = 0; x < width; x++) {
-					double zre = x / (width-1.0) * (reMax - reMin) + reMin;
-					double zim = (height-1.0-y) / (height-1) * (imMax - imMin) + imMin;
-					Complex zn = new Complex(zre, zim);
-					double module = 0;
-					int iters = 0;
-					
-					do {
-						Complex numerator = polynomial.apply(zn);
-						Complex denominator = derived.apply(zn);
-						Complex znold = zn;
-						Complex fraction = numerator.div(denominator);
-						zn = zn.sub(fraction);
-						module = znold.sub(zn).module();
-						iters++;
-					} while(iters < m && module > 0.001);
-					
-					index = iters>=m ? 0 : crp.indexOfClosestRootFor(zn, 0.002);
-					data[offset] = (short)(index+1);
-					offset++;
+				if(step == 0) {
+					kernel.computeRows(reMin, reMax, imMin, imMax, width, height, range[0], range[1], m, data, cancel);
+				} else {
+					kernel.computeLattice(reMin, reMax, imMin, imMax, width, height, range[0], range[1], step, m, data, cancel);
 				}
 			}
 			
@@ -233,64 +374,199 @@ public class NewtonP1 {
      * @author Marko Brlek
      *
      */
-    public static class Producer implements IFractalProducer{
+    public static class Producer implements IFractalProducer, FrameRenderer{
     	
     	private ExecutorService pool;
+    	private TileCache cache;
+    	private RequestScheduler scheduler;
+    	private IterationBudget budget;
+    	private IncrementalRenderer history = new IncrementalRenderer();
+    	private FramePool buffers = new FramePool();
+    	private long[] idle;
     	
 
 		/**
-		 * Dohvaća podatke.
+		 * Dohvaća podatke. Zastarjeli zahtjevi se preskaču, a zahtjev koji se
+		 * računa prekida se čim stigne noviji (vidi {@link RequestScheduler}).
 		 */
 		@Override
 		public void produce(double reMin, double reMax, double imMin, double imMax, int width, int height,
 				long requestNo, IFractalResultObserver observer, AtomicBoolean cancel) {
 			
-			//ako je broj traka veći od broja redaka, "tiho" postavimo broj traka na broj redaka
-			if(NewtonP1.tracks>height) {
-				NewtonP1.tracks=height;
+			if(!scheduler.begin(requestNo, cancel)) {
+				return;
+			}
+			try {
+				Symmetry.Reduction reduction = NewtonP1.symmetric
+						? NewtonP1.symmetry.reduce(reMin, reMax, imMin, imMax, width, height) : null;
+				if(reduction == null) {
+					produceFrame(reMin, reMax, imMin, imMax, width, height, requestNo, observer, cancel);
+				} else {
+					//računamo samo temeljno područje, ostatak okvira je njegova zrcalna slika
+					produceFrame(reduction.getReMin(), reduction.getReMax(), reduction.getImMin(), reduction.getImMax(),
+							reduction.getWidth(), reduction.getHeight(), requestNo, reduction.expanding(observer, buffers), cancel);
+					printStats(reduction);
+				}
+			} finally {
+				scheduler.end();
 			}
+			printStats(scheduler);
+			printStats(NewtonP1.kernel.takeStops());
+			printStats(NewtonP1.kernel.takePrecision());
+			printStats(buffers);
+		}
+		
+		/**
+		 * Računa jedan okvir u polje iz bazena i predaje ga promatraču ako nije
+		 * prekinut. Polje prekinutog okvira vraća se u bazen. Ako neki posao baci
+		 * iznimku, polje se također vraća u bazen, a iznimka se baca dalje umjesto
+		 * da se nepotpun okvir preda.
+		 */
+		private void produceFrame(double reMin, double reMax, double imMin, double imMax, int width, int height,
+				long requestNo, IFractalResultObserver observer, AtomicBoolean cancel) {
 			
-			System.out.println("Task started with " + NewtonP1.processors + " threads and " + 
-					NewtonP1.tracks + " jobs,");
+			System.out.println("Task started with " + NewtonP1.processors + " threads.");
 			
-
+			short[] data = buffers.acquire(width * height);
+			boolean finished = false;
+			try {
+				finished = produceFrame(reMin, reMax, imMin, imMax, width, height, requestNo, observer, data, cancel);
+			} finally {
+				if(!finished) {
+					buffers.release(data);
+				}
+			}
+			if(finished) {
+				buffers.deliver(observer, data, (short)(crp.getRoots().length+1), requestNo);
+			}
+		}
+		
+		/**
+		 * Računa okvir u polje data. Međurezultate predaje promatraču, a konačni
+		 * rezultat predaje pozivatelj.
+		 * 
+		 * @return true ako okvir nije prekinut
+		 */
+		private boolean produceFrame(double reMin, double reMax, double imMin, double imMax, int width, int height,
+				long requestNo, IFractalResultObserver observer, short[] data, AtomicBoolean cancel) {
 			
-	    	int brojYPoTraci = height / NewtonP1.tracks;
-
+			int m = NewtonKernel.MAX_ITERATIONS;
+			if(NewtonP1.adaptive) {
+				m = budget.choose(kernel, reMin, reMax, imMin, imMax, width, height);
+			}
+			idle = new long[NewtonP1.processors];
+			
+			if(cache != null) {
+				cache.render(this, kernel, reMin, reMax, imMin, imMax, width, height, m, data, cancel);
+				printStats(cache);
+			} else if(NewtonP1.incremental && history.render(this, reMin, reMax, imMin, imMax, width, height, m, data, cancel)) {
+				//dio piksela prepisan je iz prethodnog okvira
+				printStats(history);
+			} else if(NewtonP1.progressive > 1) {
+				//međurezultate predaje sam, a konačni predajemo samo ako nije prekinut
+				if(!ProgressiveRenderer.render(this, NewtonP1.progressive, reMin, reMax, imMin, imMax, width, height, m, data,
+						(short)(crp.getRoots().length+1), requestNo, observer, cancel)) {
+					return false;
+				}
+			} else {
+				render(reMin, reMax, imMin, imMax, width, height, m, data, cancel);
+			}
+			
+			printStats(RowScheduler.describeIdle(idle));
+			
+			if(NewtonP1.adaptive && !cancel.get()) {
+				budget.refine(kernel, reMin, reMax, imMin, imMax, width, height, m, data, cancel);
+				printStats(budget);
+			}
+			
+			if(cancel.get()) {
+				return false;
+			}
+			if(NewtonP1.incremental) {
+				history.remember(reMin, reMax, imMin, imMax, width, height, m, data);
+			}
+			return true;
+		}
+		
+		/**
+		 * Ispisuje redak statistike okvira ako je uključen parametar "--stats".
+		 */
+		private static void printStats(Object line) {
+			if(NewtonP1.stats) {
+				System.out.println(line);
+			}
+		}
+		
+		@Override
+		public void render(double reMin, double reMax, double imMin, double imMax, int width, int height,
+				int m, short[] data, AtomicBoolean cancel) {
+			render(reMin, reMax, imMin, imMax, width, height, 0, m, data, cancel);
+		}
+		
+		@Override
+		public void renderLattice(double reMin, double reMax, double imMin, double imMax, int width, int height,
+				int step, int m, short[] data, AtomicBoolean cancel) {
+			render(reMin, reMax, imMin, imMax, width, height, step, m, data, cancel);
+		}
+		
+		/**
+		 * Pokreće radnike koji retke uzimaju s {@link RowScheduler}a i čeka da
+		 * ih izračunaju.
+		 */
+		private void render(double reMin, double reMax, double imMin, double imMax, int width, int height,
+				int step, int m, short[] data, AtomicBoolean cancel) {
+			
+			RowScheduler rows = new RowScheduler(0, height-1, NewtonP1.processors);
 			
-			short[] data = new short[width * height];
-			int m = 16*16*16;
-
-
-	    	
 			List<Future<?>> rezultati = new ArrayList<Future<?>>();
 			
-	    	//stavljamo poslove u bazen
-			for(int i = 0; i < NewtonP1.tracks; i++) {
-				int yMin = i*brojYPoTraci;
-				int yMax = (i+1)*brojYPoTraci-1;
-				if(i==NewtonP1.tracks-1) {
-					yMax = height-1;
-				}
-				PosaoIzracuna posao = new PosaoIzracuna(reMin, reMax, imMin, imMax, width, height, yMin, yMax, m, data, cancel);
+	    	//svaki radnik uzima retke dok ih ima
+			for(int i = 0; i < NewtonP1.processors; i++) {
+				PosaoIzracuna posao = new PosaoIzracuna(reMin, reMax, imMin, imMax, width, height, rows, i, step, m, data, cancel);
 				rezultati.add(this.pool.submit(posao));
 			}
 			
 			
-			//crtanje na ekran čeka da svi radnici završe s poslom
+			//crtanje na ekran čeka da svi radnici završe s poslom; prva iznimka
+			//prekida ostale poslove i baca se kad svi završe
+			Throwable failure = null;
 			for(Future<?> f : rezultati) {
 				while(true) {
 					try {
 						f.get();
 						break;
-					} catch (InterruptedException | ExecutionException e) {
+					} catch (InterruptedException e) {
+					} catch (ExecutionException e) {
+						if(failure == null) {
+							failure = e.getCause();
+							cancel.set(true);
+						}
+						break;
 					}
 				}
 			}
+			if(failure instanceof RuntimeException) {
+				throw (RuntimeException) failure;
+			}
+			if(failure instanceof Error) {
+				throw (Error) failure;
+			}
+			if(failure != null) {
+				throw new IllegalStateException("Task failed.", failure);
+			}
 			
-			
-			observer.acceptResult(data, (short)(polynomial.order()+1), requestNo);
-			
+			long[] frameIdle = rows.idleNanos();
+			for(int i = 0; i < idle.length; i++) {
+				idle[i] += frameIdle[i];
+			}
+		}
+
+		/**
+		 * Prilagodljivi broj iteracija računa na bazenu ovog proizvođača.
+		 */
+		@Override
+		public IterationBudget createBudget() {
+			return new IterationBudget(pool, NewtonP1.processors);
 		}
 
 		@Override
@@ -303,6 +579,11 @@ public class NewtonP1 {
 		@Override
 		public void setup() {
 			this.pool = Executors.newFixedThreadPool(NewtonP1.processors);
+			this.budget = createBudget();
+			this.scheduler = new RequestScheduler(NewtonP1.coalesce);
+			if(NewtonP1.tileCache > 0) {
+				this.cache = new TileCache(NewtonP1.tileCache << 20);
+			}
 		}
     	
     }
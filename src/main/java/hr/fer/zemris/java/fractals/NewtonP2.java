@@ -1,11 +1,13 @@
 package hr.fer.zemris.java.fractals;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import hr.fer.zemris.java.fractals.viewer.FractalViewer;
 import hr.fer.zemris.java.fractals.viewer.IFractalProducer;
 import hr.fer.zemris.java.fractals.viewer.IFractalResultObserver;
@@ -25,10 +27,25 @@ import hr.fer.zemris.math.ComplexRootedPolynomial;
  */
 public class NewtonP2 {
 	
+	public static int processors = Runtime.getRuntime().availableProcessors();
 	public static int mintracks = 16;
+	public static boolean simd = false;
+	public static boolean rootForm = false;
+	public static long tileCache = 0;
+	public static int progressive = 0;
+	public static long coalesce = 0;
+	public static boolean adaptive = false;
+	public static boolean singlePrecision = false;
+	public static boolean symmetric = false;
+	public static boolean incremental = false;
+	public static boolean stats = false;
+	public static boolean mariani = false;
+	public static boolean verify = false;
 	public static ComplexRootedPolynomial crp;
 	public static ComplexPolynomial polynomial;
 	public static ComplexPolynomial derived;
+	public static NewtonKernel kernel;
+	public static Symmetry symmetry;
 	
 	/**
      * Kroz System.in cita nultočke kompleksnog polinoma te zatim crta fraktal.
@@ -51,9 +68,7 @@ public class NewtonP2 {
         
         
 
-    	NewtonP2.crp = new ComplexRootedPolynomial(Complex.ONE, readRootsAsArray());
-    	NewtonP2.polynomial = crp.toComplexPolynom();
-    	NewtonP2.derived = polynomial.derive();
+    	init(readRootsAsArray());
     	
 
         FractalViewer.show(new Producer());
@@ -62,6 +77,30 @@ public class NewtonP2 {
 	
 	
 	
+	/**
+	 * Postavlja polinom zadan nultočkama i priprema jezgru za računanje.
+	 * Uz rootForm polinom se ne razvija u koeficijente, a polynomial i derived
+	 * ostaju null. Poziva se prije stvaranja {@link Producer}a.
+	 * 
+	 * @param roots Nultočke polinoma
+	 */
+	public static void init(Complex[] roots) {
+		NewtonP2.crp = new ComplexRootedPolynomial(Complex.ONE, roots);
+		if(rootForm) {
+			//korak se računa iz nultočaka, polinom ne razvijamo
+			NewtonP2.polynomial = null;
+			NewtonP2.derived = null;
+		} else {
+			NewtonP2.polynomial = crp.toComplexPolynom();
+			NewtonP2.derived = polynomial.derive();
+		}
+		NewtonP2.kernel = NewtonKernel.create(crp, polynomial, simd, singlePrecision);
+		NewtonP2.symmetry = Symmetry.detect(crp);
+		if(symmetric) {
+			System.out.println(symmetry);
+		}
+	}
+	
 	/**
 	 * Parsira argumente; broj procesora i broj radnika
 	 * 
@@ -69,9 +108,21 @@ public class NewtonP2 {
 	 */
 	public static void parseArgs(String args[]) {
 		boolean setMinTracks = false;
+		boolean setKernel = false;
+		boolean setStep = false;
+		boolean setTileCache = false;
+		boolean setProgressive = false;
+		boolean setCoalesce = false;
+		boolean setBudget = false;
+		boolean setPrecision = false;
+		boolean setSymmetry = false;
+		boolean setIncremental = false;
+		boolean setStats = false;
+		boolean setMariani = false;
+		boolean setVerify = false;
 		
-		if(args.length > 1) {
-			throw new IllegalArgumentException("Too many arguments, only allow 1.");
+		if(args.length > 13) {
+			throw new IllegalArgumentException("Too many arguments, only allow 13.");
 		}
 		
 		for (String arg : args) {
@@ -86,12 +137,153 @@ public class NewtonP2 {
 				mintracks = Integer.parseInt(sides[1]);
 				setMinTracks = true;
 			}
+			else if (sides[0].equals("--kernel") || sides[0].equals("-k")) {
+				if(setKernel) {
+					throw new IllegalArgumentException("Kernel can't be set twice.");
+				}
+				if(sides[1].equals("simd")) {
+					simd = true;
+				} else if(sides[1].equals("scalar")) {
+					simd = false;
+				} else {
+					throw new IllegalArgumentException("Unknown kernel, expected simd or scalar.");
+				}
+				setKernel = true;
+			}
+			else if (sides[0].equals("--step") || sides[0].equals("-n")) {
+				if(setStep) {
+					throw new IllegalArgumentException("Newton step can't be set twice.");
+				}
+				if(sides[1].equals("roots")) {
+					rootForm = true;
+				} else if(sides[1].equals("polynomial")) {
+					rootForm = false;
+				} else {
+					throw new IllegalArgumentException("Unknown Newton step, expected roots or polynomial.");
+				}
+				setStep = true;
+			}
+			else if (sides[0].equals("--tilecache") || sides[0].equals("-c")) {
+				if(setTileCache) {
+					throw new IllegalArgumentException("Tile cache size can't be set twice.");
+				}
+				tileCache = Long.parseLong(sides[1]);
+				setTileCache = true;
+			}
+			else if (sides[0].equals("--progressive") || sides[0].equals("-p")) {
+				if(setProgressive) {
+					throw new IllegalArgumentException("Progressive step can't be set twice.");
+				}
+				progressive = Integer.parseInt(sides[1]);
+				if(progressive != 0 && Integer.bitCount(progressive) != 1) {
+					throw new IllegalArgumentException("Progressive step must be a power of two.");
+				}
+				setProgressive = true;
+			}
+			else if (sides[0].equals("--coalesce") || sides[0].equals("-q")) {
+				if(setCoalesce) {
+					throw new IllegalArgumentException("Coalesce window can't be set twice.");
+				}
+				coalesce = Long.parseLong(sides[1]);
+				setCoalesce = true;
+			}
+			else if (sides[0].equals("--budget") || sides[0].equals("-b")) {
+				if(setBudget) {
+					throw new IllegalArgumentException("Iteration budget can't be set twice.");
+				}
+				if(sides[1].equals("adaptive")) {
+					adaptive = true;
+				} else if(sides[1].equals("fixed")) {
+					adaptive = false;
+				} else {
+					throw new IllegalArgumentException("Unknown iteration budget, expected adaptive or fixed.");
+				}
+				setBudget = true;
+			}
+			else if (sides[0].equals("--precision") || sides[0].equals("-f")) {
+				if(setPrecision) {
+					throw new IllegalArgumentException("Precision can't be set twice.");
+				}
+				if(sides[1].equals("auto")) {
+					singlePrecision = true;
+				} else if(sides[1].equals("double")) {
+					singlePrecision = false;
+				} else {
+					throw new IllegalArgumentException("Unknown precision, expected auto or double.");
+				}
+				setPrecision = true;
+			}
+			else if (sides[0].equals("--symmetry") || sides[0].equals("-y")) {
+				if(setSymmetry) {
+					throw new IllegalArgumentException("Symmetry can't be set twice.");
+				}
+				if(sides[1].equals("on")) {
+					symmetric = true;
+				} else if(sides[1].equals("off")) {
+					symmetric = false;
+				} else {
+					throw new IllegalArgumentException("Unknown symmetry, expected on or off.");
+				}
+				setSymmetry = true;
+			}
+			else if (sides[0].equals("--incremental") || sides[0].equals("-i")) {
+				if(setIncremental) {
+					throw new IllegalArgumentException("Incremental rendering can't be set twice.");
+				}
+				if(sides[1].equals("on")) {
+					incremental = true;
+				} else if(sides[1].equals("off")) {
+					incremental = false;
+				} else {
+					throw new IllegalArgumentException("Unknown incremental rendering, expected on or off.");
+				}
+				setIncremental = true;
+			}
+			else if (sides[0].equals("--stats") || sides[0].equals("-t")) {
+				if(setStats) {
+					throw new IllegalArgumentException("Statistics can't be set twice.");
+				}
+				if(sides[1].equals("on")) {
+					stats = true;
+				} else if(sides[1].equals("off")) {
+					stats = false;
+				} else {
+					throw new IllegalArgumentException("Unknown statistics, expected on or off.");
+				}
+				setStats = true;
+			}
+			else if (sides[0].equals("--mariani") || sides[0].equals("-s")) {
+				if(setMariani) {
+					throw new IllegalArgumentException("Mariani-Silver mode can't be set twice.");
+				}
+				mariani = parseBoolean(sides[1]);
+				setMariani = true;
+			}
+			else if (sides[0].equals("--verify") || sides[0].equals("-v")) {
+				if(setVerify) {
+					throw new IllegalArgumentException("Verification can't be set twice.");
+				}
+				verify = parseBoolean(sides[1]);
+				setVerify = true;
+			}
 			else {
 				throw new IllegalArgumentException("Invalid syntax.");
 			}
 		}
 	}
 	
+	/**
+	 * Parsira vrijednost "true" ili "false".
+	 * 
+	 * @param value Vrijednost argumenta
+	 * @return Parsirana vrijednost
+	 */
+	private static boolean parseBoolean(String value) {
+		if(value.equals("true")) return true;
+		if(value.equals("false")) return false;
+		throw new IllegalArgumentException("Expected true or false.");
+	}
+	
 	/**
 	 * Čita korijene kompleksnog polinoma sa System.in.
 	 * Očekuje barem 2 korijena.
@@ -160,6 +352,7 @@ public class NewtonP2 {
 		int m;
 		short[] data;
 		AtomicBoolean cancel;
+		int step; //0 znači svi pikseli
 		
 
 		public PosaoIzracuna(double reMin, double reMax, double imMin,
@@ -179,6 +372,17 @@ public class NewtonP2 {
 			this.cancel = cancel;
 		}
 		
+		/**
+		 * Posao koji računa samo još neizračunate piksele na mreži razmaka step
+		 * (vidi {@link NewtonKernel#computeLattice}).
+		 */
+		public PosaoIzracuna(double reMin, double reMax, double imMin,
+				double imMax, int width, int height, int yMin, int yMax, 
+				int step, int m, short[] data, AtomicBoolean cancel) {
+			this(reMin, reMax, imMin, imMax, width, height, yMin, yMax, m, data, cancel);
+			this.step = step;
+		}
+		
 		/**
 		 * Računa za svaki piksel u retku konvergira li kojoj nultočki.
 		 */
@@ -196,8 +400,8 @@ public class NewtonP2 {
 			
 			int ySredina = yMin + (preostaloRedaka/2);
 			
-			PosaoIzracuna p1 = new PosaoIzracuna(reMin, reMax, imMin, imMax, width, height, yMin, ySredina, m, data, cancel);
-			PosaoIzracuna p2 = new PosaoIzracuna(reMin, reMax, imMin, imMax, width, height, ySredina+1, yMax, m, data, cancel);
+			PosaoIzracuna p1 = new PosaoIzracuna(reMin, reMax, imMin, imMax, width, height, yMin, ySredina, step, m, data, cancel);
+			PosaoIzracuna p2 = new PosaoIzracuna(reMin, reMax, imMin, imMax, width, height, ySredina+1, yMax, step, m, data, cancel);
 			
 			invokeAll(p1, p2);
 			
@@ -206,32 +410,10 @@ public class NewtonP2 {
 		
 		private void computeDirect() {
 			
-			int offset = yMin * width;
-			int index;
-	    	
-	    	for(int y = yMin; y <= yMax; y++) {
-				if(cancel.get()) break;
-				for(int x = 0; x < width; x++) {
-					double zre = x / (width-1.0) * (reMax - reMin) + reMin;
-					double zim = (height-1.0-y) / (height-1) * (imMax - imMin) + imMin;
-					Complex zn = new Complex(zre, zim);
-					double module = 0;
-					int iters = 0;
-					
-					do {
-						Complex numerator = polynomial.apply(zn);
-						Complex denominator = derived.apply(zn);
-						Complex znold = zn;
-						Complex fraction = numerator.div(denominator);
-						zn = zn.sub(fraction);
-						module = znold.sub(zn).module();
-						iters++;
-					} while(iters < m && module > 0.001);
-					
-					index = iters>=m ? 0 : crp.indexOfClosestRootFor(zn, 0.002);
-					data[offset] = (short)(index+1);
-					offset++;
-				}
+			if(step == 0) {
+				kernel.computeRows(reMin, reMax, imMin, imMax, width, height, yMin, yMax, m, data, cancel);
+			} else {
+				kernel.computeLattice(reMin, reMax, imMin, imMax, width, height, yMin, yMax, step, m, data, cancel);
 			}
 		}
 
@@ -239,6 +421,134 @@ public class NewtonP2 {
 	}
     
     
+    /**
+     * Mariani-Silver podjela pravokutnika.
+     * 
+     * Računa samo rub pravokutnika [xMin, xMax] x [yMin, yMax]. Ako svi pikseli
+     * ruba konvergiraju istoj nultočki, unutrašnjost se popuni bez iteriranja,
+     * inače se izračuna linija po sredini dulje stranice i pravokutnik se dijeli
+     * na dva dijela. Pikseli koji još nisu izračunati u data[] imaju vrijednost
+     * {@link NewtonKernel#UNKNOWN}.
+     * 
+     * @author Marko Brlek
+     *
+     */
+    public static class PosaoPravokutnik extends RecursiveAction {
+		/**
+		 * 
+		 */
+		private static final long serialVersionUID = 1L;
+		
+		/**
+		 * Pravokutnik čija je unutrašnjost manja od ovoga računa se izravno.
+		 */
+		private static final int MIN_SIZE = 4;
+		
+		double reMin;
+		double reMax;
+		double imMin;
+		double imMax;
+		int width;
+		int height;
+		int xMin;
+		int xMax;
+		int yMin;
+		int yMax;
+		int m;
+		short[] data;
+		AtomicBoolean cancel;
+		LongAdder skipped;
+		
+		public PosaoPravokutnik(double reMin, double reMax, double imMin,
+				double imMax, int width, int height, int xMin, int xMax, int yMin, int yMax, 
+				int m, short[] data, AtomicBoolean cancel, LongAdder skipped) {
+			super();
+			this.reMin = reMin;
+			this.reMax = reMax;
+			this.imMin = imMin;
+			this.imMax = imMax;
+			this.width = width;
+			this.height = height;
+			this.xMin = xMin;
+			this.xMax = xMax;
+			this.yMin = yMin;
+			this.yMax = yMax;
+			this.m = m;
+			this.data = data;
+			this.cancel = cancel;
+			this.skipped = skipped;
+		}
+		
+		@Override
+		protected void compute() {
+			if(cancel.get()) return;
+			
+			//rub; pikseli koje je već izračunao roditelj se preskaču
+			rect(xMin, xMax, yMin, yMin);
+			rect(xMin, xMax, yMax, yMax);
+			rect(xMin, xMin, yMin+1, yMax-1);
+			rect(xMax, xMax, yMin+1, yMax-1);
+			
+			if(xMax - xMin < 2 || yMax - yMin < 2) return; //nema unutrašnjosti
+			
+			if(uniformBorder()) {
+				short value = data[yMin*width + xMin];
+				for(int y = yMin+1; y < yMax; y++) {
+					Arrays.fill(data, y*width + xMin+1, y*width + xMax, value);
+				}
+				skipped.add((long)(xMax-xMin-1) * (yMax-yMin-1));
+				return;
+			}
+			
+			if(xMax - xMin <= MIN_SIZE || yMax - yMin <= MIN_SIZE) {
+				rect(xMin+1, xMax-1, yMin+1, yMax-1);
+				return;
+			}
+			
+			//linija po sredini dulje stranice postaje zajednički rub oba dijela
+			PosaoPravokutnik p1;
+			PosaoPravokutnik p2;
+			if(xMax - xMin >= yMax - yMin) {
+				int xSredina = (xMin + xMax) / 2;
+				rect(xSredina, xSredina, yMin+1, yMax-1);
+				p1 = new PosaoPravokutnik(reMin, reMax, imMin, imMax, width, height, xMin, xSredina, yMin, yMax, m, data, cancel, skipped);
+				p2 = new PosaoPravokutnik(reMin, reMax, imMin, imMax, width, height, xSredina, xMax, yMin, yMax, m, data, cancel, skipped);
+			} else {
+				int ySredina = (yMin + yMax) / 2;
+				rect(xMin+1, xMax-1, ySredina, ySredina);
+				p1 = new PosaoPravokutnik(reMin, reMax, imMin, imMax, width, height, xMin, xMax, yMin, ySredina, m, data, cancel, skipped);
+				p2 = new PosaoPravokutnik(reMin, reMax, imMin, imMax, width, height, xMin, xMax, ySredina, yMax, m, data, cancel, skipped);
+			}
+			
+			//mali pravokutnici se ne dijele na nove poslove u bazenu
+			if((long)(xMax-xMin+1) * (yMax-yMin+1) <= (long)NewtonP2.mintracks * width) {
+				p1.compute();
+				p2.compute();
+			} else {
+				invokeAll(p1, p2);
+			}
+		}
+		
+		private void rect(int x0, int x1, int y0, int y1) {
+			kernel.computeRect(reMin, reMax, imMin, imMax, width, height, x0, x1, y0, y1, m, data, cancel);
+		}
+		
+		/**
+		 * Provjerava konvergiraju li svi pikseli ruba istoj nultočki.
+		 */
+		private boolean uniformBorder() {
+			short value = data[yMin*width + xMin];
+			for(int x = xMin; x <= xMax; x++) {
+				if(data[yMin*width + x] != value || data[yMax*width + x] != value) return false;
+			}
+			for(int y = yMin+1; y < yMax; y++) {
+				if(data[y*width + xMin] != value || data[y*width + xMax] != value) return false;
+			}
+			return true;
+		}
+	}
+    
+    
     /**
      * Klasa dijeli poslove na neki broj procesa i radnika.
      * 
@@ -249,35 +559,199 @@ public class NewtonP2 {
      * @author Marko Brlek
      *
      */
-    public static class Producer implements IFractalProducer{
+    public static class Producer implements IFractalProducer, FrameRenderer{
     	
     	private ForkJoinPool pool;
+    	private TileCache cache;
+    	private RequestScheduler scheduler;
+    	private IterationBudget budget;
+    	private IncrementalRenderer history = new IncrementalRenderer();
+    	private FramePool buffers = new FramePool();
+    	private LongAdder skipped = new LongAdder();
+    	private LongAdder total = new LongAdder();
+    	private LongAdder mismatched = new LongAdder();
     	
 
 		/**
-		 * Dohvaća podatke.
+		 * Dohvaća podatke. Zastarjeli zahtjevi se preskaču, a zahtjev koji se
+		 * računa prekida se čim stigne noviji (vidi {@link RequestScheduler}).
 		 */
 		@Override
 		public void produce(double reMin, double reMax, double imMin, double imMax, int width, int height,
 				long requestNo, IFractalResultObserver observer, AtomicBoolean cancel) {
 			
+			if(!scheduler.begin(requestNo, cancel)) {
+				return;
+			}
+			try {
+				Symmetry.Reduction reduction = NewtonP2.symmetric
+						? NewtonP2.symmetry.reduce(reMin, reMax, imMin, imMax, width, height) : null;
+				if(reduction == null) {
+					produceFrame(reMin, reMax, imMin, imMax, width, height, requestNo, observer, cancel);
+				} else {
+					//računamo samo temeljno područje, ostatak okvira je njegova zrcalna slika
+					produceFrame(reduction.getReMin(), reduction.getReMax(), reduction.getImMin(), reduction.getImMax(),
+							reduction.getWidth(), reduction.getHeight(), requestNo, reduction.expanding(observer, buffers), cancel);
+					printStats(reduction);
+				}
+			} finally {
+				scheduler.end();
+			}
+			printStats(scheduler);
+			printStats(NewtonP2.kernel.takeStops());
+			printStats(NewtonP2.kernel.takePrecision());
+			printStats(buffers);
+		}
+		
+		/**
+		 * Računa jedan okvir u polje iz bazena i predaje ga promatraču ako nije
+		 * prekinut. Polje prekinutog okvira vraća se u bazen. Ako neki posao baci
+		 * iznimku, polje se također vraća u bazen, a iznimka se baca dalje umjesto
+		 * da se nepotpun okvir preda.
+		 */
+		private void produceFrame(double reMin, double reMax, double imMin, double imMax, int width, int height,
+				long requestNo, IFractalResultObserver observer, AtomicBoolean cancel) {
 			
-			System.out.println("Task started with " + Runtime.getRuntime().availableProcessors() + " threads and " + 
+			
+			System.out.println("Task started with " + NewtonP2.processors + " threads and " + 
 					NewtonP2.mintracks + " mintracks.");
 			
 
 			
-			short[] data = new short[width * height];
-			int m = 16*16*16;
+			short[] data = buffers.acquire(width * height);
+			boolean finished = false;
+			try {
+				finished = produceFrame(reMin, reMax, imMin, imMax, width, height, requestNo, observer, data, cancel);
+			} finally {
+				if(!finished) {
+					buffers.release(data);
+				}
+			}
+			if(finished) {
+				buffers.deliver(observer, data, (short)(crp.getRoots().length+1), requestNo);
+			}
+		}
+		
+		/**
+		 * Računa okvir u polje data. Međurezultate predaje promatraču, a konačni
+		 * rezultat predaje pozivatelj.
+		 * 
+		 * @return true ako okvir nije prekinut
+		 */
+		private boolean produceFrame(double reMin, double reMax, double imMin, double imMax, int width, int height,
+				long requestNo, IFractalResultObserver observer, short[] data, AtomicBoolean cancel) {
+			
+			int m = NewtonKernel.MAX_ITERATIONS;
+			if(NewtonP2.adaptive) {
+				m = budget.choose(kernel, reMin, reMax, imMin, imMax, width, height);
+			}
+			skipped.reset();
+			total.reset();
+			mismatched.reset();
+			
+			if(cache != null) {
+				cache.render(this, kernel, reMin, reMax, imMin, imMax, width, height, m, data, cancel);
+				printStats(cache);
+			} else if(NewtonP2.incremental && history.render(this, reMin, reMax, imMin, imMax, width, height, m, data, cancel)) {
+				//dio piksela prepisan je iz prethodnog okvira
+				printStats(history);
+			} else if(NewtonP2.progressive > 1) {
+				//međurezultate predaje sam, a konačni predajemo samo ako nije prekinut
+				if(!ProgressiveRenderer.render(this, NewtonP2.progressive, reMin, reMax, imMin, imMax, width, height, m, data,
+						(short)(crp.getRoots().length+1), requestNo, observer, cancel)) {
+					return false;
+				}
+			} else {
+				render(reMin, reMax, imMin, imMax, width, height, m, data, cancel);
+			}
+			
+			if(NewtonP2.mariani && total.sum() > 0) {
+				printStats(String.format("Mariani-Silver skipped %.1f%% of pixels.", 100.0 * skipped.sum() / total.sum()));
+				if(NewtonP2.verify) {
+					System.out.println("Mariani-Silver check: " + mismatched.sum() + " pixels differ from brute force.");
+				}
+			}
+			
+			if(NewtonP2.adaptive && !cancel.get()) {
+				budget.refine(kernel, reMin, reMax, imMin, imMax, width, height, m, data, cancel);
+				printStats(budget);
+			}
+			
+			if(cancel.get()) {
+				return false;
+			}
+			if(NewtonP2.incremental) {
+				history.remember(reMin, reMax, imMin, imMax, width, height, m, data);
+			}
+			return true;
+		}
+		
+		/**
+		 * Ispisuje redak statistike okvira ako je uključen parametar "--stats".
+		 */
+		private static void printStats(Object line) {
+			if(NewtonP2.stats) {
+				System.out.println(line);
+			}
+		}
+		
+		@Override
+		public void render(double reMin, double reMax, double imMin, double imMax, int width, int height,
+				int m, short[] data, AtomicBoolean cancel) {
+			render(reMin, reMax, imMin, imMax, width, height, 0, m, data, cancel);
+		}
+		
+		@Override
+		public void renderLattice(double reMin, double reMax, double imMin, double imMax, int width, int height,
+				int step, int m, short[] data, AtomicBoolean cancel) {
+			render(reMin, reMax, imMin, imMax, width, height, step, m, data, cancel);
+		}
+		
+		/**
+		 * Računa prikaz jednim velikim poslom koji se dalje dijeli.
+		 */
+		private void render(double reMin, double reMax, double imMin, double imMax, int width, int height,
+				int step, int m, short[] data, AtomicBoolean cancel) {
 
+			if(step == 0 && NewtonP2.mariani) {
+				renderMariani(reMin, reMax, imMin, imMax, width, height, m, data, cancel);
+				return;
+			}
+			
 			//zovemo jedan veliki posao, kasnije se on podijeli na manje
 			
-			PosaoIzracuna posao = new PosaoIzracuna(reMin, reMax, imMin, imMax, width, height, 0, height-1, m, data, cancel);
+			PosaoIzracuna posao = new PosaoIzracuna(reMin, reMax, imMin, imMax, width, height, 0, height-1, step, m, data, cancel);
 			this.pool.invoke(posao);
+		}
+		
+		/**
+		 * Računa prikaz Mariani-Silver podjelom. Uz uključenu provjeru ponovno ga
+		 * računa svaki piksel i broji piksele koji se razlikuju.
+		 */
+		private void renderMariani(double reMin, double reMax, double imMin, double imMax, int width, int height,
+				int m, short[] data, AtomicBoolean cancel) {
 			
+			Arrays.fill(data, NewtonKernel.UNKNOWN);
+			PosaoPravokutnik posao = new PosaoPravokutnik(reMin, reMax, imMin, imMax, width, height,
+					0, width-1, 0, height-1, m, data, cancel, skipped);
+			this.pool.invoke(posao);
+			total.add((long)width * height);
 			
-			observer.acceptResult(data, (short)(polynomial.order()+1), requestNo);
-			
+			if(NewtonP2.verify && !cancel.get()) {
+				short[] brute = new short[width * height];
+				this.pool.invoke(new PosaoIzracuna(reMin, reMax, imMin, imMax, width, height, 0, height-1, m, brute, cancel));
+				for(int i = 0; i < brute.length; i++) {
+					if(brute[i] != data[i]) mismatched.increment();
+				}
+			}
+		}
+
+		/**
+		 * Prilagodljivi broj iteracija računa na bazenu ovog proizvođača.
+		 */
+		@Override
+		public IterationBudget createBudget() {
+			return new IterationBudget(pool, NewtonP2.processors);
 		}
 
 		@Override
@@ -289,7 +763,12 @@ public class NewtonP2 {
 
 		@Override
 		public void setup() {
-			this.pool = new ForkJoinPool();
+			this.pool = new ForkJoinPool(NewtonP2.processors);
+			this.budget = createBudget();
+			this.scheduler = new RequestScheduler(NewtonP2.coalesce);
+			if(NewtonP2.tileCache > 0) {
+				this.cache = new TileCache(NewtonP2.tileCache << 20);
+			}
 		}
     	
     }
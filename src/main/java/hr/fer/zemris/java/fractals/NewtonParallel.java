@@ -4,8 +4,11 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import hr.fer.zemris.java.fractals.viewer.FractalViewer;
 import hr.fer.zemris.java.fractals.viewer.IFractalProducer;
@@ -27,10 +30,21 @@ import hr.fer.zemris.math.ComplexRootedPolynomial;
 public class NewtonParallel {
 	
 	public static int processors = Runtime.getRuntime().availableProcessors();
-	public static int tracks = 4 * processors;
+	public static boolean simd = false;
+	public static boolean rootForm = false;
+	public static long tileCache = 0;
+	public static int progressive = 0;
+	public static long coalesce = 0;
+	public static boolean adaptive = false;
+	public static boolean singlePrecision = false;
+	public static boolean symmetric = false;
+	public static boolean incremental = false;
+	public static boolean stats = false;
 	public static ComplexRootedPolynomial crp;
 	public static ComplexPolynomial polynomial;
 	public static ComplexPolynomial derived;
+	public static NewtonKernel kernel;
+	public static Symmetry symmetry;
 	
 	/**
      * Kroz System.in cita nultočke kompleksnog polinoma te zatim crta fraktal.
@@ -53,9 +67,7 @@ public class NewtonParallel {
         
         
 
-    	NewtonParallel.crp = new ComplexRootedPolynomial(Complex.ONE, readRootsAsArray());
-    	NewtonParallel.polynomial = crp.toComplexPolynom();
-    	NewtonParallel.derived = polynomial.derive();
+    	init(readRootsAsArray());
     	
 
         FractalViewer.show(new Producer());
@@ -64,6 +76,30 @@ public class NewtonParallel {
 	
 	
 	
+	/**
+	 * Postavlja polinom zadan nultočkama i priprema jezgru za računanje.
+	 * Uz rootForm polinom se ne razvija u koeficijente, a polynomial i derived
+	 * ostaju null. Poziva se prije stvaranja {@link Producer}a.
+	 * 
+	 * @param roots Nultočke polinoma
+	 */
+	public static void init(Complex[] roots) {
+		NewtonParallel.crp = new ComplexRootedPolynomial(Complex.ONE, roots);
+		if(rootForm) {
+			//korak se računa iz nultočaka, polinom ne razvijamo
+			NewtonParallel.polynomial = null;
+			NewtonParallel.derived = null;
+		} else {
+			NewtonParallel.polynomial = crp.toComplexPolynom();
+			NewtonParallel.derived = polynomial.derive();
+		}
+		NewtonParallel.kernel = NewtonKernel.create(crp, polynomial, simd, singlePrecision);
+		NewtonParallel.symmetry = Symmetry.detect(crp);
+		if(symmetric) {
+			System.out.println(symmetry);
+		}
+	}
+	
 	/**
 	 * Parsira argumente; broj procesora i broj radnika
 	 * 
@@ -71,10 +107,19 @@ public class NewtonParallel {
 	 */
 	public static void parseArgs(String args[]) {
 		boolean setProcessors = false;
-		boolean setTracks = false;
+		boolean setKernel = false;
+		boolean setStep = false;
+		boolean setTileCache = false;
+		boolean setProgressive = false;
+		boolean setCoalesce = false;
+		boolean setBudget = false;
+		boolean setPrecision = false;
+		boolean setSymmetry = false;
+		boolean setIncremental = false;
+		boolean setStats = false;
 		
-		if(args.length > 2) {
-			throw new IllegalArgumentException("Too many arguments, only allow 2.");
+		if(args.length > 11) {
+			throw new IllegalArgumentException("Too many arguments, only allow 11.");
 		}
 		
 		for (String arg : args) {
@@ -89,12 +134,120 @@ public class NewtonParallel {
 				processors = Integer.parseInt(sides[1]);
 				setProcessors = true;
 			}
-			else if (sides[0].equals("--tracks") || sides[0].equals("-t")) {
-				if(setTracks) {
-					throw new IllegalArgumentException("Number of tracks can't be set twice.");
+			else if (sides[0].equals("--kernel") || sides[0].equals("-k")) {
+				if(setKernel) {
+					throw new IllegalArgumentException("Kernel can't be set twice.");
+				}
+				if(sides[1].equals("simd")) {
+					simd = true;
+				} else if(sides[1].equals("scalar")) {
+					simd = false;
+				} else {
+					throw new IllegalArgumentException("Unknown kernel, expected simd or scalar.");
+				}
+				setKernel = true;
+			}
+			else if (sides[0].equals("--step") || sides[0].equals("-n")) {
+				if(setStep) {
+					throw new IllegalArgumentException("Newton step can't be set twice.");
+				}
+				if(sides[1].equals("roots")) {
+					rootForm = true;
+				} else if(sides[1].equals("polynomial")) {
+					rootForm = false;
+				} else {
+					throw new IllegalArgumentException("Unknown Newton step, expected roots or polynomial.");
+				}
+				setStep = true;
+			}
+			else if (sides[0].equals("--tilecache") || sides[0].equals("-c")) {
+				if(setTileCache) {
+					throw new IllegalArgumentException("Tile cache size can't be set twice.");
+				}
+				tileCache = Long.parseLong(sides[1]);
+				setTileCache = true;
+			}
+			else if (sides[0].equals("--progressive") || sides[0].equals("-p")) {
+				if(setProgressive) {
+					throw new IllegalArgumentException("Progressive step can't be set twice.");
+				}
+				progressive = Integer.parseInt(sides[1]);
+				if(progressive != 0 && Integer.bitCount(progressive) != 1) {
+					throw new IllegalArgumentException("Progressive step must be a power of two.");
 				}
-				tracks = Integer.parseInt(sides[1]);
-				setTracks = true;
+				setProgressive = true;
+			}
+			else if (sides[0].equals("--coalesce") || sides[0].equals("-q")) {
+				if(setCoalesce) {
+					throw new IllegalArgumentException("Coalesce window can't be set twice.");
+				}
+				coalesce = Long.parseLong(sides[1]);
+				setCoalesce = true;
+			}
+			else if (sides[0].equals("--budget") || sides[0].equals("-b")) {
+				if(setBudget) {
+					throw new IllegalArgumentException("Iteration budget can't be set twice.");
+				}
+				if(sides[1].equals("adaptive")) {
+					adaptive = true;
+				} else if(sides[1].equals("fixed")) {
+					adaptive = false;
+				} else {
+					throw new IllegalArgumentException("Unknown iteration budget, expected adaptive or fixed.");
+				}
+				setBudget = true;
+			}
+			else if (sides[0].equals("--precision") || sides[0].equals("-f")) {
+				if(setPrecision) {
+					throw new IllegalArgumentException("Precision can't be set twice.");
+				}
+				if(sides[1].equals("auto")) {
+					singlePrecision = true;
+				} else if(sides[1].equals("double")) {
+					singlePrecision = false;
+				} else {
+					throw new IllegalArgumentException("Unknown precision, expected auto or double.");
+				}
+				setPrecision = true;
+			}
+			else if (sides[0].equals("--symmetry") || sides[0].equals("-y")) {
+				if(setSymmetry) {
+					throw new IllegalArgumentException("Symmetry can't be set twice.");
+				}
+				if(sides[1].equals("on")) {
+					symmetric = true;
+				} else if(sides[1].equals("off")) {
+					symmetric = false;
+				} else {
+					throw new IllegalArgumentException("Unknown symmetry, expected on or off.");
+				}
+				setSymmetry = true;
+			}
+			else if (sides[0].equals("--incremental") || sides[0].equals("-i")) {
+				if(setIncremental) {
+					throw new IllegalArgumentException("Incremental rendering can't be set twice.");
+				}
+				if(sides[1].equals("on")) {
+					incremental = true;
+				} else if(sides[1].equals("off")) {
+					incremental = false;
+				} else {
+					throw new IllegalArgumentException("Unknown incremental rendering, expected on or off.");
+				}
+				setIncremental = true;
+			}
+			else if (sides[0].equals("--stats") || sides[0].equals("-t")) {
+				if(setStats) {
+					throw new IllegalArgumentException("Statistics can't be set twice.");
+				}
+				if(sides[1].equals("on")) {
+					stats = true;
+				} else if(sides[1].equals("off")) {
+					stats = false;
+				} else {
+					throw new IllegalArgumentException("Unknown statistics, expected on or off.");
+				}
+				setStats = true;
 			}
 			else {
 				throw new IllegalArgumentException("Invalid syntax.");
@@ -149,7 +302,8 @@ public class NewtonParallel {
 
     
     /**
-     * Računa podatke za neke retke te ih sprema u data[] listu.
+     * Radnik koji sa zajedničkog {@link RowScheduler}a uzima raspone redaka,
+     * računa ih te ih sprema u data[] listu.
      * 
      * @author Marko Brlek
      *
@@ -161,19 +315,41 @@ public class NewtonParallel {
 		double imMax;
 		int width;
 		int height;
-		int yMin;
-		int yMax;
+		RowScheduler rows;
+		int worker; //redni broj radnika u rows
 		int m;
 		short[] data;
 		AtomicBoolean cancel;
+		int step; //0 znači svi pikseli
+		CountDownLatch latch; //odbrojava gotove poslove okvira
+		AtomicLong started; //vrijeme početka prvog posla okvira
+		AtomicReference<Throwable> failure; //prva iznimka poslova okvira
+		Runnable task; //posao koji nije dio okvira, npr. dio IterationBudget
 		public static PosaoIzracuna NO_JOB = new PosaoIzracuna();
 		
 		private PosaoIzracuna() {
 		}
 		
+		/**
+		 * Posao koji na radniku izvodi zadani zadatak. Zadatak sam bilježi svoje
+		 * iznimke i kraj.
+		 */
+		private PosaoIzracuna(Runnable task) {
+			this.task = task;
+			this.latch = new CountDownLatch(1);
+			this.started = new AtomicLong();
+			this.failure = new AtomicReference<>();
+			this.cancel = new AtomicBoolean();
+		}
+		
+		/**
+		 * Posao radnika worker koji računa retke koje dodjeljuje rows. Za step
+		 * različit od 0 računa samo još neizračunate piksele na mreži razmaka step
+		 * (vidi {@link NewtonKernel#computeLattice}).
+		 */
 		public PosaoIzracuna(double reMin, double reMax, double imMin,
-				double imMax, int width, int height, int yMin, int yMax, 
-				int m, short[] data, AtomicBoolean cancel) {
+				double imMax, int width, int height, RowScheduler rows, int worker, 
+				int step, int m, short[] data, AtomicBoolean cancel) {
 			super();
 			this.reMin = reMin;
 			this.reMax = reMax;
@@ -181,44 +357,32 @@ public class NewtonParallel {
 			this.imMax = imMax;
 			this.width = width;
 			this.height = height;
-			this.yMin = yMin;
-			this.yMax = yMax;
+			this.rows = rows;
+			this.worker = worker;
+			this.step = step;
 			this.m = m;
 			this.data = data;
 			this.cancel = cancel;
 		}
 		
 		/**
-		 * Računa za svaki piksel u retku konvergira li kojoj nultočki.
+		 * Uzima raspone redaka dok ih ima i za svaki piksel računa konvergira li
+		 * kojoj nultočki.
 		 */
 		@Override
 		public void run() {
-
-			int offset = yMin * width;
-			int index;
-	    	
-	    	for(int y = yMin; y <= yMax; y++) {
+			if(task != null) {
+				task.run();
+				return;
+			}
+			int[] range = new int[2];
+			
+			while(rows.claim(worker, range)) {
 				if(cancel.get()) break;
-				for(int x = 0; x < width; x++) {
-					double zre = x / (width-1.0) * (reMax - reMin) + reMin;
-					double zim = (height-1.0-y) / (height-1) * (imMax - imMin) + imMin;
-					Complex zn = new Complex(zre, zim);
-					double module = 0;
-					int iters = 0;
-					
-					do {
-						Complex numerator = polynomial.apply(zn);
-						Complex denominator = derived.apply(zn);
-						Complex znold = zn;
-						Complex fraction = numerator.div(denominator);
-						zn = zn.sub(fraction);
-						module = znold.sub(zn).module();
-						iters++;
-					} while(iters < m && module > 0.001);
-					
-					index = iters>=m ? 0 : crp.indexOfClosestRootFor(zn, 0.002);
-					data[offset] = (short)(index+1);
-					offset++;
+				if(step == 0) {
+					kernel.computeRows(reMin, reMax, imMin, imMax, width, height, range[0], range[1], m, data, cancel);
+				} else {
+					kernel.computeLattice(reMin, reMax, imMin, imMax, width, height, range[0], range[1], step, m, data, cancel);
 				}
 			}
 			
@@ -236,72 +400,166 @@ public class NewtonParallel {
      * @author Marko Brlek
      *
      */
-    public static class Producer implements IFractalProducer{
+    public static class Producer implements IFractalProducer, FrameRenderer{
+    	
+    	private TileCache cache;
+    	private RequestScheduler scheduler;
+    	private IterationBudget budget;
+    	private IncrementalRenderer history = new IncrementalRenderer();
+    	private FramePool buffers = new FramePool();
+    	private long[] idle;
+    	private BlockingQueue<PosaoIzracuna> queue;
+    	private Thread[] radnici;
+    	private AtomicLong startupNanos = new AtomicLong();
+    	private AtomicLong batches = new AtomicLong();
     	
 
 		/**
-		 * Dohvaća podatke.
+		 * Dohvaća podatke. Zastarjeli zahtjevi se preskaču, a zahtjev koji se
+		 * računa prekida se čim stigne noviji (vidi {@link RequestScheduler}).
 		 */
 		@Override
 		public void produce(double reMin, double reMax, double imMin, double imMax, int width, int height,
 				long requestNo, IFractalResultObserver observer, AtomicBoolean cancel) {
 			
-			//ako je broj traka veći od broja redaka, "tiho" postavimo broj traka na broj redaka
-			if(NewtonParallel.tracks>height) {
-				NewtonParallel.tracks=height;
+			if(!scheduler.begin(requestNo, cancel)) {
+				return;
+			}
+			try {
+				Symmetry.Reduction reduction = NewtonParallel.symmetric
+						? NewtonParallel.symmetry.reduce(reMin, reMax, imMin, imMax, width, height) : null;
+				if(reduction == null) {
+					produceFrame(reMin, reMax, imMin, imMax, width, height, requestNo, observer, cancel);
+				} else {
+					//računamo samo temeljno područje, ostatak okvira je njegova zrcalna slika
+					produceFrame(reduction.getReMin(), reduction.getReMax(), reduction.getImMin(), reduction.getImMax(),
+							reduction.getWidth(), reduction.getHeight(), requestNo, reduction.expanding(observer, buffers), cancel);
+					printStats(reduction);
+				}
+			} finally {
+				scheduler.end();
 			}
+			printStats(scheduler);
+			printStats(NewtonParallel.kernel.takeStops());
+			printStats(NewtonParallel.kernel.takePrecision());
+			printStats(buffers);
+			printStats(String.format("Average frame startup latency: %.1f us over %d batches.",
+					startupNanos.get() / 1e3 / Math.max(1, batches.get()), batches.get()));
+		}
+		
+		/**
+		 * Računa jedan okvir u polje iz bazena i predaje ga promatraču ako nije
+		 * prekinut. Polje prekinutog okvira vraća se u bazen. Ako neki posao baci
+		 * iznimku, polje se također vraća u bazen, a iznimka se baca dalje umjesto
+		 * da se nepotpun okvir preda.
+		 */
+		private void produceFrame(double reMin, double reMax, double imMin, double imMax, int width, int height,
+				long requestNo, IFractalResultObserver observer, AtomicBoolean cancel) {
 			
-			System.out.println("Task started with " + NewtonParallel.processors + " threads and " + 
-								NewtonParallel.tracks + " jobs,");
+			System.out.println("Task started with " + NewtonParallel.processors + " threads.");
 			
-
+			short[] data = buffers.acquire(width * height);
+			boolean finished = false;
+			try {
+				finished = produceFrame(reMin, reMax, imMin, imMax, width, height, requestNo, observer, data, cancel);
+			} finally {
+				if(!finished) {
+					buffers.release(data);
+				}
+			}
+			if(finished) {
+				buffers.deliver(observer, data, (short)(crp.getRoots().length+1), requestNo);
+			}
+		}
+		
+		/**
+		 * Računa okvir u polje data. Međurezultate predaje promatraču, a konačni
+		 * rezultat predaje pozivatelj.
+		 * 
+		 * @return true ako okvir nije prekinut
+		 */
+		private boolean produceFrame(double reMin, double reMax, double imMin, double imMax, int width, int height,
+				long requestNo, IFractalResultObserver observer, short[] data, AtomicBoolean cancel) {
 			
-	    	int brojYPoTraci = height / NewtonParallel.tracks;
-
+			int m = NewtonKernel.MAX_ITERATIONS;
+			if(NewtonParallel.adaptive) {
+				m = budget.choose(kernel, reMin, reMax, imMin, imMax, width, height);
+			}
+			idle = new long[NewtonParallel.processors];
+			
+			if(cache != null) {
+				cache.render(this, kernel, reMin, reMax, imMin, imMax, width, height, m, data, cancel);
+				printStats(cache);
+			} else if(NewtonParallel.incremental && history.render(this, reMin, reMax, imMin, imMax, width, height, m, data, cancel)) {
+				//dio piksela prepisan je iz prethodnog okvira
+				printStats(history);
+			} else if(NewtonParallel.progressive > 1) {
+				//međurezultate predaje sam, a konačni predajemo samo ako nije prekinut
+				if(!ProgressiveRenderer.render(this, NewtonParallel.progressive, reMin, reMax, imMin, imMax, width, height, m, data,
+						(short)(crp.getRoots().length+1), requestNo, observer, cancel)) {
+					return false;
+				}
+			} else {
+				render(reMin, reMax, imMin, imMax, width, height, m, data, cancel);
+			}
 			
-			short[] data = new short[width * height];
-			int m = 16*16*16;
-			//int offset = 0;
-			//int index;
+			printStats(RowScheduler.describeIdle(idle));
 			
-	    	final BlockingQueue<PosaoIzracuna> queue = new LinkedBlockingQueue<>();
-	    	
-	    	Thread[] radnici = new Thread[NewtonParallel.processors];
-	    	
-	    	//radnici kad su gotovi sa prethodnim zadatkom, uzimaju novi zadatak iz reda
-	    	//sve dok u redu ima zadataka
-	    	
-	    	for(int i = 0; i < radnici.length; i++) {
-				radnici[i] = new Thread(new Runnable() {
-					@Override
-					public void run() {
-						while(true) {
-							PosaoIzracuna p = null;
-							try {
-								p = queue.take();
-								if(p==PosaoIzracuna.NO_JOB) break;
-							} catch (InterruptedException e) {
-								continue;
-							}
-							p.run();
-						}
-					}
-				});
+			if(NewtonParallel.adaptive && !cancel.get()) {
+				budget.refine(kernel, reMin, reMax, imMin, imMax, width, height, m, data, cancel);
+				printStats(budget);
 			}
-	    	
-	    	//budimo radnike
-	    	for(int i = 0; i < radnici.length; i++) {
-				radnici[i].start();
+			
+			if(cancel.get()) {
+				return false;
 			}
+			if(NewtonParallel.incremental) {
+				history.remember(reMin, reMax, imMin, imMax, width, height, m, data);
+			}
+			return true;
+		}
+		
+		/**
+		 * Ispisuje redak statistike okvira ako je uključen parametar "--stats".
+		 */
+		private static void printStats(Object line) {
+			if(NewtonParallel.stats) {
+				System.out.println(line);
+			}
+		}
+		
+		@Override
+		public void render(double reMin, double reMax, double imMin, double imMax, int width, int height,
+				int m, short[] data, AtomicBoolean cancel) {
+			render(reMin, reMax, imMin, imMax, width, height, 0, m, data, cancel);
+		}
+		
+		@Override
+		public void renderLattice(double reMin, double reMax, double imMin, double imMax, int width, int height,
+				int step, int m, short[] data, AtomicBoolean cancel) {
+			render(reMin, reMax, imMin, imMax, width, height, step, m, data, cancel);
+		}
+		
+		/**
+		 * Predaje svakom radniku posao koji retke uzima s {@link RowScheduler}a i
+		 * čeka da svi završe.
+		 */
+		private void render(double reMin, double reMax, double imMin, double imMax, int width, int height,
+				int step, int m, short[] data, AtomicBoolean cancel) {
 			
-	    	//stavljamo poslove u red
-			for(int i = 0; i < NewtonParallel.tracks; i++) {
-				int yMin = i*brojYPoTraci;
-				int yMax = (i+1)*brojYPoTraci-1;
-				if(i==NewtonParallel.tracks-1) {
-					yMax = height-1;
-				}
-				PosaoIzracuna posao = new PosaoIzracuna(reMin, reMax, imMin, imMax, width, height, yMin, yMax, m, data, cancel);
+			RowScheduler rows = new RowScheduler(0, height-1, radnici.length);
+	    	
+	    	CountDownLatch latch = new CountDownLatch(radnici.length);
+	    	AtomicLong started = new AtomicLong();
+	    	AtomicReference<Throwable> failure = new AtomicReference<>();
+	    	long submitted = System.nanoTime();
+			
+	    	//svakom radniku dajemo posao koji uzima retke dok ih ima
+			for(int i = 0; i < radnici.length; i++) {
+				PosaoIzracuna posao = new PosaoIzracuna(reMin, reMax, imMin, imMax, width, height, rows, i, step, m, data, cancel);
+				posao.latch = latch;
+				posao.started = started;
+				posao.failure = failure;
 				while(true) {
 					try {
 						queue.put(posao);
@@ -311,7 +569,59 @@ public class NewtonParallel {
 				}
 			}
 			
-			//stavljamo oznake za kraj posla u red
+			//crtanje na ekran čeka da radnici izračunaju sve retke
+			while(true) {
+				try {
+					latch.await();
+					break;
+				} catch (InterruptedException e) {
+				}
+			}
+			
+			//okvir u kojem je posao bacio iznimku nije potpun i ne predaje se
+			Throwable thrown = failure.get();
+			if(thrown instanceof RuntimeException) {
+				throw (RuntimeException) thrown;
+			}
+			if(thrown instanceof Error) {
+				throw (Error) thrown;
+			}
+			if(thrown != null) {
+				throw new IllegalStateException("Task failed.", thrown);
+			}
+			
+			startupNanos.addAndGet(started.get() - submitted);
+			batches.incrementAndGet();
+			
+			long[] frameIdle = rows.idleNanos();
+			for(int i = 0; i < idle.length; i++) {
+				idle[i] += frameIdle[i];
+			}
+		}
+
+		/**
+		 * Prilagodljivi broj iteracija računa na radnicima ovog proizvođača: svaki
+		 * njegov posao ulazi u isti red kao i poslovi okvira.
+		 */
+		@Override
+		public IterationBudget createBudget() {
+			return new IterationBudget(task -> {
+				PosaoIzracuna posao = new PosaoIzracuna(task);
+				while(true) {
+					try {
+						queue.put(posao);
+						break;
+					} catch (InterruptedException e) {
+					}
+				}
+			}, NewtonParallel.processors);
+		}
+
+		/**
+		 * Šalje radnicima oznake za kraj posla i čeka da završe.
+		 */
+		@Override
+		public void close() {
 			for(int i = 0; i < radnici.length; i++) {
 				while(true) {
 					try {
@@ -321,8 +631,6 @@ public class NewtonParallel {
 					}
 				}
 			}
-			
-			//crtanje na ekran čeka da svi radnici završe s poslom
 			for(int i = 0; i < radnici.length; i++) {
 				while(true) {
 					try {
@@ -332,22 +640,57 @@ public class NewtonParallel {
 					}
 				}
 			}
-			
-			
-			observer.acceptResult(data, (short)(polynomial.order()+1), requestNo);
-			
-		}
-
-		@Override
-		public void close() {
-			// TODO Auto-generated method stub
-			
 		}
 
+		/**
+		 * Pokreće radnike koji žive do {@link #close()} i uzimaju poslove iz
+		 * zajedničkog reda.
+		 */
 		@Override
 		public void setup() {
-			// TODO Auto-generated method stub
+			this.scheduler = new RequestScheduler(NewtonParallel.coalesce);
+			if(NewtonParallel.tileCache > 0) {
+				this.cache = new TileCache(NewtonParallel.tileCache << 20);
+			}
 			
+			final BlockingQueue<PosaoIzracuna> queue = new LinkedBlockingQueue<>();
+			this.queue = queue;
+			this.budget = createBudget();
+	    	this.radnici = new Thread[NewtonParallel.processors];
+	    	
+	    	//radnici kad su gotovi sa prethodnim zadatkom, uzimaju novi zadatak iz reda
+	    	//sve dok ne dobiju oznaku za kraj
+	    	
+	    	for(int i = 0; i < radnici.length; i++) {
+				radnici[i] = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						while(true) {
+							PosaoIzracuna p = null;
+							try {
+								p = queue.take();
+								if(p==PosaoIzracuna.NO_JOB) break;
+							} catch (InterruptedException e) {
+								continue;
+							}
+							p.started.compareAndSet(0, System.nanoTime());
+							try {
+								p.run();
+							} catch(Throwable t) {
+								//iznimku pamtimo na okviru i prekidamo ostale poslove,
+								//a radnik ostaje živ za sljedeće okvire
+								if(p.failure.compareAndSet(null, t)) {
+									p.cancel.set(true);
+								}
+							} finally {
+								p.latch.countDown();
+							}
+						}
+					}
+				});
+				radnici[i].setDaemon(true);
+				radnici[i].start();
+			}
 		}
     	
     }
@@ -0,0 +1,572 @@
+package hr.fer.zemris.java.fractals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import hr.fer.zemris.java.fractals.viewer.FractalViewer;
+import hr.fer.zemris.java.fractals.viewer.IFractalProducer;
+import hr.fer.zemris.java.fractals.viewer.IFractalResultObserver;
+import hr.fer.zemris.math.Complex;
+import hr.fer.zemris.math.ComplexPolynomial;
+import hr.fer.zemris.math.ComplexRootedPolynomial;
+
+/**
+ * Crta Newton-Raphson fraktal pomocu FractalViewera.
+ * Radi paralelno, jedan posao po pločici slike.
+ * 
+ * Svi poslovi okvira izvode se unutar jednog {@link TileScope}a, pa prekid
+ * okvira (zastavica cancel ili noviji zahtjev) zaustavlja sve njegove pločice.
+ * 
+ * Kroz System.in cita nultočke kompleksnog polinoma.
+ * Kroz argumente cita broj radnika i veličinu pločice.
+ * 
+ * @author Marko Brlek
+ *
+ */
+public class NewtonTiles {
+	
+	public static int processors = Runtime.getRuntime().availableProcessors();
+	public static int tileSize = 64;
+	public static boolean simd = false;
+	public static boolean rootForm = false;
+	public static long tileCache = 0;
+	public static int progressive = 0;
+	public static long coalesce = 0;
+	public static boolean adaptive = false;
+	public static boolean singlePrecision = false;
+	public static boolean symmetric = false;
+	public static boolean incremental = false;
+	public static boolean stats = false;
+	public static ComplexRootedPolynomial crp;
+	public static ComplexPolynomial polynomial;
+	public static ComplexPolynomial derived;
+	public static NewtonKernel kernel;
+	public static Symmetry symmetry;
+	
+	/**
+     * Kroz System.in cita nultočke kompleksnog polinoma te zatim crta fraktal.
+     * 
+     * Kroz argumente cita broj radnika i veličinu pločice (oboje opcionalno).
+     * 
+     * 
+     * @param args Broj radnika i veličina pločice
+     */
+	public static void main(String[] args) {
+
+		
+		parseArgs(args);
+		
+        System.out.println("Welcome to Newton-Raphson iteration-based fractal viewer.");
+        System.out.println("Please enter at least two roots, one root per line. Enter 'done' when done.");
+        
+        
+        System.out.println("Image of fractal will appear shortly. Thank you.");
+        
+        
+
+    	init(readRootsAsArray());
+    	
+
+        FractalViewer.show(new Producer());
+    }
+	
+	
+	
+	
+	/**
+	 * Postavlja polinom zadan nultočkama i priprema jezgru za računanje.
+	 * Uz rootForm polinom se ne razvija u koeficijente, a polynomial i derived
+	 * ostaju null. Poziva se prije stvaranja {@link Producer}a.
+	 * 
+	 * @param roots Nultočke polinoma
+	 */
+	public static void init(Complex[] roots) {
+		NewtonTiles.crp = new ComplexRootedPolynomial(Complex.ONE, roots);
+		if(rootForm) {
+			//korak se računa iz nultočaka, polinom ne razvijamo
+			NewtonTiles.polynomial = null;
+			NewtonTiles.derived = null;
+		} else {
+			NewtonTiles.polynomial = crp.toComplexPolynom();
+			NewtonTiles.derived = polynomial.derive();
+		}
+		NewtonTiles.kernel = NewtonKernel.create(crp, polynomial, simd, singlePrecision);
+		NewtonTiles.symmetry = Symmetry.detect(crp);
+		if(symmetric) {
+			System.out.println(symmetry);
+		}
+	}
+	
+	/**
+	 * Parsira argumente; broj radnika i veličinu pločice
+	 * 
+	 * @param args Argumenti
+	 */
+	public static void parseArgs(String args[]) {
+		boolean setProcessors = false;
+		boolean setTileSize = false;
+		boolean setKernel = false;
+		boolean setStep = false;
+		boolean setTileCache = false;
+		boolean setProgressive = false;
+		boolean setCoalesce = false;
+		boolean setBudget = false;
+		boolean setPrecision = false;
+		boolean setSymmetry = false;
+		boolean setIncremental = false;
+		boolean setStats = false;
+		
+		if(args.length > 12) {
+			throw new IllegalArgumentException("Too many arguments, only allow 12.");
+		}
+		
+		for (String arg : args) {
+			String[] sides = arg.split("=");
+			if(sides.length!=2) {
+				throw new IllegalArgumentException("Invalid syntax.");
+			}
+			if(sides[0].equals("--workers") || sides[0].equals("-w")) {
+				if(setProcessors) {
+					throw new IllegalArgumentException("Number of workers can't be set twice.");
+				}
+				processors = Integer.parseInt(sides[1]);
+				setProcessors = true;
+			}
+			else if (sides[0].equals("--tilesize") || sides[0].equals("-z")) {
+				if(setTileSize) {
+					throw new IllegalArgumentException("Tile size can't be set twice.");
+				}
+				tileSize = Integer.parseInt(sides[1]);
+				if(tileSize < 1) {
+					throw new IllegalArgumentException("Tile size must be positive.");
+				}
+				setTileSize = true;
+			}
+			else if (sides[0].equals("--kernel") || sides[0].equals("-k")) {
+				if(setKernel) {
+					throw new IllegalArgumentException("Kernel can't be set twice.");
+				}
+				if(sides[1].equals("simd")) {
+					simd = true;
+				} else if(sides[1].equals("scalar")) {
+					simd = false;
+				} else {
+					throw new IllegalArgumentException("Unknown kernel, expected simd or scalar.");
+				}
+				setKernel = true;
+			}
+			else if (sides[0].equals("--step") || sides[0].equals("-n")) {
+				if(setStep) {
+					throw new IllegalArgumentException("Newton step can't be set twice.");
+				}
+				if(sides[1].equals("roots")) {
+					rootForm = true;
+				} else if(sides[1].equals("polynomial")) {
+					rootForm = false;
+				} else {
+					throw new IllegalArgumentException("Unknown Newton step, expected roots or polynomial.");
+				}
+				setStep = true;
+			}
+			else if (sides[0].equals("--tilecache") || sides[0].equals("-c")) {
+				if(setTileCache) {
+					throw new IllegalArgumentException("Tile cache size can't be set twice.");
+				}
+				tileCache = Long.parseLong(sides[1]);
+				setTileCache = true;
+			}
+			else if (sides[0].equals("--progressive") || sides[0].equals("-p")) {
+				if(setProgressive) {
+					throw new IllegalArgumentException("Progressive step can't be set twice.");
+				}
+				progressive = Integer.parseInt(sides[1]);
+				if(progressive != 0 && Integer.bitCount(progressive) != 1) {
+					throw new IllegalArgumentException("Progressive step must be a power of two.");
+				}
+				setProgressive = true;
+			}
+			else if (sides[0].equals("--coalesce") || sides[0].equals("-q")) {
+				if(setCoalesce) {
+					throw new IllegalArgumentException("Coalesce window can't be set twice.");
+				}
+				coalesce = Long.parseLong(sides[1]);
+				setCoalesce = true;
+			}
+			else if (sides[0].equals("--budget") || sides[0].equals("-b")) {
+				if(setBudget) {
+					throw new IllegalArgumentException("Iteration budget can't be set twice.");
+				}
+				if(sides[1].equals("adaptive")) {
+					adaptive = true;
+				} else if(sides[1].equals("fixed")) {
+					adaptive = false;
+				} else {
+					throw new IllegalArgumentException("Unknown iteration budget, expected adaptive or fixed.");
+				}
+				setBudget = true;
+			}
+			else if (sides[0].equals("--precision") || sides[0].equals("-f")) {
+				if(setPrecision) {
+					throw new IllegalArgumentException("Precision can't be set twice.");
+				}
+				if(sides[1].equals("auto")) {
+					singlePrecision = true;
+				} else if(sides[1].equals("double")) {
+					singlePrecision = false;
+				} else {
+					throw new IllegalArgumentException("Unknown precision, expected auto or double.");
+				}
+				setPrecision = true;
+			}
+			else if (sides[0].equals("--symmetry") || sides[0].equals("-y")) {
+				if(setSymmetry) {
+					throw new IllegalArgumentException("Symmetry can't be set twice.");
+				}
+				if(sides[1].equals("on")) {
+					symmetric = true;
+				} else if(sides[1].equals("off")) {
+					symmetric = false;
+				} else {
+					throw new IllegalArgumentException("Unknown symmetry, expected on or off.");
+				}
+				setSymmetry = true;
+			}
+			else if (sides[0].equals("--incremental") || sides[0].equals("-i")) {
+				if(setIncremental) {
+					throw new IllegalArgumentException("Incremental rendering can't be set twice.");
+				}
+				if(sides[1].equals("on")) {
+					incremental = true;
+				} else if(sides[1].equals("off")) {
+					incremental = false;
+				} else {
+					throw new IllegalArgumentException("Unknown incremental rendering, expected on or off.");
+				}
+				setIncremental = true;
+			}
+			else if (sides[0].equals("--stats") || sides[0].equals("-t")) {
+				if(setStats) {
+					throw new IllegalArgumentException("Statistics can't be set twice.");
+				}
+				if(sides[1].equals("on")) {
+					stats = true;
+				} else if(sides[1].equals("off")) {
+					stats = false;
+				} else {
+					throw new IllegalArgumentException("Unknown statistics, expected on or off.");
+				}
+				setStats = true;
+			}
+			else {
+				throw new IllegalArgumentException("Invalid syntax.");
+			}
+		}
+	}
+	
+	/**
+	 * Čita korijene kompleksnog polinoma sa System.in.
+	 * Očekuje barem 2 korijena.
+	 * 
+	 * @return Lista korijena
+	 */
+	public static Complex[] readRootsAsArray() {
+		
+		Scanner sc = new Scanner(System.in);
+        
+        List<Complex> roots = new ArrayList<>();
+        
+        
+        int i = 1;
+        while (true) {
+            System.out.print("Root " + i + "> ");
+            String line = sc.nextLine();
+            if (line.equals("done")) {
+                if (roots.size() < 2) {
+                    System.out.println("Please enter at least two roots.");
+                    continue;
+                }
+                sc.close();
+                break;
+            }
+            try {
+                roots.add(ImaginarniParser.parse(line));
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid input.");
+                continue;
+            }
+            i++;
+        }
+        
+        Complex[] rootsArray = new Complex[roots.size()];
+    	int counter = 0;
+    	
+    	for(Complex root : roots) {
+    		rootsArray[counter] = root;
+    		counter++;
+    	}
+        
+        return rootsArray;
+	}
+
+    
+    /**
+     * Računa jednu pločicu slike te je sprema u data[] listu.
+     * 
+     * @author Marko Brlek
+     *
+     */
+    public static class PosaoPlocice implements Runnable {
+		double reMin;
+		double reMax;
+		double imMin;
+		double imMax;
+		int width;
+		int height;
+		int xMin;
+		int xMax;
+		int yMin;
+		int yMax;
+		int step; //0 znači svi pikseli
+		int m;
+		short[] data;
+		AtomicBoolean cancel;
+		
+		public PosaoPlocice(double reMin, double reMax, double imMin,
+				double imMax, int width, int height, int xMin, int xMax, int yMin, int yMax, 
+				int step, int m, short[] data, AtomicBoolean cancel) {
+			super();
+			this.reMin = reMin;
+			this.reMax = reMax;
+			this.imMin = imMin;
+			this.imMax = imMax;
+			this.width = width;
+			this.height = height;
+			this.xMin = xMin;
+			this.xMax = xMax;
+			this.yMin = yMin;
+			this.yMax = yMax;
+			this.step = step;
+			this.m = m;
+			this.data = data;
+			this.cancel = cancel;
+		}
+		
+		/**
+		 * Računa za svaki piksel pločice konvergira li kojoj nultočki.
+		 */
+		@Override
+		public void run() {
+			kernel.computeTile(reMin, reMax, imMin, imMax, width, height, xMin, xMax, yMin, yMax, step, m, data, cancel);
+		}
+	}
+    
+    
+    /**
+     * Klasa dijeli prikaz na pločice i svaku računa kao zaseban posao unutar
+     * {@link TileScope}a okvira.
+     * 
+     * Sprema podatke u listu data[] koju predaje FractalVieweru.
+     * 
+     * @author Marko Brlek
+     *
+     */
+    public static class Producer implements IFractalProducer, FrameRenderer{
+    	
+    	private ExecutorService pool;
+    	private TileCache cache;
+    	private RequestScheduler scheduler;
+    	private IterationBudget budget;
+    	private IncrementalRenderer history = new IncrementalRenderer();
+    	private FramePool buffers = new FramePool();
+    	private long cancelLatency;
+    	
+
+		/**
+		 * Dohvaća podatke. Zastarjeli zahtjevi se preskaču, a zahtjev koji se
+		 * računa prekida se čim stigne noviji (vidi {@link RequestScheduler}).
+		 */
+		@Override
+		public void produce(double reMin, double reMax, double imMin, double imMax, int width, int height,
+				long requestNo, IFractalResultObserver observer, AtomicBoolean cancel) {
+			
+			if(!scheduler.begin(requestNo, cancel)) {
+				return;
+			}
+			try {
+				Symmetry.Reduction reduction = NewtonTiles.symmetric
+						? NewtonTiles.symmetry.reduce(reMin, reMax, imMin, imMax, width, height) : null;
+				if(reduction == null) {
+					produceFrame(reMin, reMax, imMin, imMax, width, height, requestNo, observer, cancel);
+				} else {
+					//računamo samo temeljno područje, ostatak okvira je njegova zrcalna slika
+					produceFrame(reduction.getReMin(), reduction.getReMax(), reduction.getImMin(), reduction.getImMax(),
+							reduction.getWidth(), reduction.getHeight(), requestNo, reduction.expanding(observer, buffers), cancel);
+					printStats(reduction);
+				}
+			} finally {
+				scheduler.end();
+			}
+			printStats(scheduler);
+			printStats(NewtonTiles.kernel.takeStops());
+			printStats(NewtonTiles.kernel.takePrecision());
+			printStats(buffers);
+		}
+		
+		/**
+		 * Računa jedan okvir u polje iz bazena i predaje ga promatraču ako nije
+		 * prekinut. Polje prekinutog okvira vraća se u bazen. Ako neki posao baci
+		 * iznimku, polje se također vraća u bazen, a iznimka se baca dalje umjesto
+		 * da se nepotpun okvir preda.
+		 */
+		private void produceFrame(double reMin, double reMax, double imMin, double imMax, int width, int height,
+				long requestNo, IFractalResultObserver observer, AtomicBoolean cancel) {
+			
+			System.out.println("Task started with " + NewtonTiles.processors + " threads and " + 
+					NewtonTiles.tileSize + "x" + NewtonTiles.tileSize + " tiles.");
+			
+			short[] data = buffers.acquire(width * height);
+			boolean finished = false;
+			try {
+				finished = produceFrame(reMin, reMax, imMin, imMax, width, height, requestNo, observer, data, cancel);
+			} finally {
+				if(!finished) {
+					buffers.release(data);
+				}
+			}
+			if(finished) {
+				buffers.deliver(observer, data, (short)(crp.getRoots().length+1), requestNo);
+			}
+		}
+		
+		/**
+		 * Računa okvir u polje data. Međurezultate predaje promatraču, a konačni
+		 * rezultat predaje pozivatelj.
+		 * 
+		 * @return true ako okvir nije prekinut
+		 */
+		private boolean produceFrame(double reMin, double reMax, double imMin, double imMax, int width, int height,
+				long requestNo, IFractalResultObserver observer, short[] data, AtomicBoolean cancel) {
+			
+			int m = NewtonKernel.MAX_ITERATIONS;
+			if(NewtonTiles.adaptive) {
+				m = budget.choose(kernel, reMin, reMax, imMin, imMax, width, height);
+			}
+			cancelLatency = -1;
+			
+			if(cache != null) {
+				cache.render(this, kernel, reMin, reMax, imMin, imMax, width, height, m, data, cancel);
+				printStats(cache);
+			} else if(NewtonTiles.incremental && history.render(this, reMin, reMax, imMin, imMax, width, height, m, data, cancel)) {
+				//dio piksela prepisan je iz prethodnog okvira
+				printStats(history);
+			} else if(NewtonTiles.progressive > 1) {
+				//međurezultate predaje sam, a konačni predajemo samo ako nije prekinut
+				if(!ProgressiveRenderer.render(this, NewtonTiles.progressive, reMin, reMax, imMin, imMax, width, height, m, data,
+						(short)(crp.getRoots().length+1), requestNo, observer, cancel)) {
+					printCancelled();
+					return false;
+				}
+			} else {
+				render(reMin, reMax, imMin, imMax, width, height, m, data, cancel);
+			}
+			
+			if(NewtonTiles.adaptive && !cancel.get()) {
+				budget.refine(kernel, reMin, reMax, imMin, imMax, width, height, m, data, cancel);
+				printStats(budget);
+			}
+			
+			if(cancel.get()) {
+				printCancelled();
+				return false;
+			}
+			if(NewtonTiles.incremental) {
+				history.remember(reMin, reMax, imMin, imMax, width, height, m, data);
+			}
+			return true;
+		}
+		
+		/**
+		 * Ispisuje koliko je nakon prekida trebalo da se zaustave sve pločice.
+		 */
+		private void printCancelled() {
+			if(cancelLatency >= 0) {
+				printStats(String.format("Frame cancelled, all tiles stopped in %.3f ms.", cancelLatency / 1e6));
+			} else {
+				printStats("Frame cancelled.");
+			}
+		}
+		
+		/**
+		 * Ispisuje redak statistike okvira ako je uključen parametar "--stats".
+		 */
+		private static void printStats(Object line) {
+			if(NewtonTiles.stats) {
+				System.out.println(line);
+			}
+		}
+		
+		@Override
+		public void render(double reMin, double reMax, double imMin, double imMax, int width, int height,
+				int m, short[] data, AtomicBoolean cancel) {
+			render(reMin, reMax, imMin, imMax, width, height, 0, m, data, cancel);
+		}
+		
+		@Override
+		public void renderLattice(double reMin, double reMax, double imMin, double imMax, int width, int height,
+				int step, int m, short[] data, AtomicBoolean cancel) {
+			render(reMin, reMax, imMin, imMax, width, height, step, m, data, cancel);
+		}
+		
+		/**
+		 * Pokreće po jedan posao za svaku pločicu i čeka da svi završe ili da
+		 * okvir bude prekinut.
+		 */
+		private void render(double reMin, double reMax, double imMin, double imMax, int width, int height,
+				int step, int m, short[] data, AtomicBoolean cancel) {
+			
+			int tileSize = NewtonTiles.tileSize;
+			TileScope scope = new TileScope(pool, cancel);
+			
+			for(int yMin = 0; yMin < height; yMin += tileSize) {
+				for(int xMin = 0; xMin < width; xMin += tileSize) {
+					int xMax = Math.min(xMin + tileSize, width) - 1;
+					int yMax = Math.min(yMin + tileSize, height) - 1;
+					scope.fork(new PosaoPlocice(reMin, reMax, imMin, imMax, width, height, xMin, xMax, yMin, yMax, step, m, data, cancel));
+				}
+			}
+			
+			if(!scope.join()) {
+				//prekid novijim zahtjevom bilježi raspoređivač
+				scope.cancelledAt(scheduler.getCancelTime());
+				cancelLatency = Math.max(cancelLatency, scope.getCancelLatency());
+			}
+		}
+
+		/**
+		 * Prilagodljivi broj iteracija računa na bazenu ovog proizvođača.
+		 */
+		@Override
+		public IterationBudget createBudget() {
+			return new IterationBudget(pool, NewtonTiles.processors);
+		}
+
+		@Override
+		public void close() {
+			this.pool.shutdownNow();
+		}
+
+		@Override
+		public void setup() {
+			this.pool = Executors.newFixedThreadPool(NewtonTiles.processors);
+			this.budget = createBudget();
+			this.scheduler = new RequestScheduler(NewtonTiles.coalesce);
+			if(NewtonTiles.tileCache > 0) {
+				this.cache = new TileCache(NewtonTiles.tileCache << 20);
+			}
+		}
+    	
+    }
+}
@@ -0,0 +1,287 @@
+package hr.fer.zemris.java.fractals;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Crtanje slika koje ne stanu na heap, npr. 100000x100000 piksela za ispis.
+ *
+ * Slika se dijeli na pločice od najviše {@link #TILE}x{@link #TILE} piksela
+ * (rubne pločice mogu imati jedan redak ili stupac više, jer pločica mora imati
+ * barem dva piksela u svakom smjeru). Pločice se crtaju redom, redak po redak
+ * pločica: svaka se računa kao zaseban prikaz pomoću {@link FrameRenderer}a,
+ * koji je paralelno dijeli na radnike. Gotove pločice preko reda od najviše
+ * {@link #QUEUE} pločica preuzima dretva za zapisivanje i zapisuje ih u
+ * {@link MappedRenderTarget}, pa radnici ne čekaju disk. Na heapu su zato samo
+ * polja nekoliko pločica, bez obzira na veličinu slike.
+ *
+ * Uz {@link RenderCheckpoint} dretva za zapisivanje svakih
+ * {@link #CHECKPOINT_SECONDS} sekundi i na kraju sprema zapisane pločice na
+ * disk i upisuje ih u manifest, a pločice koje su u manifestu već upisane
+ * preskaču se.
+ *
+ * @author Marko Brlek
+ *
+ */
+public class OutOfCoreRenderer {
+
+	/**
+	 * Najveća širina i visina pločice u pikselima.
+	 */
+	public static final int TILE = 1024;
+
+	/**
+	 * Najveći broj izračunatih pločica koje čekaju na zapisivanje.
+	 */
+	public static final int QUEUE = 2;
+
+	/**
+	 * Razmak između dvije kontrolne točke u sekundama.
+	 */
+	public static final int CHECKPOINT_SECONDS = 30;
+
+	/**
+	 * Računa jednu pločicu slike.
+	 *
+	 * @author Marko Brlek
+	 *
+	 */
+	public interface TileRenderer {
+
+		/**
+		 * Računa pravokutnik slike koji počinje pikselom (xMin, yMin).
+		 *
+		 * @param xMin       prvi stupac pločice
+		 * @param yMin       prvi redak pločice
+		 * @param tileWidth  širina pločice
+		 * @param tileHeight visina pločice
+		 * @param data       polje veličine tileWidth*tileHeight za rezultate
+		 * @param cancel     zastavica za prekid računanja
+		 */
+		void render(int xMin, int yMin, int tileWidth, int tileHeight, short[] data, AtomicBoolean cancel);
+	}
+
+	/**
+	 * Crta cijelu sliku u target.
+	 *
+	 * @param renderer   proizvođač koji računa pločice
+	 * @param kernel     jezgra, za prilagodljivi broj iteracija
+	 * @param adaptive   bira li se broj iteracija za svaku pločicu pomoću
+	 *                   {@link IterationBudget}a
+	 * @param reMin      najmanji realni dio prikaza
+	 * @param reMax      najveći realni dio prikaza
+	 * @param imMin      najmanji imaginarni dio prikaza
+	 * @param imMax      najveći imaginarni dio prikaza
+	 * @param target     odredište veličine cijele slike
+	 * @param checkpoint kontrolna točka ili null
+	 * @param cancel     zastavica za prekid računanja
+	 * @throws IOException ako zapisivanje ne uspije
+	 */
+	public static void render(FrameRenderer renderer, NewtonKernel kernel, boolean adaptive, double reMin,
+			double reMax, double imMin, double imMax, MappedRenderTarget target, RenderCheckpoint checkpoint,
+			AtomicBoolean cancel) throws IOException {
+
+		int width = target.getWidth();
+		int height = target.getHeight();
+		IterationBudget budget = renderer.createBudget();
+
+		render((xMin, yMin, tileWidth, tileHeight, data, tileCancel) -> {
+			int xMax = xMin + tileWidth - 1;
+			int yMax = yMin + tileHeight - 1;
+			// prikaz pločice čiji su rubni pikseli pikseli slike
+			double tileReMin = xMin / (width - 1.0) * (reMax - reMin) + reMin;
+			double tileReMax = xMax / (width - 1.0) * (reMax - reMin) + reMin;
+			double tileImMax = (height - 1.0 - yMin) / (height - 1) * (imMax - imMin) + imMin;
+			double tileImMin = (height - 1.0 - yMax) / (height - 1) * (imMax - imMin) + imMin;
+
+			int m = NewtonKernel.MAX_ITERATIONS;
+			if (adaptive) {
+				m = budget.choose(kernel, tileReMin, tileReMax, tileImMin, tileImMax, tileWidth, tileHeight);
+			}
+			renderer.render(tileReMin, tileReMax, tileImMin, tileImMax, tileWidth, tileHeight, m, data, tileCancel);
+			if (adaptive && !tileCancel.get()) {
+				budget.refine(kernel, tileReMin, tileReMax, tileImMin, tileImMax, tileWidth, tileHeight, m, data,
+						tileCancel);
+			}
+		}, target, checkpoint, cancel);
+	}
+
+	/**
+	 * Crta cijelu sliku u target, pločicu po pločicu pomoću renderer-a.
+	 *
+	 * @param renderer   računa pločice
+	 * @param target     odredište veličine cijele slike
+	 * @param checkpoint kontrolna točka ili null
+	 * @param cancel     zastavica za prekid računanja
+	 * @throws IOException ako zapisivanje ne uspije
+	 */
+	public static void render(TileRenderer renderer, MappedRenderTarget target, RenderCheckpoint checkpoint,
+			AtomicBoolean cancel) throws IOException {
+
+		int width = target.getWidth();
+		int height = target.getHeight();
+		if (width < 2 || height < 2) {
+			throw new IllegalArgumentException("Image must be at least 2x2 pixels.");
+		}
+		int tileRows = Math.min(TILE, target.getBandRows() - 1);
+		if (tileRows < 2) {
+			throw new IllegalArgumentException("Image row is too long to be mapped.");
+		}
+		int bands = (height - 2) / tileRows + 1;
+		int columns = (width - 2) / TILE + 1;
+		if (checkpoint != null && checkpoint.getDone() > 0) {
+			System.out.println("Resuming, " + checkpoint.getDone() + " of " + bands * columns + " tiles already done.");
+		}
+
+		FramePool buffers = new FramePool();
+		TileWriter writer = new TileWriter(target, checkpoint, buffers, cancel);
+		writer.start();
+		try {
+			int tile = 0;
+			for (int yMin = 0, band = 0; yMin < height && !cancel.get(); band++) {
+				int yMax = last(yMin, tileRows, height);
+				for (int xMin = 0; xMin < width && !cancel.get(); tile++) {
+					int xMax = last(xMin, TILE, width);
+					if (checkpoint == null || !checkpoint.isDone(tile)) {
+						int tileWidth = xMax - xMin + 1;
+						int tileHeight = yMax - yMin + 1;
+						short[] data = buffers.acquire(tileWidth * tileHeight);
+						renderer.render(xMin, yMin, tileWidth, tileHeight, data, cancel);
+						if (cancel.get()) break;
+						writer.put(new Tile(tile, xMin, yMin, tileWidth, tileHeight, data));
+					}
+					xMin = xMax + 1;
+				}
+				System.out.printf("Tile row %d/%d rendered.%n", band + 1, bands);
+				yMin = yMax + 1;
+			}
+		} finally {
+			writer.put(Tile.END);
+			writer.finish();
+		}
+	}
+
+	/**
+	 * Vraća zadnji indeks pločice koja počinje indeksom first. Ako bi iza nje
+	 * ostao samo jedan piksel, pločica ga uzima.
+	 */
+	private static int last(int first, int tile, int size) {
+		int last = Math.min(first + tile, size) - 1;
+		return size - 1 - last == 1 ? size - 1 : last;
+	}
+
+	/**
+	 * Izračunata pločica koja čeka na zapisivanje.
+	 */
+	private static final class Tile {
+		/** oznaka kraja reda */
+		static final Tile END = new Tile(-1, 0, 0, 0, 0, null);
+
+		final int index;
+		final int xMin;
+		final int yMin;
+		final int width;
+		final int height;
+		final short[] data;
+
+		Tile(int index, int xMin, int yMin, int width, int height, short[] data) {
+			this.index = index;
+			this.xMin = xMin;
+			this.yMin = yMin;
+			this.width = width;
+			this.height = height;
+			this.data = data;
+		}
+	}
+
+	/**
+	 * Dretva koja zapisuje pločice iz reda i sprema kontrolne točke. Ako
+	 * zapisivanje ne uspije, bilo iznimkom ili greškom, pamti prvi uzrok,
+	 * postavlja zastavicu cancel, a ostatak reda samo prazni do oznake kraja, pa
+	 * glavna dretva nikad ne ostane čekati na punom redu.
+	 */
+	private static final class TileWriter extends Thread {
+		private final BlockingQueue<Tile> queue = new ArrayBlockingQueue<>(QUEUE);
+		private final MappedRenderTarget target;
+		private final RenderCheckpoint checkpoint;
+		private final FramePool buffers;
+		private final AtomicBoolean cancel;
+		private Throwable failure;
+
+		TileWriter(MappedRenderTarget target, RenderCheckpoint checkpoint, FramePool buffers, AtomicBoolean cancel) {
+			super("tile-writer");
+			this.target = target;
+			this.checkpoint = checkpoint;
+			this.buffers = buffers;
+			this.cancel = cancel;
+		}
+
+		@Override
+		public void run() {
+			BitSet written = new BitSet();
+			long next = System.nanoTime() + CHECKPOINT_SECONDS * 1_000_000_000L;
+			while (true) {
+				Tile tile;
+				try {
+					tile = queue.take();
+				} catch (InterruptedException e) {
+					continue;
+				}
+				try {
+					if (tile != Tile.END && failure == null) {
+						target.write(tile.xMin, tile.yMin, tile.width, tile.height, tile.data);
+						written.set(tile.index);
+					}
+					if (checkpoint != null && !written.isEmpty() && failure == null
+							&& (tile == Tile.END || System.nanoTime() - next >= 0)) {
+						target.force();
+						checkpoint.commit(written);
+						written.clear();
+						next = System.nanoTime() + CHECKPOINT_SECONDS * 1_000_000_000L;
+					}
+				} catch (Throwable e) {
+					if (failure == null) failure = e;
+					cancel.set(true);
+				}
+				if (tile == Tile.END) return;
+				buffers.release(tile.data);
+			}
+		}
+
+		/**
+		 * Stavlja pločicu u red, a ako je red pun čeka.
+		 */
+		void put(Tile tile) {
+			while (true) {
+				try {
+					queue.put(tile);
+					return;
+				} catch (InterruptedException e) {
+				}
+			}
+		}
+
+		/**
+		 * Čeka da se zapišu sve pločice iz reda i baca iznimku ili grešku zbog
+		 * koje zapisivanje nije uspjelo.
+		 *
+		 * @throws IOException ako zapisivanje nije uspjelo zbog ulazno-izlazne
+		 *                     greške
+		 */
+		void finish() throws IOException {
+			while (true) {
+				try {
+					join();
+					break;
+				} catch (InterruptedException e) {
+				}
+			}
+			if (failure instanceof IOException) throw (IOException) failure;
+			if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+			if (failure instanceof Error) throw (Error) failure;
+		}
+	}
+}
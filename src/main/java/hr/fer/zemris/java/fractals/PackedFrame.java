@@ -0,0 +1,124 @@
+package hr.fer.zemris.java.fractals;
+
+/**
+ * Sažeti zapis rezultata okvira ili pločice za dulje čuvanje.
+ *
+ * Vrijednosti piksela su indeksi nultočaka uvećani za 1 te oznake
+ * {@link NewtonKernel#UNKNOWN} i {@link NewtonKernel#CAPPED}, pa se uz malo
+ * nultočaka zapisuju s manje bitova: po 4 bita ako su sve vrijednosti između
+ * {@link NewtonKernel#CAPPED} i 13 (do 13 nultočaka), po bajt ako su do 253
+ * (do 253 nultočke), a inače kao short. Širina zapisa bira se prema najvećoj
+ * vrijednosti u polju.
+ *
+ * Jezgre i proizvođači i dalje računaju u short[]: promatrač FractalViewera
+ * prima short[], pa bi sažeti okvir trebalo prije svake predaje proširiti, a
+ * svaki se piksel ionako zapisuje samo jednom, nakon mnogo iteracija.
+ *
+ * @author Marko Brlek
+ *
+ */
+public final class PackedFrame {
+
+	/**
+	 * Pomak koji najmanju vrijednost ({@link NewtonKernel#CAPPED}) zapisuje kao 0.
+	 */
+	private static final int BIAS = -NewtonKernel.CAPPED;
+
+	private final int length;
+	private final int bits;
+	private final byte[] bytes;
+	private final short[] shorts;
+
+	private PackedFrame(int length, int bits, byte[] bytes, short[] shorts) {
+		this.length = length;
+		this.bits = bits;
+		this.bytes = bytes;
+		this.shorts = shorts;
+	}
+
+	/**
+	 * Sažima vrijednosti piksela.
+	 *
+	 * @param data vrijednosti piksela, polje se ne mijenja i ne pamti
+	 * @return sažeti zapis
+	 */
+	public static PackedFrame pack(short[] data) {
+		int min = 0;
+		int max = 0;
+		for (short value : data) {
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+
+		if (min < -BIAS || max + BIAS > 0xFF) {
+			return new PackedFrame(data.length, 16, null, data.clone());
+		}
+		if (max + BIAS > 0xF) {
+			byte[] bytes = new byte[data.length];
+			for (int i = 0; i < data.length; i++) {
+				bytes[i] = (byte) (data[i] + BIAS);
+			}
+			return new PackedFrame(data.length, 8, bytes, null);
+		}
+		byte[] bytes = new byte[(data.length + 1) / 2];
+		for (int i = 0; i < data.length; i++) {
+			bytes[i >> 1] |= (data[i] + BIAS) << ((i & 1) << 2);
+		}
+		return new PackedFrame(data.length, 4, bytes, null);
+	}
+
+	/**
+	 * Vraća vrijednost piksela.
+	 *
+	 * @param index indeks piksela
+	 * @return vrijednost piksela
+	 */
+	public short get(int index) {
+		switch (bits) {
+		case 4:
+			return (short) (((bytes[index >> 1] >> ((index & 1) << 2)) & 0xF) - BIAS);
+		case 8:
+			return (short) ((bytes[index] & 0xFF) - BIAS);
+		default:
+			return shorts[index];
+		}
+	}
+
+	/**
+	 * Raspakirava sve piksele u polje.
+	 *
+	 * @param data polje duljine barem {@link #getLength()}
+	 */
+	public void unpack(short[] data) {
+		for (int i = 0; i < length; i++) {
+			data[i] = get(i);
+		}
+	}
+
+	/**
+	 * Broj piksela.
+	 *
+	 * @return broj piksela
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Broj bitova po pikselu: 4, 8 ili 16.
+	 *
+	 * @return broj bitova po pikselu
+	 */
+	public int getBits() {
+		return bits;
+	}
+
+	/**
+	 * Memorija koju zauzimaju pikseli.
+	 *
+	 * @return broj bajtova
+	 */
+	public long getBytes() {
+		return bytes != null ? bytes.length : 2L * shorts.length;
+	}
+}
@@ -0,0 +1,605 @@
+package hr.fer.zemris.java.fractals;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import hr.fer.zemris.math.Complex;
+import hr.fer.zemris.math.ComplexPolynomial;
+import hr.fer.zemris.math.ComplexRootedPolynomial;
+
+/**
+ * Crta Newton-Raphson fraktal za prikaze toliko male da ni središte ni razmak
+ * piksela nisu prikazivi u double preciznosti (npr. polumjer 1e-100).
+ *
+ * Za svaku pločicu računa se jedna referentna orbita u proizvoljnoj preciznosti
+ * ({@link BigDecimal}), a svaki piksel iterira samo svoj pomak δ od nje u
+ * double preciznosti. Za z = Z + δ vrijedi točno
+ *
+ * <pre>
+ * N(Z + δ) - N(Z) = (a·D + b·S) / (b·(b + D))
+ * </pre>
+ *
+ * gdje su a = f(Z), b = f'(Z), c<sub>k</sub> Taylorovi koeficijenti f u Z,
+ * D = Σ k·c<sub>k</sub>·δ<sup>k-1</sup> i S = Σ (k-1)·c<sub>k</sub>·δ<sup>k</sup>
+ * (k &gt;= 2), pa se mali pomak ne gubi oduzimanjem velikih brojeva. Formula
+ * je homogena u a, b i c<sub>k</sub>, pa se koeficijenti koraka u kojem je |Z|
+ * &gt; 1 dijele s 2<sup>e·(n-1)</sup>, gdje je 2<sup>e</sup> &gt;= |Z| i n
+ * stupanj polinoma. Tako ne preliju double ni kad orbita ode daleko od
+ * nultočaka.
+ *
+ * Kao i {@link NewtonKernel}, referentna orbita koristi korak iz koeficijenata
+ * ili iz nultočaka, Z - 1 / Σ 1/(Z - z<sub>i</sub>). U drugom slučaju a, b i
+ * c<sub>k</sub> dobivaju se množenjem faktora (Z - z<sub>i</sub> + δ), pa se
+ * koeficijenti polinoma uopće ne koriste.
+ *
+ * Pomak koji naraste iznad {@link #DOUBLE_SWITCH}·max(1, |Z|) više ne treba
+ * referencu: piksel se od točke Z + δ nastavlja običnom double iteracijom
+ * ({@link NewtonKernel#iterate}), kao i kad referentna orbita završi. Ako se u
+ * formuli izgubi previše znamenaka (vidi {@link #GLITCH_TOLERANCE}), piksel je
+ * pogrešan (glitch) i računa se ponovno od nove reference odabrane među
+ * pogrešnim pikselima; nakon {@link #MAX_REFERENCES} referenci preostali
+ * pikseli računaju se svaki iz vlastite orbite.
+ *
+ * @author Marko Brlek
+ *
+ */
+public class PerturbationRenderer {
+
+	/**
+	 * Stranica pločice u pikselima; svaka pločica ima svoju referencu.
+	 */
+	public static final int TILE = 64;
+
+	/**
+	 * Pomak od reference, relativno prema max(1, |Z|), iznad kojeg piksel prelazi
+	 * na double iteraciju. Do tada je pomak narastao barem za omjer DOUBLE_SWITCH
+	 * / razmak piksela, pa je pogreška zaokruživanja točke Z + δ na razini
+	 * piksela zanemariva.
+	 */
+	public static final double DOUBLE_SWITCH = 1e-8;
+
+	/**
+	 * Piksel je pogrešan ako je |b + D| manji od ovog udjela od |b| ili ako je
+	 * |a·D + b·S| manji od ovog udjela od |a·D| + |b·S|, tj. ako se pri
+	 * zbrajanju izgubi više od tri znamenke.
+	 */
+	public static final double GLITCH_TOLERANCE = 1e-3;
+
+	/**
+	 * Najveći broj referenci po pločici prije računanja piksela iz vlastitih
+	 * orbita.
+	 */
+	public static final int MAX_REFERENCES = 8;
+
+	/**
+	 * Najmanji polumjer prikaza: δ² za pomak veličine razmaka piksela mora
+	 * ostati normalan double broj.
+	 */
+	public static final double MIN_RADIUS = 1e-150;
+
+	/**
+	 * Koliko decimalnih znamenaka referenca ima više od razmaka piksela.
+	 */
+	public static final int GUARD_DIGITS = 20;
+
+	private final NewtonKernel kernel;
+	/** stupanj polinoma */
+	private final int order;
+	/** koeficijenti polinoma ili null za korak iz nultočaka */
+	private final BigDecimal[] factorRe;
+	private final BigDecimal[] factorIm;
+	private final double[] factorReD;
+	private final double[] factorImD;
+	/** nultočke za korak iz nultočaka ili null */
+	private final BigDecimal[] rootRe;
+	private final BigDecimal[] rootIm;
+	private final ExecutorService pool;
+
+	private final LongAdder tiles = new LongAdder();
+	private final LongAdder references = new LongAdder();
+	private final LongAdder glitches = new LongAdder();
+	private final LongAdder exact = new LongAdder();
+
+	/**
+	 * Konstruktor prima polinom u oba oblika, jezgru za double iteraciju i
+	 * izvršitelja na kojem se crtaju pločice. Izvršitelj se koristi za sva
+	 * crtanja i renderer ga ne gasi.
+	 *
+	 * @param crp        polinom zadan nultočkama
+	 * @param polynomial polinom zadan koeficijentima, null za korak iz
+	 *                   nultočaka
+	 * @param kernel     jezgra za isti polinom i isti oblik koraka
+	 * @param pool       izvršitelj za pločice
+	 */
+	public PerturbationRenderer(ComplexRootedPolynomial crp, ComplexPolynomial polynomial, NewtonKernel kernel,
+			ExecutorService pool) {
+		this.kernel = kernel;
+		this.pool = pool;
+		if (polynomial == null) {
+			// konstanta se krati u N(Z + δ) - N(Z), pa je dovoljan umnožak faktora
+			Complex[] roots = crp.getRoots();
+			order = roots.length;
+			rootRe = new BigDecimal[order];
+			rootIm = new BigDecimal[order];
+			for (int i = 0; i < order; i++) {
+				rootRe[i] = new BigDecimal(roots[i].getReal());
+				rootIm[i] = new BigDecimal(roots[i].getImaginary());
+			}
+			factorRe = null;
+			factorIm = null;
+			factorReD = null;
+			factorImD = null;
+			return;
+		}
+		Complex[] factors = polynomial.getFactors();
+		order = factors.length - 1;
+		factorRe = new BigDecimal[factors.length];
+		factorIm = new BigDecimal[factors.length];
+		factorReD = new double[factors.length];
+		factorImD = new double[factors.length];
+		for (int i = 0; i < factors.length; i++) {
+			factorReD[i] = factors[i].getReal();
+			factorImD[i] = factors[i].getImaginary();
+			factorRe[i] = new BigDecimal(factorReD[i]);
+			factorIm[i] = new BigDecimal(factorImD[i]);
+		}
+		rootRe = null;
+		rootIm = null;
+	}
+
+	/**
+	 * Crta prikaz [centerRe - radius, centerRe + radius] x [centerIm - radius,
+	 * centerIm + radius].
+	 *
+	 * @param centerRe realni dio središta prikaza
+	 * @param centerIm imaginarni dio središta prikaza
+	 * @param radius   pola stranice prikaza
+	 * @param width    širina u pikselima
+	 * @param height   visina u pikselima
+	 * @return indeksi nultočaka uvećani za 1, kao kod proizvođača
+	 */
+	public short[] render(BigDecimal centerRe, BigDecimal centerIm, double radius, int width, int height) {
+		short[] data = new short[width * height];
+		render(centerRe, centerIm, radius, width, height, 0, 0, width, height, data);
+		return data;
+	}
+
+	/**
+	 * Crta samo pravokutnik prikaza koji počinje pikselom (regionX, regionY), npr.
+	 * jednu pločicu slike koja ne stane na heap.
+	 *
+	 * @param centerRe     realni dio središta prikaza
+	 * @param centerIm     imaginarni dio središta prikaza
+	 * @param radius       pola stranice prikaza
+	 * @param width        širina cijelog prikaza u pikselima
+	 * @param height       visina cijelog prikaza u pikselima
+	 * @param regionX      prvi stupac pravokutnika
+	 * @param regionY      prvi redak pravokutnika
+	 * @param regionWidth  širina pravokutnika
+	 * @param regionHeight visina pravokutnika
+	 * @param data         polje veličine regionWidth*regionHeight za rezultate
+	 */
+	public void render(BigDecimal centerRe, BigDecimal centerIm, double radius, int width, int height, int regionX,
+			int regionY, int regionWidth, int regionHeight, short[] data) {
+		double spacingRe = 2 * radius / (width - 1);
+		double spacingIm = 2 * radius / (height - 1);
+		int digits = GUARD_DIGITS + Math.max(0, (int) Math.ceil(-Math.log10(Math.min(spacingRe, spacingIm))));
+		MathContext mc = new MathContext(digits);
+		Region region = new Region(width, height, regionX, regionY, regionWidth);
+
+		TileScope scope = new TileScope(pool, new AtomicBoolean(false));
+		for (int y0 = regionY; y0 < regionY + regionHeight; y0 += TILE) {
+			for (int x0 = regionX; x0 < regionX + regionWidth; x0 += TILE) {
+				int xMin = x0;
+				int yMin = y0;
+				scope.fork(() -> renderTile(centerRe, centerIm, spacingRe, spacingIm, mc, region, xMin,
+						Math.min(xMin + TILE, regionX + regionWidth) - 1, yMin,
+						Math.min(yMin + TILE, regionY + regionHeight) - 1, data));
+			}
+		}
+		scope.join();
+	}
+
+	/**
+	 * Crta jednu pločicu: piksele računa od reference u središtu pločice, a
+	 * pogrešne ponovno od novih referenci. Koordinate pločice su koordinate
+	 * cijelog prikaza, a p u data[] je indeks piksela unutar regije.
+	 */
+	private void renderTile(BigDecimal centerRe, BigDecimal centerIm, double spacingRe, double spacingIm,
+			MathContext mc, Region region, int xMin, int xMax, int yMin, int yMax, short[] data) {
+		tiles.increment();
+		int width = region.width;
+		int height = region.height;
+		int tileWidth = xMax - xMin + 1;
+		int[] pending = new int[tileWidth * (yMax - yMin + 1)];
+		int size = 0;
+		for (int y = yMin; y <= yMax; y++) {
+			for (int x = xMin; x <= xMax; x++) {
+				pending[size++] = region.index(x, y);
+			}
+		}
+
+		int refX = (xMin + xMax) / 2;
+		int refY = (yMin + yMax) / 2;
+		for (int r = 0; size > 0 && r < MAX_REFERENCES; r++) {
+			references.increment();
+			ReferenceOrbit orbit = new ReferenceOrbit(centerRe.add(offset(refX, width, spacingRe), mc),
+					centerIm.add(offset(height - 1 - refY, height, spacingIm), mc), mc);
+			int next = 0;
+			long sumX = 0;
+			long sumY = 0;
+			for (int i = 0; i < size; i++) {
+				int p = pending[i];
+				int y = region.y(p);
+				int x = region.x(p);
+				short value = perturb(orbit, (x - refX) * spacingRe, (refY - y) * spacingIm);
+				if (value == NewtonKernel.UNKNOWN) {
+					pending[next++] = p;
+					sumX += x;
+					sumY += y;
+				} else {
+					data[p] = value;
+				}
+			}
+			size = next;
+			if (size == 0) break;
+			glitches.add(size);
+
+			// nova referenca je pogrešni piksel najbliži težištu pogrešnih
+			double cx = (double) sumX / size;
+			double cy = (double) sumY / size;
+			double best = Double.POSITIVE_INFINITY;
+			for (int i = 0; i < size; i++) {
+				int y = region.y(pending[i]);
+				int x = region.x(pending[i]);
+				double d = (x - cx) * (x - cx) + (y - cy) * (y - cy);
+				if (d < best) {
+					best = d;
+					refX = x;
+					refY = y;
+				}
+			}
+		}
+
+		// svaki preostali piksel je sam sebi referenca, pa ne može biti pogrešan
+		for (int i = 0; i < size; i++) {
+			int p = pending[i];
+			int y = region.y(p);
+			int x = region.x(p);
+			ReferenceOrbit orbit = new ReferenceOrbit(centerRe.add(offset(x, width, spacingRe), mc),
+					centerIm.add(offset(height - 1 - y, height, spacingIm), mc), mc);
+			data[p] = perturb(orbit, 0, 0);
+			exact.increment();
+		}
+	}
+
+	/**
+	 * Pomak piksela i od središta prikaza, (i - (size-1)/2)·spacing, točno.
+	 */
+	private static BigDecimal offset(int i, int size, double spacing) {
+		return new BigDecimal(spacing).multiply(new BigDecimal(i - (size - 1) / 2.0));
+	}
+
+	/**
+	 * Iterira piksel Z<sub>0</sub> + (dre, dim) kao pomak od referentne orbite.
+	 *
+	 * @return indeks nultočke uvećan za 1 ili {@link NewtonKernel#UNKNOWN} za
+	 *         pogrešan piksel
+	 */
+	private short perturb(ReferenceOrbit orbit, double dre, double dim) {
+		int m = NewtonKernel.MAX_ITERATIONS;
+		double[] c = orbit.coefficients;
+
+		for (int n = 0; n < orbit.length; n++) {
+			double norm = orbit.zRe[n] * orbit.zRe[n] + orbit.zIm[n] * orbit.zIm[n];
+			if (dre * dre + dim * dim > DOUBLE_SWITCH * DOUBLE_SWITCH * Math.max(1, norm)) {
+				return finish(orbit.zRe[n] + dre, orbit.zIm[n] + dim, m - n);
+			}
+
+			// Horner za D/δ i S/δ² po k od order do 2
+			int at = 2 * (order + 1) * n;
+			double hdRe = 0;
+			double hdIm = 0;
+			double hsRe = 0;
+			double hsIm = 0;
+			for (int k = order; k >= 2; k--) {
+				double ckRe = c[at + 2 * k];
+				double ckIm = c[at + 2 * k + 1];
+				double t = hdRe * dre - hdIm * dim + k * ckRe;
+				hdIm = hdRe * dim + hdIm * dre + k * ckIm;
+				hdRe = t;
+				t = hsRe * dre - hsIm * dim + (k - 1) * ckRe;
+				hsIm = hsRe * dim + hsIm * dre + (k - 1) * ckIm;
+				hsRe = t;
+			}
+			double dRe = hdRe * dre - hdIm * dim;
+			double dIm = hdRe * dim + hdIm * dre;
+			double d2Re = dre * dre - dim * dim;
+			double d2Im = 2 * dre * dim;
+			double sRe = hsRe * d2Re - hsIm * d2Im;
+			double sIm = hsRe * d2Im + hsIm * d2Re;
+
+			double aRe = c[at];
+			double aIm = c[at + 1];
+			double bRe = c[at + 2];
+			double bIm = c[at + 3];
+			double adRe = aRe * dRe - aIm * dIm;
+			double adIm = aRe * dIm + aIm * dRe;
+			double bsRe = bRe * sRe - bIm * sIm;
+			double bsIm = bRe * sIm + bIm * sRe;
+			double numRe = adRe + bsRe;
+			double numIm = adIm + bsIm;
+			double bdRe = bRe + dRe;
+			double bdIm = bIm + dIm;
+
+			// norme bez kvadriranja, jer bi kvadrati malih pomaka bili subnormalni
+			double terms = Math.abs(adRe) + Math.abs(adIm) + Math.abs(bsRe) + Math.abs(bsIm);
+			if (Math.abs(bdRe) + Math.abs(bdIm) < GLITCH_TOLERANCE * (Math.abs(bRe) + Math.abs(bIm))
+					|| Math.abs(numRe) + Math.abs(numIm) < GLITCH_TOLERANCE * terms) {
+				return NewtonKernel.UNKNOWN;
+			}
+
+			// δ' = num / (b·(b + D))
+			double denRe = bRe * bdRe - bIm * bdIm;
+			double denIm = bRe * bdIm + bIm * bdRe;
+			double nazivnik = denRe * denRe + denIm * denIm;
+			double nextRe = (numRe * denRe + numIm * denIm) / nazivnik;
+			double nextIm = (numIm * denRe - numRe * denIm) / nazivnik;
+
+			double stepRe = orbit.zRe[n + 1] - orbit.zRe[n] + (nextRe - dre);
+			double stepIm = orbit.zIm[n + 1] - orbit.zIm[n] + (nextIm - dim);
+			double module = Math.sqrt(stepRe * stepRe + stepIm * stepIm);
+			dre = nextRe;
+			dim = nextIm;
+			double zre = orbit.zRe[n + 1] + dre;
+			double zim = orbit.zIm[n + 1] + dim;
+
+			if (module < kernel.trapGate) {
+				int trapped = kernel.trappedRoot(zre, zim);
+				if (trapped >= 0) {
+					return (short) (trapped + 1);
+				}
+			}
+			if (module <= NewtonKernel.CONVERGENCE_TRESHOLD) {
+				return (short) (kernel.indexOfClosestRootFor(zre, zim, NewtonKernel.ROOT_TRESHOLD) + 1);
+			}
+		}
+		return finish(orbit.zRe[orbit.length] + dre, orbit.zIm[orbit.length] + dim, m - orbit.length);
+	}
+
+	/**
+	 * Nastavlja piksel double iteracijom od točke (zre, zim) s preostalih m
+	 * iteracija.
+	 */
+	private short finish(double zre, double zim, int m) {
+		if (m <= 0) return 1;
+		short value = (short) kernel.iterate(zre, zim, m);
+		return value == NewtonKernel.CAPPED ? 1 : value;
+	}
+
+	/**
+	 * Vraća opis broja pločica, referenci i pogrešnih piksela od zadnjeg poziva
+	 * te postavlja brojače na nulu.
+	 *
+	 * @return opis za ispis
+	 */
+	public String takeStatistics() {
+		return "Perturbation: " + tiles.sumThenReset() + " tiles, " + references.sumThenReset()
+				+ " reference orbits, " + glitches.sumThenReset() + " glitched pixels rebased, "
+				+ exact.sumThenReset() + " pixels from own orbit.";
+	}
+
+	/**
+	 * Pravokutnik prikaza koji se crta: preslikava koordinate piksela prikaza u
+	 * indeks u polju rezultata i natrag.
+	 */
+	private static final class Region {
+		private final int width;
+		private final int height;
+		private final int x0;
+		private final int y0;
+		private final int stride;
+
+		Region(int width, int height, int x0, int y0, int stride) {
+			this.width = width;
+			this.height = height;
+			this.x0 = x0;
+			this.y0 = y0;
+			this.stride = stride;
+		}
+
+		int index(int x, int y) {
+			return (y - y0) * stride + x - x0;
+		}
+
+		int x(int index) {
+			return x0 + index % stride;
+		}
+
+		int y(int index) {
+			return y0 + index / stride;
+		}
+	}
+
+	/**
+	 * Referentna orbita: točke Z<sub>n</sub> računate u proizvoljnoj preciznosti
+	 * i zaokružene na double te Taylorovi koeficijenti polinoma u svakoj od njih.
+	 * Orbita završava kad uđe u krug zamke, konvergira, zapne u ciklusu ili
+	 * pobjegne (vidi {@link NewtonKernel#checkStop}), ili nakon
+	 * {@link NewtonKernel#MAX_ITERATIONS} koraka.
+	 */
+	private final class ReferenceOrbit {
+		/** broj koraka; zRe i zIm imaju length + 1 točaka */
+		int length;
+		double[] zRe = new double[16];
+		double[] zIm = new double[16];
+		/** za svaki korak n koeficijenti c0..c(order) kao [re, im, ...] */
+		double[] coefficients = new double[16 * 2 * (order + 1)];
+
+		ReferenceOrbit(BigDecimal re, BigDecimal im, MathContext mc) {
+			double[] brent = new double[4];
+			BigDecimal[] step = new BigDecimal[2];
+			zRe[0] = re.doubleValue();
+			zIm[0] = im.doubleValue();
+			NewtonKernel.startStop(zRe[0], zIm[0], brent, 0);
+
+			while (length < NewtonKernel.MAX_ITERATIONS) {
+				if (length + 2 > zRe.length) {
+					zRe = Arrays.copyOf(zRe, 2 * zRe.length);
+					zIm = Arrays.copyOf(zIm, 2 * zIm.length);
+					coefficients = Arrays.copyOf(coefficients, 2 * coefficients.length);
+				}
+				int at = 2 * (order + 1) * length;
+				boolean defined = rootRe == null ? polynomialStep(re, im, mc, at, step) : rootStep(re, im, mc, at, step);
+				if (!defined) break;
+
+				re = re.subtract(step[0], mc);
+				im = im.subtract(step[1], mc);
+				length++;
+				zRe[length] = re.doubleValue();
+				zIm[length] = im.doubleValue();
+
+				double module = Math.hypot(step[0].doubleValue(), step[1].doubleValue());
+				if (module < kernel.trapGate && kernel.trappedRoot(zRe[length], zIm[length]) >= 0) break;
+				if (module <= NewtonKernel.CONVERGENCE_TRESHOLD) break;
+				if (length % NewtonKernel.STOP_CHECK == 0 && kernel.checkStop(zRe[length], zIm[length],
+						NewtonKernel.MAX_ITERATIONS - length, brent, 0) > 0) {
+					break;
+				}
+			}
+		}
+
+		/**
+		 * Računa korak f(Z) / f'(Z) iz koeficijenata polinoma u punoj preciznosti i
+		 * sprema Taylorove koeficijente u točki Z počevši od indeksa at.
+		 *
+		 * @return false ako je f'(Z) = 0 pa korak nije definiran
+		 */
+		private boolean polynomialStep(BigDecimal re, BigDecimal im, MathContext mc, int at, BigDecimal[] step) {
+			// f(Z) i f'(Z) Hornerovim postupkom u punoj preciznosti
+			BigDecimal fRe = factorRe[order];
+			BigDecimal fIm = factorIm[order];
+			BigDecimal dRe = BigDecimal.ZERO;
+			BigDecimal dIm = BigDecimal.ZERO;
+			for (int k = order - 1; k >= 0; k--) {
+				BigDecimal t = dRe.multiply(re, mc).subtract(dIm.multiply(im, mc)).add(fRe, mc);
+				dIm = dRe.multiply(im, mc).add(dIm.multiply(re, mc)).add(fIm, mc);
+				dRe = t;
+				t = fRe.multiply(re, mc).subtract(fIm.multiply(im, mc)).add(factorRe[k], mc);
+				fIm = fRe.multiply(im, mc).add(fIm.multiply(re, mc)).add(factorIm[k], mc);
+				fRe = t;
+			}
+			BigDecimal nazivnik = dRe.multiply(dRe, mc).add(dIm.multiply(dIm, mc), mc);
+			if (nazivnik.signum() == 0) return false;
+
+			int e = scaleExponent(re.doubleValue(), im.doubleValue());
+			BigDecimal scale = new BigDecimal(BigInteger.ONE.shiftLeft(e * (order - 1)));
+			coefficients[at] = fRe.divide(scale, mc).doubleValue();
+			coefficients[at + 1] = fIm.divide(scale, mc).doubleValue();
+			coefficients[at + 2] = dRe.divide(scale, mc).doubleValue();
+			coefficients[at + 3] = dIm.divide(scale, mc).doubleValue();
+			taylor(re.doubleValue(), im.doubleValue(), at, e);
+
+			step[0] = fRe.multiply(dRe, mc).add(fIm.multiply(dIm, mc)).divide(nazivnik, mc);
+			step[1] = fIm.multiply(dRe, mc).subtract(fRe.multiply(dIm, mc)).divide(nazivnik, mc);
+			return true;
+		}
+
+		/**
+		 * Računa korak 1 / Σ 1/(Z - z<sub>i</sub>) u punoj preciznosti i sprema
+		 * Taylorove koeficijente umnoška faktora (Z - z<sub>i</sub> + δ) počevši od
+		 * indeksa at. Razlike Z - z<sub>i</sub> računaju se u punoj preciznosti pa
+		 * zaokružuju na double, tako da umnožak ima malu relativnu pogrešku i
+		 * blizu nultočaka.
+		 *
+		 * @return false ako je Z nultočka ili je suma nula pa korak nije definiran
+		 */
+		private boolean rootStep(BigDecimal re, BigDecimal im, MathContext mc, int at, BigDecimal[] step) {
+			// faktori (w + δ) / 2^e, na kraju se umnožak množi s 2^e
+			int e = scaleExponent(re.doubleValue(), im.doubleValue());
+			double inv = Math.scalb(1.0, -e);
+			BigDecimal sumRe = BigDecimal.ZERO;
+			BigDecimal sumIm = BigDecimal.ZERO;
+			coefficients[at] = 1;
+			coefficients[at + 1] = 0;
+			for (int i = 0; i < order; i++) {
+				BigDecimal wRe = re.subtract(rootRe[i], mc);
+				BigDecimal wIm = im.subtract(rootIm[i], mc);
+				BigDecimal modul = wRe.multiply(wRe, mc).add(wIm.multiply(wIm, mc), mc);
+				if (modul.signum() == 0) return false;
+				sumRe = sumRe.add(wRe.divide(modul, mc), mc);
+				sumIm = sumIm.subtract(wIm.divide(modul, mc), mc);
+
+				// pomnoži dosadašnji polinom u δ s (w + δ)
+				double wr = Math.scalb(wRe.doubleValue(), -e);
+				double wi = Math.scalb(wIm.doubleValue(), -e);
+				coefficients[at + 2 * (i + 1)] = 0;
+				coefficients[at + 2 * (i + 1) + 1] = 0;
+				for (int k = i + 1; k >= 1; k--) {
+					double cr = coefficients[at + 2 * k];
+					double ci = coefficients[at + 2 * k + 1];
+					double pr = coefficients[at + 2 * (k - 1)];
+					double pi = coefficients[at + 2 * (k - 1) + 1];
+					coefficients[at + 2 * k] = pr * inv + wr * cr - wi * ci;
+					coefficients[at + 2 * k + 1] = pi * inv + wr * ci + wi * cr;
+				}
+				double cr = coefficients[at];
+				double ci = coefficients[at + 1];
+				coefficients[at] = wr * cr - wi * ci;
+				coefficients[at + 1] = wr * ci + wi * cr;
+			}
+			for (int k = 0; k <= 2 * order + 1; k++) {
+				coefficients[at + k] = Math.scalb(coefficients[at + k], e);
+			}
+			BigDecimal nazivnik = sumRe.multiply(sumRe, mc).add(sumIm.multiply(sumIm, mc), mc);
+			if (nazivnik.signum() == 0) return false;
+
+			step[0] = sumRe.divide(nazivnik, mc);
+			step[1] = sumIm.negate().divide(nazivnik, mc);
+			return true;
+		}
+
+		/**
+		 * Vraća e takav da je 2<sup>e</sup> &gt;= |Z|, odnosno 0 za |Z| &lt;= 1.
+		 * Koeficijenti koraka dijele se s 2<sup>e·(order-1)</sup>.
+		 */
+		private int scaleExponent(double zre, double zim) {
+			double modul = Math.hypot(zre, zim);
+			return modul <= 1 ? 0 : Math.getExponent(modul) + 1;
+		}
+
+		/**
+		 * Računa koeficijente c2..c(order) u točki (zre, zim) uzastopnim Hornerovim
+		 * dijeljenjem u double preciznosti; za njih, za razliku od c0 i c1, nije
+		 * potrebna puna preciznost jer množe barem δ². Računa se s točkom Z / 2^e
+		 * i koeficijentima polinoma u toj varijabli podijeljenima s
+		 * 2<sup>e·order</sup>, pa međurezultati ne preliju double.
+		 */
+		private void taylor(double zre, double zim, int at, int e) {
+			double[] re = new double[order + 1];
+			double[] im = new double[order + 1];
+			for (int j = 0; j <= order; j++) {
+				re[j] = Math.scalb(factorReD[j], e * (j - order));
+				im[j] = Math.scalb(factorImD[j], e * (j - order));
+			}
+			zre = Math.scalb(zre, -e);
+			zim = Math.scalb(zim, -e);
+			for (int i = 0; i < order; i++) {
+				for (int j = order - 1; j >= i; j--) {
+					double t = re[j] + zre * re[j + 1] - zim * im[j + 1];
+					im[j] = im[j] + zre * im[j + 1] + zim * re[j + 1];
+					re[j] = t;
+				}
+			}
+			for (int k = 2; k <= order; k++) {
+				coefficients[at + 2 * k] = Math.scalb(re[k], e * (1 - k));
+				coefficients[at + 2 * k + 1] = Math.scalb(im[k], e * (1 - k));
+			}
+		}
+	}
+}
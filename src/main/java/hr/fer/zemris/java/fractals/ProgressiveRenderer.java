@@ -0,0 +1,78 @@
+package hr.fer.zemris.java.fractals;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import hr.fer.zemris.java.fractals.viewer.IFractalResultObserver;
+
+/**
+ * Postupno crtanje od grube prema finoj rezoluciji.
+ * 
+ * Prvi prolaz računa samo svaki step-ti piksel u oba smjera (npr. 1/8
+ * rezolucije), a rezultat se uvećan odmah predaje promatraču. Svaki sljedeći
+ * prolaz prepolovi razmak i računa samo piksele koji još nisu izračunati, pa
+ * svi prolazi zajedno računaju svaki piksel točno jednom. Svi međurezultati
+ * predaju se s istim requestNo, a zadnji je jednak rezultatu jednog prolaza.
+ * 
+ * @author Marko Brlek
+ *
+ */
+public class ProgressiveRenderer {
+
+	/**
+	 * Crta prikaz u više prolaza i nakon svakog predaje rezultat promatraču.
+	 * 
+	 * @param renderer  proizvođač koji računa piksele
+	 * @param firstStep razmak piksela u prvom prolazu, potencija broja 2
+	 * @param reMin     najmanji realni dio prikaza
+	 * @param reMax     najveći realni dio prikaza
+	 * @param imMin     najmanji imaginarni dio prikaza
+	 * @param imMax     najveći imaginarni dio prikaza
+	 * @param width     širina u pikselima
+	 * @param height    visina u pikselima
+	 * @param m         najveći broj iteracija
+	 * @param data      polje veličine width*height za konačni rezultat
+	 * @param colors    broj boja koji se predaje promatraču
+	 * @param requestNo broj zahtjeva
+	 * @param observer  promatrač kojem se predaju međurezultati
+	 * @param cancel    zastavica za prekid računanja
+	 * @return true ako su svi prolazi završeni, false ako je crtanje prekinuto
+	 */
+	public static boolean render(FrameRenderer renderer, int firstStep, double reMin, double reMax, double imMin,
+			double imMax, int width, int height, int m, short[] data, short colors, long requestNo,
+			IFractalResultObserver observer, AtomicBoolean cancel) {
+
+		if (Integer.bitCount(firstStep) != 1) {
+			throw new IllegalArgumentException("First step must be a power of two.");
+		}
+
+		Arrays.fill(data, NewtonKernel.UNKNOWN);
+
+		for (int step = firstStep; step >= 1; step /= 2) {
+			renderer.renderLattice(reMin, reMax, imMin, imMax, width, height, step, m, data, cancel);
+			if (cancel.get()) return false;
+			if (step > 1) {
+				observer.acceptResult(upscale(data, width, height, step), colors, requestNo);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Stvara sliku pune veličine u kojoj svaki piksel ima vrijednost najbližeg
+	 * izračunatog piksela gore-lijevo na mreži razmaka step. Pikseli označeni s
+	 * {@link NewtonKernel#CAPPED} prikazuju se s indeksom 0.
+	 */
+	private static short[] upscale(short[] data, int width, int height, int step) {
+		short[] result = new short[width * height];
+		int offset = 0;
+		for (int y = 0; y < height; y++) {
+			int row = (y - y % step) * width;
+			for (int x = 0; x < width; x++) {
+				short value = data[row + x - x % step];
+				result[offset++] = value == NewtonKernel.CAPPED ? 1 : value;
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,152 @@
+package hr.fer.zemris.java.fractals;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Kontrolna točka crtanja u {@link MappedRenderTarget}: manifest uz izlaznu
+ * datoteku (ime datoteke + ".manifest") u formatu java.util.Properties.
+ *
+ * Manifest bilježi parametre posla (nultočke, prikaz, veličinu, proizvođača i
+ * ostale parametre koji utječu na rezultat) i skup gotovih pločica. Pločica se
+ * u manifest upisuje tek nakon što je njezin dio datoteke spremljen na disk, a
+ * manifest se zamjenjuje atomarno, pa nakon prekida JVM-a svaka pločica
+ * upisana u manifest sigurno postoji u datoteci. Nastavak crtanja provjerava
+ * da su parametri isti i računa samo pločice koje nisu upisane.
+ *
+ * @author Marko Brlek
+ *
+ */
+public class RenderCheckpoint {
+
+	/**
+	 * Ključ pod kojim se u manifestu spremaju gotove pločice.
+	 */
+	private static final String DONE = "done";
+
+	private final Path manifest;
+	private final Map<String, String> parameters;
+	private final BitSet done;
+
+	private RenderCheckpoint(Path manifest, Map<String, String> parameters, BitSet done) {
+		this.manifest = manifest;
+		this.parameters = parameters;
+		this.done = done;
+	}
+
+	/**
+	 * Vraća put do manifesta za izlaznu datoteku.
+	 *
+	 * @param output izlazna datoteka
+	 * @return put do manifesta
+	 */
+	public static Path manifestFor(Path output) {
+		return output.resolveSibling(output.getFileName() + ".manifest");
+	}
+
+	/**
+	 * Započinje novu kontrolnu točku bez gotovih pločica.
+	 *
+	 * @param output     izlazna datoteka
+	 * @param parameters parametri posla
+	 * @return kontrolna točka
+	 * @throws IOException ako se manifest ne može zapisati
+	 */
+	public static RenderCheckpoint create(Path output, Map<String, String> parameters) throws IOException {
+		RenderCheckpoint checkpoint = new RenderCheckpoint(manifestFor(output), parameters, new BitSet());
+		checkpoint.save();
+		return checkpoint;
+	}
+
+	/**
+	 * Učitava postojeći manifest i provjerava da je zapisan za iste parametre.
+	 *
+	 * @param output     izlazna datoteka
+	 * @param parameters parametri posla
+	 * @return kontrolna točka s gotovim pločicama iz manifesta
+	 * @throws IOException ako se manifest ne može pročitati
+	 */
+	public static RenderCheckpoint resume(Path output, Map<String, String> parameters) throws IOException {
+		Path manifest = manifestFor(output);
+		if (!Files.exists(manifest)) {
+			throw new IllegalArgumentException("No checkpoint manifest " + manifest + " to resume from.");
+		}
+		Properties p = new Properties();
+		try (Reader r = Files.newBufferedReader(manifest)) {
+			p.load(r);
+		}
+		for (Map.Entry<String, String> e : parameters.entrySet()) {
+			if (!e.getValue().equals(p.getProperty(e.getKey()))) {
+				throw new IllegalArgumentException("Manifest was written for a different " + e.getKey() + ".");
+			}
+		}
+		if (p.size() != parameters.size() + 1 || p.getProperty(DONE) == null) {
+			throw new IllegalArgumentException("Manifest was written for different parameters.");
+		}
+		BitSet done = BitSet.valueOf(Base64.getDecoder().decode(p.getProperty(DONE)));
+		return new RenderCheckpoint(manifest, parameters, done);
+	}
+
+	/**
+	 * Je li pločica već gotova.
+	 *
+	 * @param tile redni broj pločice
+	 * @return true ako je pločica upisana u manifest
+	 */
+	public synchronized boolean isDone(int tile) {
+		return done.get(tile);
+	}
+
+	/**
+	 * Upisuje pločice kao gotove i atomarno zamjenjuje manifest. Poziva se tek
+	 * nakon što su pikseli pločica spremljeni na disk.
+	 *
+	 * @param tiles redni brojevi gotovih pločica
+	 * @throws IOException ako se manifest ne može zapisati
+	 */
+	public synchronized void commit(BitSet tiles) throws IOException {
+		done.or(tiles);
+		save();
+	}
+
+	/**
+	 * Broj gotovih pločica.
+	 *
+	 * @return broj pločica upisanih u manifest
+	 */
+	public synchronized int getDone() {
+		return done.cardinality();
+	}
+
+	private void save() throws IOException {
+		Properties p = new Properties();
+		p.putAll(parameters);
+		p.setProperty(DONE, Base64.getEncoder().encodeToString(done.toByteArray()));
+		StringWriter text = new StringWriter();
+		p.store(text, "NewtonBatch checkpoint");
+
+		// novi manifest mora biti na disku prije nego što zamijeni stari
+		Path tmp = manifest.resolveSibling(manifest.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer bytes = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.ISO_8859_1));
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+			channel.force(true);
+		}
+		Files.move(tmp, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
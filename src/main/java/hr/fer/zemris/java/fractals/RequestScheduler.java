@@ -0,0 +1,151 @@
+package hr.fer.zemris.java.fractals;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Raspoređivač zahtjeva unutar proizvođača.
+ *
+ * Pri promjeni veličine prozora ili povlačenju FractalViewer šalje mnogo
+ * zahtjeva zaredom, a prikazuje samo rezultat posljednjeg. Raspoređivač pamti
+ * najnoviji requestNo i:
+ * <ul>
+ * <li>prekida okvir koji se trenutno računa čim stigne noviji zahtjev
+ * (postavlja njegovu zastavicu cancel, koju jezgre provjeravaju svakih
+ * {@link NewtonKernel#CANCEL_BATCH} piksela),</li>
+ * <li>od zahtjeva koji čekaju da se trenutni okvir prekine pokreće samo
+ * najnoviji, a ostale odbacuje (spajanje).</li>
+ * </ul>
+ * Uz zadani prozor spajanja zahtjev prije pokretanja još toliko milisekundi
+ * čeka na noviji zahtjev, pa se cijeli niz zahtjeva spaja u jedan okvir.
+ *
+ * Pretpostavlja da svaki zahtjev ima svoju zastavicu cancel, kao što je to u
+ * FractalVieweru.
+ *
+ * @author Marko Brlek
+ *
+ */
+public class RequestScheduler {
+
+	private final long coalesceMillis;
+
+	private long latest = Long.MIN_VALUE;
+	private boolean running;
+	private AtomicBoolean runningCancel;
+	private long runningCancelledAt;
+
+	private long rendered;
+	private long coalesced;
+	private long preempted;
+
+	/**
+	 * Konstruktor prima prozor spajanja.
+	 *
+	 * @param coalesceMillis koliko milisekundi zahtjev čeka na noviji prije
+	 *                       pokretanja, 0 za pokretanje bez čekanja
+	 */
+	public RequestScheduler(long coalesceMillis) {
+		if (coalesceMillis < 0) {
+			throw new IllegalArgumentException("Coalesce window can't be negative.");
+		}
+		this.coalesceMillis = coalesceMillis;
+	}
+
+	/**
+	 * Prijavljuje zahtjev i čeka da smije početi s računanjem. Prekida okvir koji
+	 * se trenutno računa ako je stariji od ovog zahtjeva.
+	 *
+	 * Ako vrati true, pozivatelj mora nakon računanja pozvati {@link #end()}.
+	 *
+	 * @param requestNo redni broj zahtjeva
+	 * @param cancel    zastavica za prekid ovog zahtjeva
+	 * @return true ako zahtjev treba izračunati, false ako je zastario ili
+	 *         prekinut
+	 */
+	public synchronized boolean begin(long requestNo, AtomicBoolean cancel) {
+		if (requestNo < latest) {
+			coalesced++;
+			return false;
+		}
+		latest = requestNo;
+		notifyAll();
+
+		if (running && !runningCancel.getAndSet(true)) {
+			runningCancelledAt = System.nanoTime();
+			preempted++;
+		}
+
+		long deadline = System.currentTimeMillis() + coalesceMillis;
+		while (true) {
+			if (requestNo != latest || cancel.get()) {
+				coalesced++;
+				return false;
+			}
+			long remaining = deadline - System.currentTimeMillis();
+			if (!running && remaining <= 0) {
+				break;
+			}
+			try {
+				if (running) {
+					wait();
+				} else {
+					wait(remaining);
+				}
+			} catch (InterruptedException e) {
+			}
+		}
+
+		running = true;
+		runningCancel = cancel;
+		runningCancelledAt = 0;
+		rendered++;
+		return true;
+	}
+
+	/**
+	 * Završava zahtjev za koji je {@link #begin} vratio true i budi zahtjeve koji
+	 * čekaju.
+	 */
+	public synchronized void end() {
+		running = false;
+		runningCancel = null;
+		notifyAll();
+	}
+
+	/**
+	 * Vraća trenutak u kojem je zahtjev koji se računa prekinut jer je stigao
+	 * noviji.
+	 *
+	 * @return trenutak prema {@link System#nanoTime()}, 0 ako zahtjev nije
+	 *         prekinut novijim
+	 */
+	public synchronized long getCancelTime() {
+		return running ? runningCancelledAt : 0;
+	}
+
+	/**
+	 * Vraća je li u međuvremenu stigao noviji zahtjev.
+	 *
+	 * @param requestNo redni broj zahtjeva
+	 * @return true ako je zahtjev zastario
+	 */
+	public synchronized boolean isStale(long requestNo) {
+		return requestNo < latest;
+	}
+
+	public synchronized long getRendered() {
+		return rendered;
+	}
+
+	public synchronized long getCoalesced() {
+		return coalesced;
+	}
+
+	public synchronized long getPreempted() {
+		return preempted;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "Requests: " + rendered + " rendered, " + coalesced + " coalesced, " + preempted + " preempted.";
+	}
+}
@@ -0,0 +1,115 @@
+package hr.fer.zemris.java.fractals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Vođeno samoraspoređivanje (guided self-scheduling) redaka jednog okvira.
+ *
+ * Radnici uzimaju raspone redaka sa zajedničkog atomarnog pokazivača. Veličina
+ * raspona je preostali broj redaka podijeljen s dvostrukim brojem radnika, ali
+ * barem {@link #MIN_CHUNK}, pa se na početku uzimaju veliki komadi, a pri kraju
+ * pojedinačni retci. Tako skupi retci (rubovi bazena, točke koje ne
+ * konvergiraju) ne ostavljaju ostale radnike bez posla, a nema ni reda
+ * poslova ni zaključavanja.
+ *
+ * Za svakog radnika pamti koliko je vremena u okviru proveo bez posla: od
+ * početka okvira do prvog uzetog raspona i od zadnjeg završenog raspona do
+ * kraja okvira.
+ *
+ * @author Marko Brlek
+ *
+ */
+public class RowScheduler {
+
+	/**
+	 * Najmanji broj redaka koje radnik uzima odjednom.
+	 */
+	public static final int MIN_CHUNK = 1;
+
+	private final AtomicInteger cursor;
+	private final int end;
+	private final int workers;
+
+	private final long start;
+	private final long[] firstClaim;
+	private final long[] lastFinish;
+
+	/**
+	 * Konstruktor prima raspon redaka i broj radnika.
+	 *
+	 * @param yMin    prvi redak
+	 * @param yMax    zadnji redak (uključivo)
+	 * @param workers broj radnika koji uzimaju retke
+	 */
+	public RowScheduler(int yMin, int yMax, int workers) {
+		this.cursor = new AtomicInteger(yMin);
+		this.end = yMax + 1;
+		this.workers = workers;
+		this.start = System.nanoTime();
+		this.firstClaim = new long[workers];
+		this.lastFinish = new long[workers];
+	}
+
+	/**
+	 * Uzima sljedeći raspon redaka.
+	 *
+	 * @param worker redni broj radnika, od 0 do workers-1
+	 * @param range  polje duljine 2 u koje se sprema prvi i zadnji redak
+	 *               (uključivo)
+	 * @return false ako više nema redaka
+	 */
+	public boolean claim(int worker, int[] range) {
+		long now = System.nanoTime();
+		if (firstClaim[worker] == 0) {
+			firstClaim[worker] = now;
+		}
+		lastFinish[worker] = now;
+
+		while (true) {
+			int from = cursor.get();
+			if (from >= end) {
+				return false;
+			}
+			int chunk = Math.max(MIN_CHUNK, (end - from) / (2 * workers));
+			int to = Math.min(end, from + chunk);
+			if (cursor.compareAndSet(from, to)) {
+				range[0] = from;
+				range[1] = to - 1;
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Računa vrijeme bez posla za svakog radnika. Poziva se nakon što su svi
+	 * radnici završili.
+	 *
+	 * @return vrijeme bez posla u nanosekundama za svakog radnika
+	 */
+	public long[] idleNanos() {
+		long finish = System.nanoTime();
+		long[] idle = new long[workers];
+		for (int i = 0; i < workers; i++) {
+			if (firstClaim[i] == 0) {
+				idle[i] = finish - start;
+			} else {
+				idle[i] = (firstClaim[i] - start) + (finish - lastFinish[i]);
+			}
+		}
+		return idle;
+	}
+
+	/**
+	 * Ispisuje vrijeme bez posla svakog radnika u milisekundama.
+	 *
+	 * @param idle vrijeme bez posla, vidi {@link #idleNanos()}
+	 * @return opis za ispis
+	 */
+	public static String describeIdle(long[] idle) {
+		StringBuilder sb = new StringBuilder("Worker idle time (ms):");
+		for (long nanos : idle) {
+			sb.append(String.format(" %.2f", nanos / 1e6));
+		}
+		return sb.toString();
+	}
+}
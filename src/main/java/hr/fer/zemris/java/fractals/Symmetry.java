@@ -0,0 +1,274 @@
+package hr.fer.zemris.java.fractals;
+
+import hr.fer.zemris.java.fractals.viewer.IFractalResultObserver;
+import hr.fer.zemris.math.Complex;
+import hr.fer.zemris.math.ComplexRootedPolynomial;
+
+/**
+ * Simetrije skupa nultočaka koje preslikavaju mrežu piksela u samu sebe:
+ * konjugiranje (zrcaljenje preko realne osi), zrcaljenje preko imaginarne osi i
+ * rotacija za 180° oko ishodišta. Newtonovo preslikavanje ovisi samo o
+ * nultočkama, pa simetrija skupa nultočaka preslikava i bazene, a indeksi
+ * nultočaka se pritom permutiraju.
+ *
+ * Ako se prikaz preklapa sa svojom zrcalnom slikom, {@link #reduce} vraća manji
+ * pravokutnik (temeljno područje) koji treba izračunati, a ostatak okvira
+ * popunjava se preslikavanjem piksela, pa se za centrirani prikaz računa
+ * polovica ili četvrtina piksela.
+ *
+ * @author Marko Brlek
+ *
+ */
+public class Symmetry {
+
+	/**
+	 * Najveća udaljenost slike nultočke od nultočke, relativno prema većem od 1 i
+	 * |z|, da bi se smatrale istom nultočkom.
+	 */
+	public static final double TOLERANCE = 1e-9;
+
+	/**
+	 * Koliko (u pikselima) se zrcalna slika retka ili stupca smije razlikovati od
+	 * retka ili stupca mreže.
+	 */
+	public static final double GRID_TOLERANCE = 1e-6;
+
+	/** permutacije vrijednosti piksela (indeks nultočke + 1), null ako simetrije nema */
+	private final short[] conjugation;
+	private final short[] reflection;
+	private final short[] rotation;
+
+	private Symmetry(short[] conjugation, short[] reflection, short[] rotation) {
+		this.conjugation = conjugation;
+		this.reflection = reflection;
+		this.rotation = rotation;
+	}
+
+	/**
+	 * Traži simetrije skupa nultočaka polinoma.
+	 *
+	 * @param crp polinom zadan nultočkama
+	 * @return pronađene simetrije
+	 */
+	public static Symmetry detect(ComplexRootedPolynomial crp) {
+		Complex[] roots = crp.getRoots();
+		return new Symmetry(permutation(roots, 1, -1), permutation(roots, -1, 1), permutation(roots, -1, -1));
+	}
+
+	/**
+	 * Za preslikavanje (re, im) -&gt; (sre·re, sim·im) vraća permutaciju
+	 * vrijednosti piksela ili null ako preslikavanje ne čuva skup nultočaka.
+	 */
+	private static short[] permutation(Complex[] roots, int sre, int sim) {
+		short[] map = new short[roots.length + 1];
+		boolean[] used = new boolean[roots.length];
+		for (int i = 0; i < roots.length; i++) {
+			double re = sre * roots[i].getReal();
+			double im = sim * roots[i].getImaginary();
+			double tolerance = TOLERANCE * Math.max(1, Math.hypot(re, im));
+			int match = -1;
+			for (int j = 0; j < roots.length; j++) {
+				if (!used[j] && Math.hypot(roots[j].getReal() - re, roots[j].getImaginary() - im) <= tolerance) {
+					match = j;
+					break;
+				}
+			}
+			if (match < 0) return null;
+			used[match] = true;
+			map[i + 1] = (short) (match + 1);
+		}
+		return map;
+	}
+
+	/**
+	 * Odlučuje koji dio prikaza treba izračunati.
+	 *
+	 * @param reMin  najmanji realni dio prikaza
+	 * @param reMax  najveći realni dio prikaza
+	 * @param imMin  najmanji imaginarni dio prikaza
+	 * @param imMax  najveći imaginarni dio prikaza
+	 * @param width  širina u pikselima
+	 * @param height visina u pikselima
+	 * @return temeljno područje prikaza ili null ako se prikaz ne može smanjiti
+	 */
+	public Reduction reduce(double reMin, double reMax, double imMin, double imMax, int width, int height) {
+		// stupac x se zrcali u kx - x, redak y u ky - y
+		long kx = mirror(-2 * reMin / ((reMax - reMin) / (width - 1)), width);
+		long ky = mirror(2 * (height - 1) + 2 * imMin / ((imMax - imMin) / (height - 1)), height);
+
+		boolean columns = reflection != null && kx >= 0;
+		boolean rows = conjugation != null && ky >= 0;
+		boolean rotate = false;
+		if (!columns && !rows && rotation != null && kx == width - 1 && ky >= 0) {
+			// rotacija preslikava cijele retke, pa stupci moraju biti centrirani
+			rows = true;
+			rotate = true;
+		}
+
+		int[] colBand = columns ? band(kx, width) : null;
+		int[] rowBand = rows ? band(ky, height) : null;
+		if (colBand == null && rowBand == null) return null;
+		if (colBand == null) colBand = new int[] { 0, width - 1 };
+		if (rowBand == null) rowBand = new int[] { 0, height - 1 };
+
+		return new Reduction(this, reMin, reMax, imMin, imMax, width, height, colBand, rowBand, (int) kx, (int) ky,
+				rotate);
+	}
+
+	/**
+	 * Vraća zbroj indeksa retka (stupca) i njegove zrcalne slike ako je cijeli
+	 * broj i ako je os zrcaljenja unutar okvira, inače -1.
+	 */
+	private static long mirror(double k, int size) {
+		long rounded = Math.round(k);
+		if (!(Math.abs(k - rounded) < GRID_TOLERANCE) || rounded < 0 || rounded > 2L * (size - 1)) {
+			return -1;
+		}
+		return rounded;
+	}
+
+	/**
+	 * Vraća indekse [prvi, zadnji] koji se računaju: strana osi zrcaljenja čija
+	 * slika pokriva drugu stranu. Vraća null ako je pojas premalen ili cijeli
+	 * okvir.
+	 */
+	private static int[] band(long k, int size) {
+		int[] band = k >= size - 1 ? new int[] { 0, (int) (k / 2) } : new int[] { (int) ((k + 1) / 2), size - 1 };
+		int length = band[1] - band[0] + 1;
+		return length >= 2 && length < size ? band : null;
+	}
+
+	private static short apply(short[] map, short value) {
+		return value > 0 && value < map.length ? map[value] : value;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("Root symmetry:");
+		if (conjugation != null) sb.append(" conjugation");
+		if (reflection != null) sb.append(" reflection");
+		if (rotation != null) sb.append(" rotation");
+		if (conjugation == null && reflection == null && rotation == null) sb.append(" none");
+		return sb.append('.').toString();
+	}
+
+	/**
+	 * Temeljno područje jednog prikaza: pravokutnik okvira koji se računa i
+	 * preslikavanje kojim se iz njega popunjava cijeli okvir.
+	 *
+	 * @author Marko Brlek
+	 *
+	 */
+	public static final class Reduction {
+		private final double reMin;
+		private final double reMax;
+		private final double imMin;
+		private final double imMax;
+		private final int width;
+		private final int height;
+
+		private final int fullWidth;
+		private final int fullHeight;
+		private final int[] colBand;
+		private final int[] rowBand;
+		private final int kx;
+		private final int ky;
+		private final boolean rotate;
+		/** permutacije za zrcaljeni redak, stupac i oboje */
+		private final short[] rowMap;
+		private final short[] colMap;
+		private final short[] bothMap;
+
+		private Reduction(Symmetry symmetry, double reMin, double reMax, double imMin, double imMax, int width,
+				int height, int[] colBand, int[] rowBand, int kx, int ky, boolean rotate) {
+			this.fullWidth = width;
+			this.fullHeight = height;
+			this.width = colBand[1] - colBand[0] + 1;
+			this.height = rowBand[1] - rowBand[0] + 1;
+			this.reMin = colBand[0] / (width - 1.0) * (reMax - reMin) + reMin;
+			this.reMax = colBand[1] / (width - 1.0) * (reMax - reMin) + reMin;
+			this.imMax = (height - 1.0 - rowBand[0]) / (height - 1) * (imMax - imMin) + imMin;
+			this.imMin = (height - 1.0 - rowBand[1]) / (height - 1) * (imMax - imMin) + imMin;
+			this.colBand = colBand;
+			this.rowBand = rowBand;
+			this.kx = kx;
+			this.ky = ky;
+			this.rotate = rotate;
+			this.rowMap = rotate ? symmetry.rotation : symmetry.conjugation;
+			this.colMap = symmetry.reflection;
+			this.bothMap = symmetry.rotation;
+		}
+
+		/**
+		 * Popunjava cijeli okvir iz izračunatog područja. Zrcaljeni redak uzima se
+		 * konjugiranjem (ili rotacijom, ako stupci nisu smanjeni), zrcaljeni stupac
+		 * zrcaljenjem preko imaginarne osi, a piksel zrcaljen u oba smjera
+		 * rotacijom.
+		 *
+		 * @param data vrijednosti piksela područja
+		 * @param full polje veličine cijelog okvira u koje se zapisuje rezultat
+		 * @return polje full
+		 */
+		public short[] expand(short[] data, short[] full) {
+			for (int y = 0; y < fullHeight; y++) {
+				boolean mirrorRow = y < rowBand[0] || y > rowBand[1];
+				int offset = ((mirrorRow ? ky - y : y) - rowBand[0]) * width - colBand[0];
+				for (int x = 0; x < fullWidth; x++) {
+					boolean mirrorCol = x < colBand[0] || x > colBand[1];
+					short value = data[offset + (mirrorCol || (mirrorRow && rotate) ? kx - x : x)];
+					if (mirrorCol) {
+						value = apply(mirrorRow ? bothMap : colMap, value);
+					} else if (mirrorRow) {
+						value = apply(rowMap, value);
+					}
+					full[y * fullWidth + x] = value;
+				}
+			}
+			return full;
+		}
+
+		/**
+		 * Vraća promatrača koji okvire područja popunjava do cijelog okvira i
+		 * predaje ih promatraču target. Polje cijelog okvira uzima se iz bazena
+		 * buffers i predaje pomoću {@link FramePool#deliver}, a polje područja
+		 * koristi samo za vrijeme poziva, pa se nakon njega smije vratiti u bazen.
+		 *
+		 * @param target  promatrač cijelih okvira
+		 * @param buffers bazen polja proizvođača
+		 * @return promatrač okvira područja
+		 */
+		public FramePool.Borrowing expanding(IFractalResultObserver target, FramePool buffers) {
+			return (data, colors, requestNo) -> buffers.deliver(target,
+					expand(data, buffers.acquire(fullWidth * fullHeight)), colors, requestNo);
+		}
+
+		public double getReMin() {
+			return reMin;
+		}
+
+		public double getReMax() {
+			return reMax;
+		}
+
+		public double getImMin() {
+			return imMin;
+		}
+
+		public double getImMax() {
+			return imMax;
+		}
+
+		public int getWidth() {
+			return width;
+		}
+
+		public int getHeight() {
+			return height;
+		}
+
+		@Override
+		public String toString() {
+			return "Symmetry: computed " + width + "x" + height + " of " + fullWidth + "x" + fullHeight + " pixels.";
+		}
+	}
+}
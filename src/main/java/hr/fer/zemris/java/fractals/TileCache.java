@@ -0,0 +1,279 @@
+package hr.fer.zemris.java.fractals;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Memorijska priručna memorija pločica (tiles) za interaktivno pomicanje i
+ * zumiranje.
+ * 
+ * Kompleksna ravnina je za svaku razinu zuma L podijeljena na mrežu točaka
+ * razmaka 2^-L, a mreža na pločice od {@link #TILE_SIZE}x{@link #TILE_SIZE}
+ * točaka. Za svaki prikaz bira se najgrublja razina čiji razmak nije veći od
+ * razmaka piksela ni po realnoj ni po imaginarnoj osi, svaki piksel uzima
+ * vrijednost najbliže točke mreže (najviše pola piksela dalje), a računaju se
+ * samo pločice kojih nema u memoriji.
+ * 
+ * Pločice su ključane polinomom, razinom, koordinatama pločice i razredom broja
+ * iteracija (vidi {@link #budgetClass(int)}), pa prilagodljivi broj iteracija
+ * koji se mijenja od okvira do okvira ne prazni memoriju. Spremaju se kao
+ * {@link PackedFrame}, pa uz malo nultočaka
+ * pločica zauzima 4 ili 8 bitova po točki umjesto 16. Kad zauzeće prijeđe
+ * zadani broj bajtova, izbacuju se najdulje nekorištene pločice (LRU).
+ * 
+ * @author Marko Brlek
+ *
+ */
+public class TileCache {
+
+	/**
+	 * Broj točaka mreže po stranici pločice.
+	 */
+	public static final int TILE_SIZE = 256;
+
+	private static final long TILE_BYTES = 2L * TILE_SIZE * TILE_SIZE;
+
+	/**
+	 * Koordinate mreže izvan ovog raspona više se ne mogu točno prikazati, pa se
+	 * takvi prikazi računaju izravno.
+	 */
+	private static final double MAX_GRID = 1L << 50;
+
+	/**
+	 * Razmak piksela koji je potencija broja 2 (do zaokruživanja) bira razinu s
+	 * upravo tim razmakom.
+	 */
+	private static final double LEVEL_TOLERANCE = 1e-9;
+
+	private final long maxBytes;
+	private final LinkedHashMap<Key, PackedFrame> tiles = new LinkedHashMap<>(16, 0.75f, true);
+	private long bytes;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * Konstruktor prima najveće zauzeće memorije.
+	 * 
+	 * @param maxBytes najveći broj bajtova koje pločice smiju zauzeti
+	 */
+	public TileCache(long maxBytes) {
+		if (maxBytes < TILE_BYTES) {
+			throw new IllegalArgumentException("Tile cache must hold at least one tile.");
+		}
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Slaže prikaz iz pločica; pločice kojih nema u memoriji računa pomoću
+	 * renderer-a.
+	 * 
+	 * @param renderer   proizvođač koji računa pločice
+	 * @param polynomial polinom (jezgra) za koji se računa, dio ključa pločice
+	 * @param reMin      najmanji realni dio prikaza
+	 * @param reMax      najveći realni dio prikaza
+	 * @param imMin      najmanji imaginarni dio prikaza
+	 * @param imMax      najveći imaginarni dio prikaza
+	 * @param width      širina u pikselima
+	 * @param height     visina u pikselima
+	 * @param m          najveći broj iteracija; pločice se računaju s brojem
+	 *                   iteracija njegovog razreda
+	 * @param data       polje veličine width*height za rezultate
+	 * @param cancel     zastavica za prekid računanja
+	 */
+	public void render(FrameRenderer renderer, Object polynomial, double reMin, double reMax, double imMin,
+			double imMax, int width, int height, int m, short[] data, AtomicBoolean cancel) {
+
+		double spacing = Math.min((reMax - reMin) / (width - 1), (imMax - imMin) / (height - 1));
+		int level = (int) Math.ceil(-Math.log(spacing) / Math.log(2) - LEVEL_TOLERANCE);
+		double s = Math.scalb(1.0, -level);
+
+		if (!(spacing > 0) || Math.max(Math.max(Math.abs(reMin), Math.abs(reMax)),
+				Math.max(Math.abs(imMin), Math.abs(imMax))) / s > MAX_GRID) {
+			renderer.render(reMin, reMax, imMin, imMax, width, height, m, data, cancel);
+			return;
+		}
+
+		// najbliža točka mreže za svaki stupac i redak
+		long[] gx = new long[width];
+		for (int x = 0; x < width; x++) {
+			gx[x] = Math.round((x / (width - 1.0) * (reMax - reMin) + reMin) / s);
+		}
+		long[] gy = new long[height];
+		for (int y = 0; y < height; y++) {
+			gy[y] = Math.round(((height - 1.0 - y) / (height - 1) * (imMax - imMin) + imMin) / s);
+		}
+
+		long txMin = Math.floorDiv(gx[0], TILE_SIZE);
+		long txMax = Math.floorDiv(gx[width - 1], TILE_SIZE);
+		long tyMin = Math.floorDiv(gy[height - 1], TILE_SIZE);
+		long tyMax = Math.floorDiv(gy[0], TILE_SIZE);
+
+		int budget = budgetClass(m);
+		PackedFrame[][] grid = new PackedFrame[(int) (tyMax - tyMin + 1)][(int) (txMax - txMin + 1)];
+		short[] scratch = null;
+		for (long ty = tyMin; ty <= tyMax; ty++) {
+			for (long tx = txMin; tx <= txMax; tx++) {
+				PackedFrame tile = get(polynomial, level, tx, ty, budget);
+				if (tile == null) {
+					if (scratch == null) scratch = new short[TILE_SIZE * TILE_SIZE];
+					double tileReMin = (double) (tx * TILE_SIZE) * s;
+					double tileImMin = (double) (ty * TILE_SIZE) * s;
+					renderer.render(tileReMin, tileReMin + (TILE_SIZE - 1) * s, tileImMin,
+							tileImMin + (TILE_SIZE - 1) * s, TILE_SIZE, TILE_SIZE, budget, scratch, cancel);
+					// prekinuta pločica nije potpuna i ne smije se spremiti
+					if (cancel.get()) return;
+					tile = PackedFrame.pack(scratch);
+					put(new Key(polynomial, level, tx, ty, budget), tile);
+				}
+				grid[(int) (ty - tyMin)][(int) (tx - txMin)] = tile;
+			}
+		}
+
+		int offset = 0;
+		for (int y = 0; y < height; y++) {
+			PackedFrame[] tileRow = grid[(int) (Math.floorDiv(gy[y], TILE_SIZE) - tyMin)];
+			int rowInTile = (TILE_SIZE - 1 - Math.floorMod(gy[y], TILE_SIZE)) * TILE_SIZE;
+			for (int x = 0; x < width; x++) {
+				PackedFrame tile = tileRow[(int) (Math.floorDiv(gx[x], TILE_SIZE) - txMin)];
+				data[offset++] = tile.get(rowInTile + Math.floorMod(gx[x], TILE_SIZE));
+			}
+		}
+	}
+
+	/**
+	 * Razred broja iteracija m: najmanji broj iteracija oblika
+	 * {@link NewtonKernel#MAX_ITERATIONS}/4^k koji nije manji od m. Pločica
+	 * razreda računa se s tim brojem iteracija, pa vrijedi za svaki m iz razreda.
+	 * Prilagodljivi broj iteracija (potencija broja 2) tako pada u jedan od
+	 * nekoliko razreda, a stalni {@link NewtonKernel#MAX_ITERATIONS} u svoj.
+	 *
+	 * @param m najveći broj iteracija
+	 * @return broj iteracija s kojim se računaju pločice
+	 */
+	static int budgetClass(int m) {
+		int budget = NewtonKernel.MAX_ITERATIONS;
+		while (budget / 4 >= m && budget / 4 > 0) {
+			budget /= 4;
+		}
+		return budget;
+	}
+
+	/**
+	 * Traži pločicu u razredu budget ili u nekom višem razredu. Pločica
+	 * izračunata s više iteracija razlikuje se samo po tome što su neki pikseli
+	 * koje bi manji broj iteracija označio s {@link NewtonKernel#CAPPED} već
+	 * razriješeni, pa se smije koristiti.
+	 */
+	private synchronized PackedFrame get(Object polynomial, int level, long tx, long ty, int budget) {
+		PackedFrame tile = null;
+		for (int b = budget; tile == null && b <= NewtonKernel.MAX_ITERATIONS; b *= 4) {
+			tile = tiles.get(new Key(polynomial, level, tx, ty, b));
+		}
+		if (tile == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return tile;
+	}
+
+	private synchronized void put(Key key, PackedFrame tile) {
+		PackedFrame old = tiles.put(key, tile);
+		bytes += tile.getBytes() - (old == null ? 0 : old.getBytes());
+		Iterator<Map.Entry<Key, PackedFrame>> it = tiles.entrySet().iterator();
+		while (bytes > maxBytes && it.hasNext()) {
+			bytes -= it.next().getValue().getBytes();
+			it.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * Broj pločica pronađenih u memoriji.
+	 * 
+	 * @return broj pogodaka
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Broj pločica koje je trebalo izračunati.
+	 * 
+	 * @return broj promašaja
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Broj pločica izbačenih zbog ograničenja memorije.
+	 * 
+	 * @return broj izbacivanja
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Udio pločica pronađenih u memoriji.
+	 * 
+	 * @return udio pogodaka između 0 i 1
+	 */
+	public synchronized double getHitRate() {
+		long total = hits + misses;
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * Trenutno zauzeće memorije.
+	 * 
+	 * @return broj bajtova koje zauzimaju pločice
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("Tile cache: %d hits, %d misses, %d evictions, hit rate %.1f%%, %d/%d MB.", hits,
+				misses, evictions, 100 * getHitRate(), bytes >> 20, maxBytes >> 20);
+	}
+
+	/**
+	 * Ključ pločice.
+	 */
+	private static final class Key {
+		private final Object polynomial;
+		private final int level;
+		private final long tx;
+		private final long ty;
+		private final int budget;
+
+		Key(Object polynomial, int level, long tx, long ty, int budget) {
+			this.polynomial = polynomial;
+			this.level = level;
+			this.tx = tx;
+			this.ty = ty;
+			this.budget = budget;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) return false;
+			Key other = (Key) obj;
+			return polynomial == other.polynomial && level == other.level && tx == other.tx && ty == other.ty
+					&& budget == other.budget;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(System.identityHashCode(polynomial), level, tx, ty, budget);
+		}
+	}
+}
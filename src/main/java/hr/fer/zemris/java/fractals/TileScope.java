@@ -0,0 +1,166 @@
+package hr.fer.zemris.java.fractals;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Strukturirani doseg (scope) poslova jednog okvira.
+ *
+ * Svi poslovi okvira pokreću se s {@link #fork(Runnable)} i dijele zastavicu
+ * cancel okvira, a {@link #join()} vraća tek kad su svi završili. Kad se
+ * zastavica postavi (prekid iz FractalViewera ili noviji zahtjev, vidi
+ * {@link RequestScheduler}), poslovi koji još nisu počeli se preskaču, a oni
+ * koji se izvode izlaze nakon najviše {@link NewtonKernel#CANCEL_BATCH}
+ * piksela, pa nijedan posao ne nadživi svoj okvir.
+ *
+ * Ako posao baci iznimku, doseg pamti prvu, postavlja zastavicu cancel da bi
+ * ostali poslovi stali i {@link #join()} je baca kad svi poslovi završe, pa se
+ * nepotpun okvir ne predaje kao uspješan.
+ *
+ * Mjeri vrijeme od prekida do završetka svih poslova (kašnjenje prekida).
+ * Trenutak prekida bilježi se kad doseg sam prekine okvir ({@link #cancel()})
+ * ili ga javi proizvođač ({@link #cancelledAt(long)}, npr. vrijeme kad je
+ * {@link RequestScheduler} prekinuo okvir novijim zahtjevom). Zastavicu koju
+ * postavi netko drugi doseg ne vidi u trenutku postavljanja, pa za takav
+ * prekid kašnjenje nije poznato.
+ *
+ * @author Marko Brlek
+ *
+ */
+public class TileScope {
+
+	private final ExecutorService executor;
+	private final AtomicBoolean cancel;
+
+	private int pending;
+	private Throwable failure;
+	private long cancelledAt;
+	private long stoppedAt;
+
+	/**
+	 * Konstruktor prima izvršitelja poslova i zastavicu za prekid okvira.
+	 *
+	 * @param executor izvršitelj na kojem se poslovi izvode
+	 * @param cancel   zastavica za prekid okvira
+	 */
+	public TileScope(ExecutorService executor, AtomicBoolean cancel) {
+		this.executor = executor;
+		this.cancel = cancel;
+	}
+
+	/**
+	 * Pokreće posao unutar dosega. Posao se preskače ako je okvir prekinut prije
+	 * nego što je počeo.
+	 *
+	 * @param task posao
+	 */
+	public void fork(Runnable task) {
+		synchronized (this) {
+			pending++;
+		}
+		try {
+			executor.execute(() -> {
+				Throwable thrown = null;
+				try {
+					if (!cancel.get()) {
+						task.run();
+					}
+				} catch (Throwable t) {
+					thrown = t;
+				} finally {
+					finished(thrown);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			finished(e);
+		}
+	}
+
+	/**
+	 * Bilježi kraj posla i prvu iznimku. Uz iznimku postavlja zastavicu cancel,
+	 * pa ostali poslovi izlaze.
+	 */
+	private synchronized void finished(Throwable thrown) {
+		if (thrown != null && failure == null) {
+			failure = thrown;
+			cancel();
+		}
+		pending--;
+		if (pending == 0) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Čeka da svi poslovi završe. Ako je dretva koja čeka prekinuta, okvir se
+	 * prekida, ali se i dalje čeka na sve poslove, a zastavica prekida dretve se
+	 * vraća prije povratka.
+	 *
+	 * @return true ako okvir nije prekinut
+	 * @throws RuntimeException ili Error koji je bacio neki posao
+	 */
+	public synchronized boolean join() {
+		boolean interrupted = false;
+		try {
+			while (pending > 0) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+					cancel();
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		stoppedAt = System.nanoTime();
+		if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		}
+		if (failure instanceof Error) {
+			throw (Error) failure;
+		}
+		if (failure != null) {
+			throw new IllegalStateException("Task failed.", failure);
+		}
+		return !cancel.get();
+	}
+
+	/**
+	 * Prekida okvir i bilježi trenutak prekida.
+	 */
+	public synchronized void cancel() {
+		cancelledAt(System.nanoTime());
+		cancel.set(true);
+	}
+
+	/**
+	 * Bilježi trenutak u kojem je okvir prekinut izvan dosega. Može se pozvati i
+	 * nakon {@link #join()}a; pamti se najraniji zabilježeni trenutak.
+	 *
+	 * @param nanos trenutak prekida prema {@link System#nanoTime()}, 0 ako nije
+	 *              poznat
+	 */
+	public synchronized void cancelledAt(long nanos) {
+		if (nanos != 0 && (cancelledAt == 0 || nanos - cancelledAt < 0)) {
+			cancelledAt = nanos;
+		}
+	}
+
+	/**
+	 * Vraća kašnjenje prekida zadnjeg {@link #join()}a, od zabilježenog trenutka
+	 * prekida do završetka svih poslova.
+	 *
+	 * @return kašnjenje u nanosekundama, -1 ako okvir nije prekinut ili trenutak
+	 *         prekida nije poznat
+	 */
+	public synchronized long getCancelLatency() {
+		if (!cancel.get() || cancelledAt == 0 || stoppedAt == 0) {
+			return -1;
+		}
+		return Math.max(0, stoppedAt - cancelledAt);
+	}
+}
@@ -0,0 +1,437 @@
+package hr.fer.zemris.java.fractals;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import hr.fer.zemris.math.ComplexPolynomial;
+import hr.fer.zemris.math.ComplexRootedPolynomial;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Inačica {@link NewtonKernel} koja pomoću Java Vector API-ja istovremeno
+ * iterira onoliko piksela koliko stane u jedan vektorski registar (4 uz AVX2,
+ * 8 uz AVX-512).
+ *
+ * Svaka traka (lane) vektora iterira svoj piksel. Trake koje su konvergirale,
+ * ušle u krug zamke neke nultočke ili dosegle m maskiraju se i više se ne
+ * mijenjaju. Kad je aktivna najviše
+ * polovica traka, završeni pikseli se zapisuju, a njihove trake pune se
+ * sljedećim pikselima. Vektorska petlja staje i kad neka aktivna traka dosegne
+ * višekratnik od {@link NewtonKernel#STOP_CHECK} iteracija, a takve trake se
+ * izvan nje provjeravaju na ciklus i bijeg (vidi
+ * {@link NewtonKernel#checkStop}) istim iteracijama kao u skalarnoj jezgri, pa
+ * je rezultat jednak. Petlja tako ostaje dovoljno mala da je JIT prevede bez
+ * pakiranja vektora u objekte.
+ *
+ * Pločice koje {@link NewtonKernel#choosePrecision} odabere za float preciznost
+ * iteriraju se u dvostruko više float traka, bez provjere ciklusa i bijega.
+ * Pločice u double-double preciznosti računa skalarna jezgra.
+ *
+ * Koristi se samo ako je modul jdk.incubator.vector dostupan, vidi
+ * {@link NewtonKernel#create(ComplexRootedPolynomial, ComplexPolynomial, boolean, boolean)}.
+ *
+ * @author Marko Brlek
+ *
+ */
+public class VectorNewtonKernel extends NewtonKernel {
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+
+	/**
+	 * Konstruktor prima polinom u oba oblika.
+	 *
+	 * @param crp        polinom zadan nultočkama
+	 * @param polynomial polinom zadan koeficijentima
+	 */
+	public VectorNewtonKernel(ComplexRootedPolynomial crp, ComplexPolynomial polynomial) {
+		super(crp, polynomial);
+	}
+
+	/**
+	 * Konstruktor prima polinom u oba oblika i smije li se računati u float
+	 * preciznosti.
+	 *
+	 * @param crp             polinom zadan nultočkama
+	 * @param polynomial      polinom zadan koeficijentima
+	 * @param singlePrecision smije li se računati u float preciznosti
+	 */
+	public VectorNewtonKernel(ComplexRootedPolynomial crp, ComplexPolynomial polynomial, boolean singlePrecision) {
+		super(crp, polynomial, singlePrecision);
+	}
+
+	/**
+	 * Broj piksela koji se iteriraju istovremeno.
+	 *
+	 * @return broj traka vektora
+	 */
+	public static int lanes() {
+		return SPECIES.length();
+	}
+
+	/**
+	 * Vraća prvi piksel od p nadalje koji treba izračunati. Za step 0 to su svi
+	 * pikseli stupaca od xMin do xMax, inače samo oni na mreži razmaka step koji
+	 * još nisu izračunati.
+	 */
+	private static int nextPixel(int p, int end, int width, int xMin, int xMax, int step, short[] data) {
+		if (step == 0 && xMin == 0 && xMax == width - 1) return p;
+		while (p < end) {
+			int y = p / width;
+			int x = p - y * width;
+			if (x < xMin) {
+				p = y * width + xMin;
+				continue;
+			}
+			if (x > xMax || (step != 0 && y % step != 0)) {
+				p = (y + 1) * width + xMin;
+				continue;
+			}
+			if (step == 0) {
+				return p;
+			} else if (x % step != 0) {
+				p += step - x % step;
+			} else if (data[p] != UNKNOWN) {
+				p += step;
+			} else {
+				return p;
+			}
+			// ne prelazimo u sljedeći redak usred mreže
+			if (p / width != y) p = Math.min(p, (y + 1) * width);
+		}
+		return end;
+	}
+
+	/**
+	 * Iterira piksele pravokutnika [xMin, xMax] x [yMin, yMax] u vektorskim
+	 * trakama.
+	 */
+	@Override
+	protected void computeDouble(double reMin, double reMax, double imMin, double imMax, int width, int height,
+			int xMin, int xMax, int yMin, int yMax, int step, int m, short[] data, AtomicBoolean cancel) {
+
+		int lanes = SPECIES.length();
+		double[] c = compiled == null ? null : compiled.getCoefficients();
+		int order = compiled == null ? 0 : compiled.order();
+
+		double[] laneRe = new double[lanes];
+		double[] laneIm = new double[lanes];
+		double[] laneIters = new double[lanes];
+		double[] laneTrap = new double[lanes];
+		double[] laneBrent = new double[4 * lanes];
+		int[] stops = new int[2];
+		boolean[] laneActive = new boolean[lanes];
+		int[] lanePixel = new int[lanes];
+		for (int i = 0; i < lanes; i++) {
+			lanePixel[i] = -1;
+		}
+
+		int next = yMin * width + xMin;
+		int end = yMax * width + xMax + 1;
+		int sinceCheck = 0;
+
+		DoubleVector treshold = DoubleVector.broadcast(SPECIES, CONVERGENCE_TRESHOLD);
+		DoubleVector limit = DoubleVector.broadcast(SPECIES, m);
+		DoubleVector one = DoubleVector.broadcast(SPECIES, 1.0);
+
+		try {
+			while (true) {
+				// punimo prazne trake sljedećim pikselima
+				int occupied = 0;
+				for (int i = 0; i < lanes; i++) {
+					if (lanePixel[i] < 0) {
+						next = nextPixel(next, end, width, xMin, xMax, step, data);
+					}
+					if (lanePixel[i] < 0 && next < end) {
+						if (++sinceCheck == CANCEL_BATCH) {
+							if (cancel.get()) return;
+							sinceCheck = 0;
+						}
+						int y = next / width;
+						int x = next - y * width;
+						laneRe[i] = x / (width - 1.0) * (reMax - reMin) + reMin;
+						laneIm[i] = (height - 1.0 - y) / (height - 1) * (imMax - imMin) + imMin;
+						laneIters[i] = 0;
+						laneTrap[i] = 0;
+						startStop(laneRe[i], laneIm[i], laneBrent, 4 * i);
+						laneActive[i] = true;
+						lanePixel[i] = next;
+						next++;
+					}
+					if (lanePixel[i] >= 0) occupied++;
+				}
+				if (occupied == 0) break;
+
+				// dok ima piksela za punjenje, iteriramo dok je aktivna više od pola traka,
+				// a najdulje dok neka aktivna traka ne dosegne višekratnik od STOP_CHECK
+				next = nextPixel(next, end, width, xMin, xMax, step, data);
+				int refillAt = next < end ? lanes / 2 : 0;
+				int burstLength = STOP_CHECK;
+				for (int i = 0; i < lanes; i++) {
+					if (laneActive[i]) {
+						burstLength = Math.min(burstLength, STOP_CHECK - (int) laneIters[i] % STOP_CHECK);
+					}
+				}
+
+				DoubleVector zr = DoubleVector.fromArray(SPECIES, laneRe, 0);
+				DoubleVector zi = DoubleVector.fromArray(SPECIES, laneIm, 0);
+				DoubleVector iters = DoubleVector.fromArray(SPECIES, laneIters, 0);
+				DoubleVector trap = DoubleVector.fromArray(SPECIES, laneTrap, 0);
+				VectorMask<Double> active = VectorMask.fromArray(SPECIES, laneActive, 0);
+
+				for (int burst = 0; burst < burstLength && active.trueCount() > refillAt; burst++) {
+					DoubleVector fracRe;
+					DoubleVector fracIm;
+					if (c == null) {
+						// 1 / (1/(z-z1) + ... + 1/(z-zn))
+						DoubleVector sumRe = DoubleVector.zero(SPECIES);
+						DoubleVector sumIm = DoubleVector.zero(SPECIES);
+						for (int k = 0; k < rootRe.length; k++) {
+							DoubleVector dre = zr.sub(rootRe[k]);
+							DoubleVector dim = zi.sub(rootIm[k]);
+							DoubleVector inv = one.div(dre.mul(dre).add(dim.mul(dim)));
+							sumRe = sumRe.add(dre.mul(inv));
+							sumIm = sumIm.sub(dim.mul(inv));
+						}
+						DoubleVector nazivnik = sumRe.mul(sumRe).add(sumIm.mul(sumIm));
+						fracRe = sumRe.div(nazivnik);
+						fracIm = sumIm.neg().div(nazivnik);
+					} else {
+						// Horner za f(z) i f'(z)
+						DoubleVector pr = DoubleVector.broadcast(SPECIES, c[2 * order]);
+						DoubleVector pi = DoubleVector.broadcast(SPECIES, c[2 * order + 1]);
+						DoubleVector dr = DoubleVector.zero(SPECIES);
+						DoubleVector di = DoubleVector.zero(SPECIES);
+						for (int k = 2 * (order - 1); k >= 0; k -= 2) {
+							DoubleVector tr = dr.mul(zr).sub(di.mul(zi)).add(pr);
+							di = dr.mul(zi).add(di.mul(zr)).add(pi);
+							dr = tr;
+							tr = pr.mul(zr).sub(pi.mul(zi)).add(c[k]);
+							pi = pr.mul(zi).add(pi.mul(zr)).add(c[k + 1]);
+							pr = tr;
+						}
+
+						DoubleVector nazivnik = dr.mul(dr).add(di.mul(di));
+						fracRe = pr.mul(dr).add(pi.mul(di)).div(nazivnik);
+						fracIm = pi.mul(dr).sub(pr.mul(di)).div(nazivnik);
+					}
+
+					DoubleVector nr = zr.sub(fracRe);
+					DoubleVector ni = zi.sub(fracIm);
+					DoubleVector dre = zr.sub(nr);
+					DoubleVector dim = zi.sub(ni);
+					DoubleVector module = dre.mul(dre).add(dim.mul(dim)).sqrt();
+
+					zr = zr.blend(nr, active);
+					zi = zi.blend(ni, active);
+					iters = iters.add(1.0, active);
+
+					// krugovi zamki su disjunktni, pa je točka u najviše jednom (trap = k+1)
+					VectorMask<Double> check = active.and(module.compare(VectorOperators.LT, trapGate));
+					if (check.anyTrue()) {
+						for (int k = 0; k < rootRe.length; k++) {
+							DoubleVector tre = zr.sub(rootRe[k]);
+							DoubleVector tim = zi.sub(rootIm[k]);
+							VectorMask<Double> in = tre.mul(tre).add(tim.mul(tim))
+									.compare(VectorOperators.LT, trapR2[k]).and(check);
+							trap = trap.blend(k + 1, in);
+						}
+					}
+
+					active = active.and(module.compare(VectorOperators.GT, treshold))
+							.and(iters.compare(VectorOperators.LT, limit))
+							.and(trap.compare(VectorOperators.EQ, 0));
+				}
+
+				zr.intoArray(laneRe, 0);
+				zi.intoArray(laneIm, 0);
+				iters.intoArray(laneIters, 0);
+				trap.intoArray(laneTrap, 0);
+				active.intoArray(laneActive, 0);
+
+				// zapisujemo gotove piksele i oslobađamo njihove trake; ciklus i bijeg
+				// provjeravaju se istim iteracijama kao u skalarnoj jezgri
+				for (int i = 0; i < lanes; i++) {
+					int stop = 0;
+					if (laneActive[i]) {
+						if ((int) laneIters[i] % STOP_CHECK != 0) continue;
+						stop = checkStop(laneRe[i], laneIm[i], Math.max(m, MAX_ITERATIONS) - (int) laneIters[i], laneBrent,
+								4 * i);
+						if (stop == 0) continue;
+					}
+					if (lanePixel[i] >= 0) {
+						if (laneTrap[i] > 0) {
+							data[lanePixel[i]] = (short) laneTrap[i];
+						} else if (stop > 0) {
+							stops[stop - 1]++;
+							data[lanePixel[i]] = 1;
+						} else if (laneIters[i] >= m) {
+							data[lanePixel[i]] = cappedValue(m);
+						} else {
+							data[lanePixel[i]] = (short) (indexOfClosestRootFor(laneRe[i], laneIm[i], ROOT_TRESHOLD) + 1);
+						}
+						lanePixel[i] = -1;
+						laneActive[i] = false;
+					}
+				}
+			}
+		} finally {
+			countStops(stops);
+		}
+	}
+
+	/**
+	 * Iterira piksele pravokutnika [xMin, xMax] x [yMin, yMax] u float
+	 * vektorskim trakama, istim redom operacija kao
+	 * {@link NewtonKernel#computePixelFloat}.
+	 */
+	@Override
+	protected void computeFloat(double reMin, double reMax, double imMin, double imMax, int width, int height,
+			int xMin, int xMax, int yMin, int yMax, int step, int m, short[] data, AtomicBoolean cancel) {
+
+		int lanes = FLOAT_SPECIES.length();
+		float[] laneRe = new float[lanes];
+		float[] laneIm = new float[lanes];
+		float[] laneIters = new float[lanes];
+		float[] laneTrap = new float[lanes];
+		boolean[] laneActive = new boolean[lanes];
+		int[] lanePixel = new int[lanes];
+		for (int i = 0; i < lanes; i++) {
+			lanePixel[i] = -1;
+		}
+
+		int next = yMin * width + xMin;
+		int end = yMax * width + xMax + 1;
+		int sinceCheck = 0;
+		int unknown = 0;
+
+		FloatVector treshold = FloatVector.broadcast(FLOAT_SPECIES, (float) CONVERGENCE_TRESHOLD);
+		FloatVector limit = FloatVector.broadcast(FLOAT_SPECIES, Math.min(m, FLOAT_ITERATIONS));
+		FloatVector one = FloatVector.broadcast(FLOAT_SPECIES, 1f);
+
+		try {
+			while (true) {
+				// punimo prazne trake sljedećim pikselima
+				int occupied = 0;
+				for (int i = 0; i < lanes; i++) {
+					if (lanePixel[i] < 0) {
+						next = nextPixel(next, end, width, xMin, xMax, step, data);
+					}
+					if (lanePixel[i] < 0 && next < end) {
+						if (++sinceCheck == CANCEL_BATCH) {
+							if (cancel.get()) return;
+							sinceCheck = 0;
+						}
+						int y = next / width;
+						int x = next - y * width;
+						laneRe[i] = (float) (x / (width - 1.0) * (reMax - reMin) + reMin);
+						laneIm[i] = (float) ((height - 1.0 - y) / (height - 1) * (imMax - imMin) + imMin);
+						laneIters[i] = 0;
+						laneTrap[i] = 0;
+						laneActive[i] = true;
+						lanePixel[i] = next;
+						next++;
+					}
+					if (lanePixel[i] >= 0) occupied++;
+				}
+				if (occupied == 0) break;
+
+				next = nextPixel(next, end, width, xMin, xMax, step, data);
+				int refillAt = next < end ? lanes / 2 : 0;
+
+				FloatVector zr = FloatVector.fromArray(FLOAT_SPECIES, laneRe, 0);
+				FloatVector zi = FloatVector.fromArray(FLOAT_SPECIES, laneIm, 0);
+				FloatVector iters = FloatVector.fromArray(FLOAT_SPECIES, laneIters, 0);
+				FloatVector trap = FloatVector.fromArray(FLOAT_SPECIES, laneTrap, 0);
+				VectorMask<Float> active = VectorMask.fromArray(FLOAT_SPECIES, laneActive, 0);
+
+				while (active.trueCount() > refillAt) {
+					FloatVector fracRe;
+					FloatVector fracIm;
+					if (coeffF == null) {
+						FloatVector sumRe = FloatVector.zero(FLOAT_SPECIES);
+						FloatVector sumIm = FloatVector.zero(FLOAT_SPECIES);
+						for (int k = 0; k < rootReF.length; k++) {
+							FloatVector dre = zr.sub(rootReF[k]);
+							FloatVector dim = zi.sub(rootImF[k]);
+							FloatVector inv = one.div(dre.mul(dre).add(dim.mul(dim)));
+							sumRe = sumRe.add(dre.mul(inv));
+							sumIm = sumIm.sub(dim.mul(inv));
+						}
+						FloatVector nazivnik = sumRe.mul(sumRe).add(sumIm.mul(sumIm));
+						fracRe = sumRe.div(nazivnik);
+						fracIm = sumIm.neg().div(nazivnik);
+					} else {
+						int order = coeffF.length / 2 - 1;
+						FloatVector pr = FloatVector.broadcast(FLOAT_SPECIES, coeffF[2 * order]);
+						FloatVector pi = FloatVector.broadcast(FLOAT_SPECIES, coeffF[2 * order + 1]);
+						FloatVector dr = FloatVector.zero(FLOAT_SPECIES);
+						FloatVector di = FloatVector.zero(FLOAT_SPECIES);
+						for (int k = 2 * (order - 1); k >= 0; k -= 2) {
+							FloatVector tr = dr.mul(zr).sub(di.mul(zi)).add(pr);
+							di = dr.mul(zi).add(di.mul(zr)).add(pi);
+							dr = tr;
+							tr = pr.mul(zr).sub(pi.mul(zi)).add(coeffF[k]);
+							pi = pr.mul(zi).add(pi.mul(zr)).add(coeffF[k + 1]);
+							pr = tr;
+						}
+
+						FloatVector nazivnik = dr.mul(dr).add(di.mul(di));
+						fracRe = pr.mul(dr).add(pi.mul(di)).div(nazivnik);
+						fracIm = pi.mul(dr).sub(pr.mul(di)).div(nazivnik);
+					}
+
+					FloatVector nr = zr.sub(fracRe);
+					FloatVector ni = zi.sub(fracIm);
+					FloatVector dre = zr.sub(nr);
+					FloatVector dim = zi.sub(ni);
+					FloatVector module = dre.mul(dre).add(dim.mul(dim)).sqrt();
+
+					zr = zr.blend(nr, active);
+					zi = zi.blend(ni, active);
+					iters = iters.add(1f, active);
+
+					// polovični krugovi zamki su disjunktni i u float preciznosti, ali
+					// putanja uz granicu bazena može ući u krug druge nultočke nego u double
+					VectorMask<Float> check = active.and(module.compare(VectorOperators.LT, trapGateF));
+					if (check.anyTrue()) {
+						for (int k = 0; k < rootReF.length; k++) {
+							FloatVector tre = zr.sub(rootReF[k]);
+							FloatVector tim = zi.sub(rootImF[k]);
+							VectorMask<Float> in = tre.mul(tre).add(tim.mul(tim))
+									.compare(VectorOperators.LT, trapR2F[k]).and(check);
+							trap = trap.blend(k + 1, in);
+						}
+					}
+
+					active = active.and(module.compare(VectorOperators.GT, treshold))
+							.and(iters.compare(VectorOperators.LT, limit))
+							.and(trap.compare(VectorOperators.EQ, 0));
+				}
+
+				zr.intoArray(laneRe, 0);
+				zi.intoArray(laneIm, 0);
+				iters.intoArray(laneIters, 0);
+				trap.intoArray(laneTrap, 0);
+				active.intoArray(laneActive, 0);
+
+				// zapisujemo gotove piksele, nepridruženi ostaju za double preciznost
+				for (int i = 0; i < lanes; i++) {
+					if (laneActive[i] || lanePixel[i] < 0) continue;
+					if (laneTrap[i] > 0) {
+						data[lanePixel[i]] = (short) laneTrap[i];
+					} else {
+						data[lanePixel[i]] = UNKNOWN;
+						unknown++;
+					}
+					lanePixel[i] = -1;
+				}
+			}
+		} finally {
+			countPromoted(unknown);
+		}
+	}
+}
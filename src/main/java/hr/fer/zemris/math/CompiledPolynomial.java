@@ -0,0 +1,85 @@
+package hr.fer.zemris.math;
+
+/**
+ * Prevedeni oblik {@link ComplexPolynomial} namijenjen brzom računanju.
+ *
+ * Koeficijenti su spremljeni u jedno polje oblika [re0, im0, re1, im1, ...],
+ * a vrijednost polinoma i njegove prve derivacije računaju se zajedno u jednom
+ * prolazu Hornerovog postupka, bez stvaranja objekata i bez poziva
+ * transcendentnih funkcija.
+ *
+ * @author Marko Brlek
+ *
+ */
+public class CompiledPolynomial {
+
+    private final double[] coefficients;
+    private final int order;
+
+    /**
+     * Konstruktor prima koeficijente polinoma od z0 do zn.
+     *
+     * @param factors koeficijenti polinoma
+     */
+    public CompiledPolynomial(Complex... factors) {
+        if (factors.length == 0) {
+            throw new IllegalArgumentException("Polynomial must have at least one factor.");
+        }
+        this.order = factors.length - 1;
+        this.coefficients = new double[2 * factors.length];
+        for (int i = 0; i < factors.length; i++) {
+            coefficients[2 * i] = factors[i].getReal();
+            coefficients[2 * i + 1] = factors[i].getImaginary();
+        }
+    }
+
+    /**
+     * Getter za koeficijente u obliku [re0, im0, re1, im1, ...].
+     *
+     * @return koeficijenti polinoma
+     */
+    public double[] getCoefficients() {
+        return coefficients;
+    }
+
+    /**
+     * Računa red polinoma.
+     *
+     * @return red polinoma
+     */
+    public int order() {
+        return order;
+    }
+
+    /**
+     * Računa f(z) i f'(z) u točki z jednim prolazom Hornerovog postupka.
+     * Rezultat se sprema u out kao [Re f, Im f, Re f', Im f'].
+     *
+     * @param zre realni dio točke z
+     * @param zim imaginarni dio točke z
+     * @param out polje duljine barem 4 u koje se sprema rezultat
+     */
+    public void evaluate(double zre, double zim, double[] out) {
+        double[] c = coefficients;
+        double pre = c[2 * order];
+        double pim = c[2 * order + 1];
+        double dre = 0;
+        double dim = 0;
+
+        for (int k = 2 * (order - 1); k >= 0; k -= 2) {
+            // f'(z) = f'(z)*z + f(z)
+            double tre = dre * zre - dim * zim + pre;
+            dim = dre * zim + dim * zre + pim;
+            dre = tre;
+            // f(z) = f(z)*z + ck
+            tre = pre * zre - pim * zim + c[k];
+            pim = pre * zim + pim * zre + c[k + 1];
+            pre = tre;
+        }
+
+        out[0] = pre;
+        out[1] = pim;
+        out[2] = dre;
+        out[3] = dim;
+    }
+}
@@ -90,6 +90,16 @@ public class ComplexPolynomial {
         return result;
     }
 
+    /**
+     * Prevodi polinom u oblik koji istovremeno računa f(z) i f'(z) Hornerovim
+     * postupkom nad primitivnim double vrijednostima.
+     *
+     * @return prevedeni polinom
+     */
+    public CompiledPolynomial compile() {
+        return new CompiledPolynomial(factors);
+    }
+
     /**
      * Pretvara polinom u string.
      */
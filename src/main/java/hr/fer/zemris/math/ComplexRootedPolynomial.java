@@ -12,6 +12,7 @@ public class ComplexRootedPolynomial {
 
     private Complex constant;
     private Complex[] roots;
+    private RootIndex index;
 
     /**
      * Konstruktor prima konstantu i nultočke polinoma.
@@ -69,6 +70,24 @@ public class ComplexRootedPolynomial {
         return result;
     }
 
+    /**
+     * Računa jedan Newtonov korak izravno iz nultočaka, bez razvijanja u
+     * koeficijente: z - f(z)/f'(z) = z - 1/(1/(z-z1) + ... + 1/(z-zn)).
+     * Konstanta se pri tome krati. Složenost je O(n), a korak ostaje stabilan i
+     * za polinome sa stotinama ili tisućama nultočaka, kod kojih koeficijenti
+     * razvijenog polinoma gube preciznost ili preljevaju.
+     * 
+     * @param z točka iz koje se radi korak
+     * @return sljedeća točka Newtonove iteracije
+     */
+    public Complex newtonStep(Complex z) {
+        Complex sum = Complex.ZERO;
+        for (Complex root : roots) {
+            sum = sum.add(Complex.ONE.div(z.sub(root)));
+        }
+        return z.sub(Complex.ONE.div(sum));
+    }
+
     /**
      * Pretvara instancu razreda ComplexRootedPolynomial u obliku Stringa.
      */
@@ -82,15 +101,60 @@ public class ComplexRootedPolynomial {
         return sb.toString();
     }
 
+    /**
+     * Računa za svaku nultočku polumjer kruga unutar kojeg Newtonova iteracija
+     * sigurno (kvadratno) konvergira baš toj nultočki.
+     * 
+     * Prema Smaleovoj alfa-teoriji iteracija iz z konvergira nultočki ζ ako je
+     * |z - ζ| &lt;= (3 - √7) / (2γ), gdje je γ = sup |f^(k)(ζ) / (k! f'(ζ))|^(1/(k-1))
+     * za k &gt;= 2. Za polinom zadan nultočkama taj omjer je elementarna
+     * simetrična funkcija brojeva 1/(ζ - zj), pa vrijedi γ &lt;= Σ 1/|ζ - zj| (po
+     * svim ostalim nultočkama zj). Višestruka nultočka dobiva polumjer 0.
+     * 
+     * Krugovi su međusobno disjunktni i točka unutar kruga nultočke bliža je toj
+     * nultočki nego ijednoj drugoj.
+     * 
+     * @return polumjeri krugova, redom kao nultočke
+     */
+    public double[] captureRadii() {
+        double[] radii = new double[roots.length];
+        double c = (3 - Math.sqrt(7)) / 2;
+
+        for (int i = 0; i < roots.length; i++) {
+            double sum = 0;
+            for (int j = 0; j < roots.length; j++) {
+                if (j == i) continue;
+                sum += 1 / roots[i].sub(roots[j]).module();
+            }
+            radii[i] = c / sum;
+        }
+        return radii;
+    }
+
+    /**
+     * Gradi prostorni indeks nultočaka ({@link RootIndex}) za zadani treshold.
+     * Nakon toga {@link #indexOfClosestRootFor(Complex, double)} s istim
+     * tresholdom pregledava samo nultočke iz susjednih ćelija umjesto svih.
+     * 
+     * @param treshold udaljenost za koju se indeks gradi
+     */
+    public void indexRoots(double treshold) {
+        this.index = new RootIndex(roots, treshold);
+    }
+
     /**
      * Traži index najbliže nultočke od zadane točke z kojoj je udaljenost manja od
-     * tresholda.
+     * tresholda. Ako je za taj treshold izgrađen indeks (vidi
+     * {@link #indexRoots(double)}), koristi se on.
      * 
      * @param z        točka od koje tražimo najbližu nultočku
      * @param treshold udaljenost od koje se više ne traži
      * @return index najbliže nultočke
      */
     public int indexOfClosestRootFor(Complex z, double treshold) {
+        if (index != null && index.getTreshold() == treshold) {
+            return index.indexOfClosestRootFor(z.getReal(), z.getImaginary());
+        }
         double najmanja = Double.MAX_VALUE;
         int index = -1;
 
@@ -0,0 +1,219 @@
+package hr.fer.zemris.math;
+
+/**
+ * Broj proširene preciznosti zapisan kao neevaluirani zbroj dva double broja
+ * (double-double), hi + lo uz |lo| &lt;= ulp(hi)/2, što daje oko 106 bitova
+ * mantise.
+ *
+ * Za razliku od {@link Complex}, objekt je promjenjiv: sve operacije mijenjaju
+ * ovaj broj i vraćaju njega, pa se računanje s unaprijed stvorenim objektima
+ * odvija bez stvaranja novih objekata. Zbrajanje koristi Knuthov two-sum, a
+ * množenje točan produkt preko {@link Math#fma}.
+ *
+ * @author Marko Brlek
+ *
+ */
+public final class DoubleDouble {
+
+    private double hi;
+    private double lo;
+
+    /**
+     * Prazan konstruktor stvara broj 0.
+     */
+    public DoubleDouble() {
+    }
+
+    /**
+     * Getter za glavni dio broja, ujedno najbolju double aproksimaciju.
+     *
+     * @return glavni dio
+     */
+    public double getHi() {
+        return hi;
+    }
+
+    /**
+     * Getter za ostatak broja.
+     *
+     * @return ostatak
+     */
+    public double getLo() {
+        return lo;
+    }
+
+    /**
+     * Postavlja broj na vrijednost a.
+     *
+     * @param a nova vrijednost
+     * @return ovaj broj
+     */
+    public DoubleDouble set(double a) {
+        hi = a;
+        lo = 0;
+        return this;
+    }
+
+    /**
+     * Postavlja broj na vrijednost a.
+     *
+     * @param a nova vrijednost
+     * @return ovaj broj
+     */
+    public DoubleDouble set(DoubleDouble a) {
+        hi = a.hi;
+        lo = a.lo;
+        return this;
+    }
+
+    /**
+     * Postavlja broj na točan zbroj a + b.
+     *
+     * @param a prvi pribrojnik
+     * @param b drugi pribrojnik
+     * @return ovaj broj
+     */
+    public DoubleDouble setSum(double a, double b) {
+        double s = a + b;
+        double bb = s - a;
+        hi = s;
+        lo = (a - (s - bb)) + (b - bb);
+        return this;
+    }
+
+    /**
+     * Dodaje a ovom broju.
+     *
+     * @param a pribrojnik
+     * @return ovaj broj
+     */
+    public DoubleDouble add(double a) {
+        double s = hi + a;
+        double bb = s - hi;
+        double e = (hi - (s - bb)) + (a - bb) + lo;
+        hi = s + e;
+        lo = e - (hi - s);
+        return this;
+    }
+
+    /**
+     * Dodaje a ovom broju.
+     *
+     * @param a pribrojnik
+     * @return ovaj broj
+     */
+    public DoubleDouble add(DoubleDouble a) {
+        double s = hi + a.hi;
+        double bb = s - hi;
+        double se = (hi - (s - bb)) + (a.hi - bb);
+        double t = lo + a.lo;
+        double tb = t - lo;
+        double te = (lo - (t - tb)) + (a.lo - tb);
+        se += t;
+        double h = s + se;
+        se = se - (h - s);
+        se += te;
+        hi = h + se;
+        lo = se - (hi - h);
+        return this;
+    }
+
+    /**
+     * Oduzima a od ovog broja.
+     *
+     * @param a umanjitelj
+     * @return ovaj broj
+     */
+    public DoubleDouble sub(double a) {
+        return add(-a);
+    }
+
+    /**
+     * Oduzima a od ovog broja.
+     *
+     * @param a umanjitelj
+     * @return ovaj broj
+     */
+    public DoubleDouble sub(DoubleDouble a) {
+        negate();
+        add(a);
+        return negate();
+    }
+
+    /**
+     * Mijenja predznak ovog broja.
+     *
+     * @return ovaj broj
+     */
+    public DoubleDouble negate() {
+        hi = -hi;
+        lo = -lo;
+        return this;
+    }
+
+    /**
+     * Množi ovaj broj s a.
+     *
+     * @param a faktor
+     * @return ovaj broj
+     */
+    public DoubleDouble mul(double a) {
+        double p = hi * a;
+        double e = Math.fma(hi, a, -p) + lo * a;
+        hi = p + e;
+        lo = e - (hi - p);
+        return this;
+    }
+
+    /**
+     * Množi ovaj broj s a.
+     *
+     * @param a faktor
+     * @return ovaj broj
+     */
+    public DoubleDouble mul(DoubleDouble a) {
+        double p = hi * a.hi;
+        double e = Math.fma(hi, a.hi, -p) + (hi * a.lo + lo * a.hi);
+        hi = p + e;
+        lo = e - (hi - p);
+        return this;
+    }
+
+    /**
+     * Dijeli ovaj broj s a.
+     *
+     * @param a djelitelj
+     * @return ovaj broj
+     */
+    public DoubleDouble div(DoubleDouble a) {
+        double q1 = hi / a.hi;
+        // ostatak this - q1 * a
+        double p = q1 * a.hi;
+        double pe = Math.fma(q1, a.hi, -p) + q1 * a.lo;
+        double s = hi - p;
+        double bb = s - hi;
+        double e = (hi - (s - bb)) + (-p - bb);
+        e = e - pe + lo;
+        double q2 = (s + e) / a.hi;
+        hi = q1 + q2;
+        lo = q2 - (hi - q1);
+        return this;
+    }
+
+    /**
+     * Postavlja broj na vrijednost 1/a.
+     *
+     * @param a broj čija se recipročna vrijednost računa, različit od ovog
+     * @return ovaj broj
+     */
+    public DoubleDouble setReciprocal(DoubleDouble a) {
+        hi = 1;
+        lo = 0;
+        return div(a);
+    }
+
+    @Override
+    public String toString() {
+        return hi + " + " + lo;
+    }
+}
@@ -0,0 +1,156 @@
+package hr.fer.zemris.math;
+
+import java.util.Arrays;
+
+/**
+ * Prostorni indeks nultočaka za brzo traženje najbliže nultočke unutar zadane
+ * udaljenosti.
+ *
+ * Ravnina je podijeljena na uniformnu mrežu ćelija sa stranicom jednakom
+ * tresholdu, pa nultočka bliža od tresholda može biti samo u ćeliji točke ili
+ * u jednoj od osam susjednih. Ćelije s nultočkama spremljene su u tablicu
+ * raspršenog adresiranja (open addressing) nad primitivnim poljima, pa upit
+ * pregledava najviše devet ćelija, ne stvara objekte i ne računa korijen
+ * (uspoređuju se kvadrati udaljenosti).
+ *
+ * Rezultat je isti kao kod linearnog pretraživanja: najbliža nultočka, a uz
+ * jednake udaljenosti ona s manjim indeksom.
+ *
+ * @author Marko Brlek
+ *
+ */
+public class RootIndex {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final double treshold;
+    private final double treshold2;
+    private final double[] rootRe;
+    private final double[] rootIm;
+
+    private final long[] keys;
+    private final int[] starts;
+    private final int[] ends;
+    private final int mask;
+
+    /** indeksi nultočaka poredani po ćelijama */
+    private final int[] order;
+
+    /**
+     * Konstruktor gradi indeks za zadane nultočke i udaljenost.
+     *
+     * @param roots    nultočke
+     * @param treshold najveća udaljenost na kojoj se nultočka traži
+     */
+    public RootIndex(Complex[] roots, double treshold) {
+        if (!(treshold > 0)) {
+            throw new IllegalArgumentException("Treshold must be positive.");
+        }
+        this.treshold = treshold;
+        this.treshold2 = treshold * treshold;
+
+        int n = roots.length;
+        rootRe = new double[n];
+        rootIm = new double[n];
+        long[] cell = new long[n];
+        for (int i = 0; i < n; i++) {
+            rootRe[i] = roots[i].getReal();
+            rootIm[i] = roots[i].getImaginary();
+            cell[i] = key(cellOf(rootRe[i]), cellOf(rootIm[i]));
+        }
+
+        // indeksi poredani po ćeliji, unutar ćelije po indeksu nultočke
+        Integer[] sorted = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, (a, b) -> cell[a] != cell[b] ? Long.compare(cell[a], cell[b]) : a - b);
+        order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = sorted[i];
+        }
+
+        int capacity = Integer.highestOneBit(Math.max(1, n) * 4 - 1) << 1;
+        keys = new long[capacity];
+        starts = new int[capacity];
+        ends = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(keys, EMPTY);
+
+        for (int i = 0; i < n;) {
+            long k = cell[order[i]];
+            int j = i;
+            while (j < n && cell[order[j]] == k) {
+                j++;
+            }
+            int slot = slot(k);
+            while (keys[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = k;
+            starts[slot] = i;
+            ends[slot] = j;
+            i = j;
+        }
+    }
+
+    /**
+     * Getter za udaljenost za koju je indeks izgrađen.
+     *
+     * @return treshold
+     */
+    public double getTreshold() {
+        return treshold;
+    }
+
+    /**
+     * Traži indeks najbliže nultočke točki (zre, zim) kojoj je udaljenost manja
+     * od tresholda.
+     *
+     * @param zre realni dio točke
+     * @param zim imaginarni dio točke
+     * @return indeks najbliže nultočke, -1 ako takva ne postoji
+     */
+    public int indexOfClosestRootFor(double zre, double zim) {
+        long cx = cellOf(zre);
+        long cy = cellOf(zim);
+        double najmanja = treshold2;
+        int index = -1;
+
+        for (long x = cx - 1; x <= cx + 1; x++) {
+            for (long y = cy - 1; y <= cy + 1; y++) {
+                long k = key(x, y);
+                int slot = slot(k);
+                while (keys[slot] != EMPTY && keys[slot] != k) {
+                    slot = (slot + 1) & mask;
+                }
+                if (keys[slot] == EMPTY) continue;
+
+                for (int p = starts[slot]; p < ends[slot]; p++) {
+                    int i = order[p];
+                    double dre = zre - rootRe[i];
+                    double dim = zim - rootIm[i];
+                    double d = dre * dre + dim * dim;
+                    if (d < najmanja || (d == najmanja && index >= 0 && i < index)) {
+                        najmanja = d;
+                        index = i;
+                    }
+                }
+            }
+        }
+        return index;
+    }
+
+    private long cellOf(double v) {
+        return (long) Math.floor(v / treshold);
+    }
+
+    private static long key(long x, long y) {
+        return x * 0x9E3779B97F4A7C15L + y;
+    }
+
+    private int slot(long k) {
+        long h = k * 0xC2B2AE3D27D4EB4FL;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,114 @@
+package hr.fer.zemris.java.fractals;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import hr.fer.zemris.math.Complex;
+
+/**
+ * Provjerava da Mariani-Silver podjela u {@link NewtonP2} daje isti rezultat
+ * kao računanje svakog piksela pomoću {@link NewtonKernel#computeRows}.
+ *
+ * @author Marko Brlek
+ *
+ */
+public class NewtonP2MarianiTest {
+
+	private static final Complex[] CROSS = { Complex.ONE, Complex.ONE_NEG, Complex.IM, Complex.IM_NEG };
+
+	private static final Complex[] FIVE = { Complex.ONE, Complex.ONE_NEG, Complex.IM, Complex.IM_NEG,
+			new Complex(0.5, 0.3) };
+
+	private static final Complex[] THREE = { Complex.ONE, new Complex(-0.5, Math.sqrt(3) / 2),
+			new Complex(-0.5, -Math.sqrt(3) / 2) };
+
+	private NewtonP2.Producer producer;
+	private int mintracks;
+
+	@BeforeEach
+	void setUp() {
+		mintracks = NewtonP2.mintracks;
+		// mali pravokutnici se i dalje dijele na poslove u bazenu
+		NewtonP2.mintracks = 1;
+		NewtonP2.mariani = true;
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (producer != null) {
+			producer.close();
+		}
+		NewtonP2.mariani = false;
+		NewtonP2.mintracks = mintracks;
+	}
+
+	@Test
+	void wholeViewMatchesBruteForce() {
+		assertSameAsBruteForce(CROSS, -2, 2, -2, 2, 301, 201);
+		assertSameAsBruteForce(FIVE, -2, 2, -1.5, 1.5, 320, 240);
+		assertSameAsBruteForce(THREE, -1.5, 1.5, -1.5, 1.5, 257, 257);
+	}
+
+	@Test
+	void basinBoundaryMatchesBruteForce() {
+		assertSameAsBruteForce(CROSS, 0.3, 0.5, 0.3, 0.5, 200, 200);
+		assertSameAsBruteForce(FIVE, -0.2, 0.4, 0.1, 0.5, 240, 160);
+		assertSameAsBruteForce(THREE, -0.1, 0.1, -0.1, 0.1, 150, 150);
+	}
+
+	@Test
+	void borderOfOneRootFillsInterior() {
+		short[] data = assertSameAsBruteForce(FIVE, 0.95, 1.05, -0.05, 0.05, 100, 100);
+		short value = data[0];
+		assertTrue(value > 0, "Pixels near root 1 must converge.");
+		for (short v : data) {
+			assertEquals(value, v, "Whole view is one basin.");
+		}
+	}
+
+	@Test
+	void smallRegionsMatchBruteForce() {
+		// unutrašnjost od jednog piksela
+		assertSameAsBruteForce(CROSS, 0.9, 1.1, -0.1, 0.1, 3, 3);
+		assertSameAsBruteForce(CROSS, 0.3, 0.5, 0.3, 0.5, 3, 3);
+		// bez unutrašnjosti
+		assertSameAsBruteForce(CROSS, -2, 2, -2, 2, 2, 2);
+		assertSameAsBruteForce(FIVE, -2, 2, -2, 2, 2, 50);
+		assertSameAsBruteForce(FIVE, -2, 2, -2, 2, 50, 2);
+		// unutrašnjost jednog retka ili stupca
+		assertSameAsBruteForce(FIVE, -2, 2, -2, 2, 3, 64);
+		assertSameAsBruteForce(FIVE, -2, 2, -2, 2, 64, 3);
+	}
+
+	/**
+	 * Računa prikaz s oba načina i provjerava da su jednaki.
+	 *
+	 * @return rezultat Mariani-Silver podjele
+	 */
+	private short[] assertSameAsBruteForce(Complex[] roots, double reMin, double reMax, double imMin,
+			double imMax, int width, int height) {
+		NewtonP2.init(roots);
+		if (producer == null) {
+			producer = new NewtonP2.Producer();
+			producer.setup();
+		}
+		int m = NewtonKernel.MAX_ITERATIONS;
+		AtomicBoolean cancel = new AtomicBoolean();
+
+		short[] mariani = new short[width * height];
+		producer.render(reMin, reMax, imMin, imMax, width, height, m, mariani, cancel);
+		short[] brute = new short[width * height];
+		NewtonP2.kernel.computeRows(reMin, reMax, imMin, imMax, width, height, 0, height - 1, m, brute, cancel);
+
+		assertArrayEquals(brute, mariani, String.format("%d roots, [%s, %s]x[%s, %s], %dx%d", roots.length, reMin,
+				reMax, imMin, imMax, width, height));
+		return mariani;
+	}
+}
@@ -0,0 +1,111 @@
+package hr.fer.zemris.java.fractals;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import hr.fer.zemris.math.Complex;
+import hr.fer.zemris.math.ComplexPolynomial;
+import hr.fer.zemris.math.ComplexRootedPolynomial;
+
+/**
+ * Provjerava da {@link VectorNewtonKernel} daje isti rezultat kao skalarna
+ * {@link NewtonKernel} i na pikselima koje provjera ciklusa i bijega prekida.
+ *
+ * @author Marko Brlek
+ *
+ */
+public class VectorNewtonKernelTest {
+
+	/** nultočke polinoma z³-2z+2, čiji bazeni sadrže privlačni ciklus 0 → 1 → 0 */
+	private static final Complex[] CYCLE = { new Complex(-1.7692923542386314, 0),
+			new Complex(0.8846461771193157, 0.5897428050222056), new Complex(0.8846461771193157, -0.5897428050222056) };
+
+	private static final Complex[] FIVE = { Complex.ONE, Complex.ONE_NEG, Complex.IM, Complex.IM_NEG,
+			new Complex(0.5, 0.3) };
+
+	private static final int[] BUDGETS = { 40, 75, 130, NewtonKernel.MAX_ITERATIONS };
+
+	@Test
+	void cyclingPixelsMatchScalar() {
+		// cijeli prikaz te okolice obje točke ciklusa
+		assertSameAsScalar(CYCLE, -2, 2, -2, 2, 301, 257);
+		assertSameAsScalar(CYCLE, -0.3, 0.3, -0.3, 0.3, 200, 200);
+		assertSameAsScalar(CYCLE, 0.7, 1.3, -0.3, 0.3, 199, 201);
+	}
+
+	@Test
+	void escapingPixelsMatchScalar() {
+		assertSameAsScalar(CYCLE, -1e6, 1e6, -1e6, 1e6, 150, 150);
+		assertSameAsScalar(FIVE, -1e8, 1e8, -1e8, 1e8, 150, 150);
+	}
+
+	@Test
+	void latticeMatchesScalar() {
+		assertSameLatticeAsScalar(CYCLE, -2, 2, -2, 2, 257, 257, 4);
+		assertSameLatticeAsScalar(CYCLE, -0.3, 0.3, -0.3, 0.3, 200, 200, 3);
+	}
+
+	/**
+	 * Računa prikaz obama jezgrama, s korakom iz koeficijenata i iz nultočaka,
+	 * te provjerava da su jednaki. Uz m manji od
+	 * {@link NewtonKernel#MAX_ITERATIONS} piksel prekinut provjerom razlikuje se
+	 * od piksela koji je dosegao m, pa se provjerava i nekoliko manjih m.
+	 */
+	private static void assertSameAsScalar(Complex[] roots, double reMin, double reMax, double imMin, double imMax,
+			int width, int height) {
+		ComplexRootedPolynomial crp = new ComplexRootedPolynomial(Complex.ONE, roots);
+		for (ComplexPolynomial polynomial : new ComplexPolynomial[] { crp.toComplexPolynom(), null }) {
+			for (int m : BUDGETS) {
+				assertSameAsScalar(crp, polynomial, reMin, reMax, imMin, imMax, width, height, m);
+			}
+		}
+	}
+
+	private static void assertSameAsScalar(ComplexRootedPolynomial crp, ComplexPolynomial polynomial, double reMin,
+			double reMax, double imMin, double imMax, int width, int height, int m) {
+		AtomicBoolean cancel = new AtomicBoolean();
+
+		short[] scalar = new short[width * height];
+		new NewtonKernel(crp, polynomial).computeRows(reMin, reMax, imMin, imMax, width, height, 0, height - 1,
+				m, scalar, cancel);
+		short[] vector = new short[width * height];
+		new VectorNewtonKernel(crp, polynomial).computeRows(reMin, reMax, imMin, imMax, width, height, 0,
+				height - 1, m, vector, cancel);
+
+		assertArrayEquals(scalar, vector,
+				message(crp.getRoots(), polynomial, reMin, reMax, imMin, imMax, width, height) + ", m = " + m);
+	}
+
+	/**
+	 * Isto kao {@link #assertSameAsScalar}, ali samo za piksele na mreži razmaka
+	 * step, koje vektorska jezgra preskače pri punjenju traka.
+	 */
+	private static void assertSameLatticeAsScalar(Complex[] roots, double reMin, double reMax, double imMin,
+			double imMax, int width, int height, int step) {
+		ComplexRootedPolynomial crp = new ComplexRootedPolynomial(Complex.ONE, roots);
+		ComplexPolynomial polynomial = crp.toComplexPolynom();
+		int m = BUDGETS[0];
+		AtomicBoolean cancel = new AtomicBoolean();
+
+		short[] scalar = new short[width * height];
+		Arrays.fill(scalar, NewtonKernel.UNKNOWN);
+		new NewtonKernel(crp, polynomial).computeLattice(reMin, reMax, imMin, imMax, width, height, 0, height - 1,
+				step, m, scalar, cancel);
+		short[] vector = new short[width * height];
+		Arrays.fill(vector, NewtonKernel.UNKNOWN);
+		new VectorNewtonKernel(crp, polynomial).computeLattice(reMin, reMax, imMin, imMax, width, height, 0,
+				height - 1, step, m, vector, cancel);
+
+		assertArrayEquals(scalar, vector, message(roots, polynomial, reMin, reMax, imMin, imMax, width, height));
+	}
+
+	private static String message(Complex[] roots, ComplexPolynomial polynomial, double reMin, double reMax,
+			double imMin, double imMax, int width, int height) {
+		return String.format("%d roots, %s step, [%s, %s]x[%s, %s], %dx%d", roots.length,
+				polynomial == null ? "root" : "coefficient", reMin, reMax, imMin, imMax, width, height);
+	}
+}